@@ -0,0 +1,48 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.Runner;
+
+/**
+ * <p>
+ * Runs the benchmarks of jmjrst. The arguments are the ones of the JMH runner,
+ * e.g. a regular expression to select benchmarks or <code>-p size=1024x768</code>
+ * to reduce the matrix. The GC profiler is always added, so next to the times
+ * the allocation rate of every benchmark is reported (the same as
+ * <code>-prof gc</code>):
+ * </p>
+ * 
+ * <pre>
+ * mvn -pl jmjrst.benchmark -am package
+ * java -jar jmjrst.benchmark/target/benchmarks.jar Rotate
+ * </pre>
+ */
+public final class Benchmarks {
+  private Benchmarks() {
+    super();
+  }
+
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException
+  {
+    new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class).build()).run();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.jis.generator.Generator;
+import org.jis.options.Options;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures {@link Generator#generateImage(File, File, boolean, int, int, String)}
+ * from the JPEG on disk to the scaled JPEG on disk, for every scaling mode of
+ * the options and some source sizes. The target is the default size of the
+ * application.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerateImageBenchmark {
+  @Param({ "0", "1", "2" })
+  public int        modus;
+
+  @Param({ "1024x768", "3072x2304", "6000x4000" })
+  public String     size;
+
+  private File      dir;
+  private File      source;
+  private File      out;
+  private Generator generator;
+  private byte[]    options;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException
+  {
+    options = Sources.saveOptions();
+    Options o = Options.getInstance();
+    o.setModus(modus);
+    o.setCopyMetadata(false);
+    o.setCache(false);
+
+    dir = Files.createTempDirectory("jmjrst-bench").toFile();
+    out = new File(dir, "out");
+    out.mkdir();
+    source = Sources.jpeg(size, dir);
+    generator = new Generator(null, Sources.QUALITY);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException
+  {
+    Sources.delete(dir);
+    Sources.restoreOptions(options);
+  }
+
+  @Benchmark
+  public File generateImage() throws IOException
+  {
+    return generator.generateImage(source, out, false, 800, 600, "b_");
+  }
+}
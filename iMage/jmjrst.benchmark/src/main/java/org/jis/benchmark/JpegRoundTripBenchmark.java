@@ -0,0 +1,101 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.jis.generator.CodecPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures the JPEG codec alone with the readers and writers of the
+ * {@link CodecPool}, in memory so the disk is not part of the numbers: the
+ * decode, the encode and both in a row.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JpegRoundTripBenchmark {
+  @Param({ "1024x768", "3072x2304", "6000x4000" })
+  public String         size;
+
+  private byte[]        jpeg;
+  private BufferedImage image;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException
+  {
+    image = Sources.image(size);
+    jpeg = Sources.encode(image);
+  }
+
+  @Benchmark
+  public BufferedImage read() throws IOException
+  {
+    return decode(jpeg);
+  }
+
+  @Benchmark
+  public byte[] write() throws IOException
+  {
+    return Sources.encode(image);
+  }
+
+  @Benchmark
+  public byte[] roundTrip() throws IOException
+  {
+    return Sources.encode(decode(jpeg));
+  }
+
+  private static BufferedImage decode(byte[] bytes) throws IOException
+  {
+    CodecPool pool = CodecPool.get();
+    ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes));
+    ImageReader reader = pool.reader(iis);
+    try
+    {
+      return reader.read(0);
+    }
+    finally
+    {
+      pool.release(reader);
+      iis.close();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jis.generator.Generator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Measures {@link Generator#rotateImage(BufferedImage, double)} for the three
+ * orthogonal angles. The second benchmark passes a destination of the right
+ * size, like a caller which rotates many pictures of the same size, and shows
+ * the allocation which is saved by that.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RotateImageBenchmark {
+  @Param({ "90", "180", "270" })
+  public int            degrees;
+
+  @Param({ "1024x768", "3072x2304", "6000x4000" })
+  public String         size;
+
+  private double        radians;
+  private BufferedImage image;
+  private BufferedImage destination;
+  private Generator     generator;
+  private byte[]        options;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException
+  {
+    options = Sources.saveOptions();
+    generator = new Generator(null, Sources.QUALITY);
+    radians = Math.toRadians(degrees);
+    image = Sources.image(size);
+    destination = generator.rotateImage(image, radians);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException
+  {
+    Sources.restoreOptions(options);
+  }
+
+  @Benchmark
+  public BufferedImage rotateImage()
+  {
+    return generator.rotateImage(image, radians);
+  }
+
+  @Benchmark
+  public BufferedImage rotateImageInto()
+  {
+    return generator.rotateImage(image, radians, destination);
+  }
+}
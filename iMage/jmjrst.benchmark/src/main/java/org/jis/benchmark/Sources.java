@@ -0,0 +1,178 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.jis.generator.CodecPool;
+
+/**
+ * <p>
+ * The synthetic source images of the benchmarks. The pictures are a gradient
+ * with some noise from a fixed seed, so every run compresses the same content
+ * and the JPEG decoder has a realistic amount of work.
+ * </p>
+ */
+final class Sources {
+  /** the quality of the source JPEGs and of the benchmarked encoder */
+  static final float QUALITY = 0.8f;
+
+  /** the options file of the application, relative to the working directory */
+  private static final File OPTIONS = new File("options.properties");
+
+  private Sources() {
+    super();
+  }
+
+  /**
+   * @param size
+   *          String, the size as <code>width</code>x<code>height</code>
+   * @return int[], the width and the height
+   */
+  static int[] size(String size)
+  {
+    int x = size.indexOf('x');
+    return new int[] { Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1)) };
+  }
+
+  /**
+   * @param size
+   *          String, the size as <code>width</code>x<code>height</code>
+   * @return BufferedImage, a RGB picture of this size
+   */
+  static BufferedImage image(String size)
+  {
+    int[] wh = size(size);
+    int w = wh[0];
+    int h = wh[1];
+    BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(42);
+    int[] row = new int[ w];
+    for (int y = 0; y < h; y++)
+    {
+      for (int x = 0; x < w; x++)
+      {
+        int r = (x * 255 / w + random.nextInt(16)) & 0xff;
+        int g = (y * 255 / h + random.nextInt(16)) & 0xff;
+        int b = ((x + y) * 127 / (w + h) + random.nextInt(16)) & 0xff;
+        row[x] = (r << 16) | (g << 8) | b;
+      }
+      image.setRGB(0, y, w, 1, row, 0, w);
+    }
+    return image;
+  }
+
+  /**
+   * @param image
+   *          BufferedImage, the picture to encode
+   * @return byte[], the picture as JPEG
+   * @throws IOException
+   */
+  static byte[] encode(BufferedImage image) throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CodecPool pool = CodecPool.get();
+    ImageWriter writer = pool.writer();
+    ImageOutputStream ios = new MemoryCacheImageOutputStream(bytes);
+    try
+    {
+      writer.setOutput(ios);
+      writer.write(null, new IIOImage(image, null, null), pool.writeParam(QUALITY));
+    }
+    finally
+    {
+      pool.release(writer);
+      ios.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param size
+   *          String, the size as <code>width</code>x<code>height</code>
+   * @param dir
+   *          File, the directory of the file
+   * @return File, a JPEG of this size in the directory
+   * @throws IOException
+   */
+  static File jpeg(String size, File dir) throws IOException
+  {
+    File file = new File(dir, "source_" + size + ".jpg");
+    Files.write(file.toPath(), encode(image(size)));
+    return file;
+  }
+
+  /**
+   * <p>
+   * delete the directory with all files in it
+   * </p>
+   * 
+   * @param dir
+   *          File, the directory
+   */
+  static void delete(File dir)
+  {
+    File[] files = dir.listFiles();
+    if (files != null) for (File f : files)
+    {
+      if (f.isDirectory()) delete(f);
+      else f.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * <p>
+   * read the options file in the working directory. The setters of the options
+   * save the whole file, so the benchmarks keep the one of the user and put it
+   * back with {@link #restoreOptions(byte[])} when they are done.
+   * </p>
+   * 
+   * @return byte[], the content of the file, null if there is none
+   * @throws IOException
+   *           if the file can't be read
+   */
+  static byte[] saveOptions() throws IOException
+  {
+    return OPTIONS.isFile() ? Files.readAllBytes(OPTIONS.toPath()) : null;
+  }
+
+  /**
+   * <p>
+   * put the options file back as {@link #saveOptions()} found it
+   * </p>
+   * 
+   * @param saved
+   *          byte[], the content of the file, null to delete it
+   * @throws IOException
+   *           if the file can't be written
+   */
+  static void restoreOptions(byte[] saved) throws IOException
+  {
+    if (saved == null) Files.deleteIfExists(OPTIONS.toPath());
+    else Files.write(OPTIONS.toPath(), saved);
+  }
+}
@@ -25,6 +25,7 @@ import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.Locale;
 
@@ -48,6 +49,8 @@ import org.jis.view.FileTree;
 import org.jis.view.List;
 import org.jis.view.Menu;
 import org.jis.view.Preview;
+import org.jis.view.RingBufferDocument;
+import org.jis.view.RotatingLog;
 import org.jis.view.Status;
 import org.jis.view.Toolbar;
 import org.jis.view.dialog.OptionsEdit;
@@ -134,7 +137,23 @@ public class Main extends JFrame {
     Font font = new Font(mes.getString("Main.1"), Font.BOLD, 12);
     text.setForeground(Color.black);
     text.setFont(font);
-    jOutputDoc = text.getStyledDocument();
+    // only the last lines stay in the pane, the whole output can go to a file
+    RotatingLog log = null;
+    if (o.isLogFile())
+    {
+      final RotatingLog l = new RotatingLog(new File(o.getLogDir()), "jmjrst.log", o.getLogFileSize() * 1024L * 1024L, o.getLogFiles());
+      // the buffered text is written on exit
+      Runtime.getRuntime().addShutdownHook(new Thread()
+      {
+        public void run()
+        {
+          l.close();
+        }
+      });
+      log = l;
+    }
+    jOutputDoc = new RingBufferDocument(o.getLogLines(), log);
+    text.setStyledDocument(jOutputDoc);
 
     StyleConstants.setForeground(outputAtr, Color.BLACK);
     StyleConstants.setForeground(readyAtr, Color.BLUE);
@@ -215,6 +234,7 @@ public class Main extends JFrame {
         System.out.println(mes.getString("Main.13"));
         System.out.println(mes.getString("Main.14"));
         System.out.println(mes.getString("Main.15"));
+        System.out.println(mes.getString("Main.16"));
       }
 
       String input = null;
@@ -222,6 +242,7 @@ public class Main extends JFrame {
       String quality = null;
       String hmax = null;
       String vmax = null;
+      String watch = null;
       File fi = null;
       File fo = null;
       int q = 75;
@@ -236,6 +257,7 @@ public class Main extends JFrame {
           if (args[i].substring(0, 4).equalsIgnoreCase(mes.getString("hmax"))) hmax = args[i].substring(args[i].lastIndexOf(mes.getString("=")) + 1, args[i].length()).trim();
           if (args[i].substring(0, 4).equalsIgnoreCase(mes.getString("vmax"))) vmax = args[i].substring(args[i].lastIndexOf(mes.getString("=")) + 1, args[i].length()).trim();
           if (args[i].substring(0, 5).equalsIgnoreCase(mes.getString("input"))) input = args[i].substring(args[i].lastIndexOf(mes.getString("=")) + 1, args[i].length()).trim();
+          if (args[i].substring(0, 5).equalsIgnoreCase(mes.getString("watch"))) watch = args[i].substring(args[i].lastIndexOf(mes.getString("=")) + 1, args[i].length()).trim();
           if (args[i].substring(0, 6).equalsIgnoreCase(mes.getString("output"))) output = args[i].substring(args[i].lastIndexOf(mes.getString("=")) + 1, args[i].length()).trim();
           if (args[i].substring(0, 7).equalsIgnoreCase(mes.getString("quality"))) quality = args[i].substring(args[i].lastIndexOf(mes.getString("=")) + 1, args[i].length()).trim();
         }
@@ -272,7 +294,23 @@ public class Main extends JFrame {
         if (vmax != null) v = Integer.parseInt(vmax);
       }
       System.out.println(mes.getString("Main.30") + fi.toString() + mes.getString("Main.31") + fo.toString() + mes.getString("Main.32") + q); //$NON-NLS-3$
-      new Generator(null, q / 100.0F).generateText(fi, fo, h, v);
+      if (Boolean.parseBoolean(watch))
+      {
+        // several input directories are separated like a class path
+        String[] dirs = input.split(File.pathSeparator);
+        File[] inputs = new File[ dirs.length];
+        for (int i = 0; i < dirs.length; i++)
+          inputs[i] = new File(dirs[i]);
+        try
+        {
+          new Generator(null, q / 100.0F).watch(inputs, fo);
+        }
+        catch (IOException e)
+        {
+          e.printStackTrace();
+        }
+      }
+      else new Generator(null, q / 100.0F).generateText(fi, fo, h, v);
     }
   }
 
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Generates the images of a whole directory tree without a window. The
+ * directories of the input are mirrored into the output, every image is
+ * generated by a task of the {@link ImageJobExecutor}, so all cores are used.
+ * No more images are in work than there are cores and the
+ * {@link MemoryBudget} allows.
+ * </p>
+ * <p>
+ * The progress is printed as one JSON object per line, e.g.
+ * </p>
+ * 
+ * <pre>
+ * {"event":"start","files":2,"input":"/photos"}
+ * {"event":"image","index":1,"total":2,"file":"2019/a.jpg","status":"ok","millis":412}
+ * {"event":"done","files":2,"failed":0,"millis":803}
+ * </pre>
+ */
+public class BatchGenerator {
+  private final Generator    generator;
+  private final PrintStream  out;
+  private final int          threads;
+  private final MemoryBudget budget = MemoryBudget.fromOptions();
+
+  /**
+   * @param generator
+   *          Generator, generates the single images
+   * @param out
+   *          PrintStream, receives the JSON lines, null for none
+   * @param threads
+   *          int, max. number of images in work
+   */
+  public BatchGenerator(Generator generator, PrintStream out, int threads) {
+    super();
+    this.generator = generator;
+    this.out = out;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * <p>
+   * find the JPEGs of the tree. An output directory inside the input is not
+   * searched, unless it is the input itself.
+   * </p>
+   * 
+   * @param input
+   *          File, the root of the input tree
+   * @param output
+   *          File, the root of the output tree
+   * @return List, the images sorted by their path
+   * @throws IOException
+   */
+  public static List<File> collect(File input, File output) throws IOException
+  {
+    final Path root = input.toPath().toAbsolutePath().normalize();
+    final Path skip = output.toPath().toAbsolutePath().normalize();
+    final List<File> files = new ArrayList<File>();
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+    {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+      {
+        return !dir.equals(root) && dir.equals(skip) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+      {
+        if (attrs.isRegularFile() && isJpeg(file.toFile())) files.add(file.toFile());
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e)
+      {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    Collections.sort(files);
+    return files;
+  }
+
+  static boolean isJpeg(File file)
+  {
+    String name = file.getName();
+    String end = name.substring(name.lastIndexOf(".") + 1);
+    return end.equalsIgnoreCase("jpg") || end.equalsIgnoreCase("jpeg");
+  }
+
+  /**
+   * <p>
+   * generate the images of the input tree into the mirrored output tree and
+   * wait until all are done
+   * </p>
+   * 
+   * @param input
+   *          File, the root of the input tree
+   * @param output
+   *          File, the root of the output tree
+   * @param width
+   *          int, max. width of the images
+   * @param height
+   *          int, max. height of the images
+   * @param praefix
+   *          String, praefix for the filenames of the scaled images
+   * @return int, the number of failed images
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public int run(File input, File output, final int width, final int height, final String praefix) throws IOException, InterruptedException
+  {
+    final Path root = input.toPath().toAbsolutePath().normalize();
+    final Path target = output.toPath().toAbsolutePath().normalize();
+    final List<File> files = collect(input, output);
+    final int total = files.size();
+    final AtomicInteger index = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+    final Semaphore slots = new Semaphore(threads);
+    long start = System.currentTimeMillis();
+
+    print("{\"event\":\"start\",\"files\":" + total + ",\"input\":" + quote(root.toString()) + "}");
+    for (File file : files)
+    {
+      Path relative = root.relativize(file.toPath().toAbsolutePath().normalize());
+      submit(new Image(file, target.resolve(relative).getParent().toFile(), relative.toString().replace(File.separatorChar, '/'))
+      {
+        String fields()
+        {
+          return "\"index\":" + index.incrementAndGet() + ",\"total\":" + total + ",";
+        }
+
+        void done(boolean ok)
+        {
+          if (!ok) failed.incrementAndGet();
+        }
+      }, slots, width, height, praefix);
+    }
+
+    // all slots are free again, when the last image is done
+    slots.acquire(threads);
+    slots.release(threads);
+    print("{\"event\":\"done\",\"files\":" + total + ",\"failed\":" + failed.get() + ",\"millis\":" + (System.currentTimeMillis() - start) + "}");
+    return failed.get();
+  }
+
+  /**
+   * <p>
+   * wait for a free slot and enough heap for the decoded image, then generate
+   * the image on the {@link ImageJobExecutor} and print its JSON line. The slot
+   * is released after the line is printed.
+   * </p>
+   * 
+   * @param image
+   *          Image, the image and what is done before and after it
+   * @param slots
+   *          Semaphore, one permit for every image in work
+   * @param width
+   *          int, max. width of the image
+   * @param height
+   *          int, max. height of the image
+   * @param praefix
+   *          String, praefix for the filename of the scaled image
+   * @throws InterruptedException
+   *           if the wait was interrupted, the image is not started
+   */
+  void submit(final Image image, final Semaphore slots, final int width, final int height, final String praefix) throws InterruptedException
+  {
+    final long cost = generator.estimateMemory(image.file, new ImageTarget[] { new ImageTarget(width, height, image.dir) });
+    slots.acquire();
+    try
+    {
+      while (!budget.acquire(cost, 1000))
+      {
+        // the running images return their bytes
+      }
+    }
+    catch (InterruptedException e)
+    {
+      slots.release();
+      throw e;
+    }
+
+    ImageJobExecutor.get().execute(new Runnable()
+    {
+      public void run()
+      {
+        long begin = System.currentTimeMillis();
+        String error = null;
+        try
+        {
+          image.dir.mkdirs();
+          File out = generator.generateImage(image.file, image.dir, false, width, height, praefix);
+          if (out.isFile()) image.written(out);
+          else error = "not written";
+        }
+        catch (Exception e)
+        {
+          error = String.valueOf(e);
+        }
+        catch (OutOfMemoryError e)
+        {
+          error = String.valueOf(e);
+        }
+        finally
+        {
+          budget.release(cost);
+        }
+
+        try
+        {
+          image.done(error == null);
+          print("{\"event\":\"image\"," + image.fields() + "\"file\":" + quote(image.relative) + ",\"status\":\"" + (error == null ? "ok" : "failed") + "\",\"millis\":"
+                + (System.currentTimeMillis() - begin) + (error == null ? "" : ",\"error\":" + quote(error)) + "}");
+        }
+        finally
+        {
+          slots.release();
+        }
+      }
+    });
+  }
+
+  void print(String line)
+  {
+    if (out == null) return;
+    synchronized (out)
+    {
+      out.println(line);
+      out.flush();
+    }
+  }
+
+  /**
+   * @return String, the text as JSON string
+   */
+  static String quote(String text)
+  {
+    StringBuilder sb = new StringBuilder(text.length() + 2);
+    sb.append('"');
+    for (int i = 0; i < text.length(); i++)
+    {
+      char c = text.charAt(i);
+      switch (c)
+      {
+      case '"':
+        sb.append("\\\"");
+        break;
+      case '\\':
+        sb.append("\\\\");
+        break;
+      case '\n':
+        sb.append("\\n");
+        break;
+      case '\r':
+        sb.append("\\r");
+        break;
+      case '\t':
+        sb.append("\\t");
+        break;
+      default:
+        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+        else sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /**
+   * <p>
+   * an image of {@link #submit}. The batch and the watch folder add what they
+   * do before and after the image.
+   * </p>
+   */
+  static class Image {
+    final File   file;
+    final File   dir;
+    final String relative;
+
+    /**
+     * @param file
+     *          File, the source image
+     * @param dir
+     *          File, the output directory
+     * @param relative
+     *          String, the path of the image in the JSON line
+     */
+    Image(File file, File dir, String relative) {
+      this.file = file;
+      this.dir = dir;
+      this.relative = relative;
+    }
+
+    /**
+     * @return String, the fields of the JSON line before the file, each
+     *         followed by a comma
+     */
+    String fields()
+    {
+      return "";
+    }
+
+    /**
+     * <p>
+     * called on the worker, after the image was written
+     * </p>
+     */
+    void written(File out) throws IOException
+    {
+    }
+
+    /**
+     * <p>
+     * called on the worker, when the image is done and before its line is
+     * printed
+     * </p>
+     */
+    void done(boolean ok)
+    {
+    }
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Properties;
+
+import org.jis.options.Options;
+
+/**
+ * <p>
+ * The manifest of an output directory. For every generated image it records
+ * the source (path, size, modification time and content hash) and the
+ * parameters the image was generated with. A later run skips the images which
+ * are still up to date.
+ * </p>
+ * <p>
+ * The manifest is stored as XML properties in the output directory, the key
+ * is the path of the generated image relative to this directory. The value
+ * holds the size, the modification time and the hash of the source, the hash
+ * of the parameters and the path of the source, separated by tabs. The path
+ * comes last, so a tab in it doesn't break the entry, and the free text of the
+ * parameters is only stored as hash.
+ * </p>
+ */
+public class BuildManifest {
+  public static final String FILE_NAME = ".jmjrst-manifest.xml";
+
+  private static final int   LENGTH    = 0;
+  private static final int   MODIFIED  = 1;
+  private static final int   HASH      = 2;
+  private static final int   PARAMS    = 3;
+  private static final int   SOURCE    = 4;
+
+  private final File         dir;
+  private final File         file;
+  private final Properties   entries   = new Properties();
+
+  /**
+   * @param dir
+   *          File, the output directory, an existing manifest is loaded
+   */
+  public BuildManifest(File dir) {
+    super();
+    this.dir = dir.getAbsoluteFile();
+    this.file = new File(this.dir, FILE_NAME);
+
+    if (file.isFile())
+    {
+      try (InputStream in = new FileInputStream(file))
+      {
+        entries.loadFromXML(in);
+      }
+      catch (IOException e)
+      {
+        // a broken manifest only means everything is generated again
+        System.err.println("Can't read manifest " + file + ": " + e.getMessage());
+        entries.clear();
+      }
+    }
+  }
+
+  /**
+   * @param dir
+   *          File, an output directory
+   * @return true, if the directory contains a manifest
+   */
+  public static boolean exists(File dir)
+  {
+    return new File(dir, FILE_NAME).isFile();
+  }
+
+  /**
+   * <p>
+   * the parameters which change the generated image
+   * </p>
+   * 
+   * @param target
+   *          ImageTarget, the requested size
+   * @param praefix
+   *          String, praefix of the filename
+   * @return String, the parameters as one string
+   */
+  public static String params(ImageTarget target, String praefix)
+  {
+    Options o = Options.getInstance();
+    StringBuilder sb = new StringBuilder();
+    sb.append("q=").append(o.getQuality());
+    sb.append(";modus=").append(o.getModus());
+    sb.append(";w=").append(target.width);
+    sb.append(";h=").append(target.height);
+    sb.append(";praefix=").append(praefix);
+    sb.append(";aa=").append(o.isAntialiasing());
+    sb.append(";meta=").append(o.isCopyMetadata());
+    if (o.isCopyMetadata() && (o.isStripGps() || o.isStripThumbnail())) sb.append(";strip=").append(o.isStripGps()).append(',').append(o.isStripThumbnail());
+    sb.append(";copyright=").append(o.isCopyright());
+    if (o.isCopyright())
+    {
+      sb.append(";text=").append(o.getCopyrightText());
+      sb.append(";rgb=").append(o.getCopyright_r()).append(',').append(o.getCopyright_g()).append(',').append(o.getCopyright_b());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param source
+   *          File, the source image
+   * @param output
+   *          File, the generated image
+   * @param params
+   *          String, the parameters of the generated image
+   * @return true, if the generated image exists and was generated from the
+   *         same source with the same parameters
+   */
+  public synchronized boolean isUpToDate(File source, File output, String params)
+  {
+    String[] entry = entry(output);
+    if (entry == null || !output.isFile() || !source.isFile()) return false;
+    if (!entry[SOURCE].equals(source.getAbsolutePath()) || !entry[PARAMS].equals(ContentHash.of(params))) return false;
+
+    if (Long.parseLong(entry[LENGTH]) != source.length()) return false;
+    if (Long.parseLong(entry[MODIFIED]) == source.lastModified()) return true;
+
+    // only touched? then compare the content
+    try
+    {
+      if (!entry[HASH].equals(ContentHash.of(source))) return false;
+      entry[MODIFIED] = "" + source.lastModified();
+      put(output, entry);
+      return true;
+    }
+    catch (IOException e)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * <p>
+   * record a generated image
+   * </p>
+   * 
+   * @param source
+   *          File, the source image
+   * @param output
+   *          File, the generated image
+   * @param params
+   *          String, the parameters of the generated image
+   * @throws IOException
+   *           if the source can't be read
+   */
+  public void record(File source, File output, String params) throws IOException
+  {
+    // hash outside of the lock, the images are recorded in parallel
+    record(source, output, params, ContentHash.of(source));
+  }
+
+  /**
+   * <p>
+   * record a generated image whose source was already hashed
+   * </p>
+   * 
+   * @param source
+   *          File, the source image
+   * @param output
+   *          File, the generated image
+   * @param params
+   *          String, the parameters of the generated image
+   * @param hash
+   *          String, the {@link ContentHash} of the source
+   */
+  public synchronized void record(File source, File output, String params, String hash)
+  {
+    put(output, new String[] { "" + source.length(), "" + source.lastModified(), hash, ContentHash.of(params), source.getAbsolutePath() });
+  }
+
+  /**
+   * <p>
+   * delete the generated images whose source doesn't exist anymore. Entries
+   * which can't be read are only dropped, their images are kept and generated
+   * again.
+   * </p>
+   * 
+   * @return int, the number of deleted images
+   */
+  public synchronized int removeStale()
+  {
+    ArrayList<String> stale = new ArrayList<String>();
+    for (String key : entries.stringPropertyNames())
+    {
+      String[] entry = parse(entries.getProperty(key));
+      if (entry == null) entries.remove(key);
+      else if (!new File(entry[SOURCE]).isFile()) stale.add(key);
+    }
+
+    int deleted = 0;
+    for (String key : stale)
+    {
+      entries.remove(key);
+      if (new File(dir, key).delete()) deleted++;
+    }
+    return deleted;
+  }
+
+  /**
+   * <p>
+   * write the manifest into the output directory
+   * </p>
+   */
+  public synchronized void save()
+  {
+    try (OutputStream out = new FileOutputStream(file))
+    {
+      entries.storeToXML(out, new Date(System.currentTimeMillis()).toString());
+    }
+    catch (IOException e)
+    {
+      System.err.println("Can't write manifest " + file + ": " + e.getMessage());
+    }
+  }
+
+  private String[] entry(File output)
+  {
+    String value = entries.getProperty(key(output));
+    return value == null ? null : parse(value);
+  }
+
+  /**
+   * @return String[], the fields of the entry, null if it is not a valid entry
+   */
+  private static String[] parse(String value)
+  {
+    String[] entry = value.split("\t", SOURCE + 1);
+    if (entry.length != SOURCE + 1 || entry[SOURCE].isEmpty()) return null;
+    try
+    {
+      Long.parseLong(entry[LENGTH]);
+      Long.parseLong(entry[MODIFIED]);
+      return entry;
+    }
+    catch (NumberFormatException e)
+    {
+      return null;
+    }
+  }
+
+  private void put(File output, String[] entry)
+  {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < entry.length; i++)
+    {
+      if (i > 0) sb.append('\t');
+      sb.append(entry[i]);
+    }
+    entries.setProperty(key(output), sb.toString());
+  }
+
+  private String key(File output)
+  {
+    return dir.toPath().relativize(output.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * <p>
+ * ImageOutputStream writing into a growing array on the heap. Unlike a
+ * MemoryCacheImageOutputStream around a ByteArrayOutputStream the encoded
+ * image is held in one array, which is taken without copying it again.
+ * </p>
+ */
+public class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+  // the largest array the VM allocates
+  private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+  private byte[]           buf;
+  private int              count    = 0;
+
+  /**
+   * @param size
+   *          int, the initial size of the array in bytes
+   */
+  public ByteArrayImageOutputStream(int size) {
+    super();
+    this.buf = new byte[ Math.max(16, size)];
+  }
+
+  public void write(int b) throws IOException
+  {
+    checkClosed();
+    flushBits();
+    ensure(streamPos + 1);
+    buf[(int) streamPos++] = (byte) b;
+    count = Math.max(count, (int) streamPos);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    checkClosed();
+    flushBits();
+    ensure(streamPos + len);
+    System.arraycopy(b, off, buf, (int) streamPos, len);
+    streamPos += len;
+    count = Math.max(count, (int) streamPos);
+  }
+
+  public int read() throws IOException
+  {
+    checkClosed();
+    bitOffset = 0;
+    if (streamPos >= count) return -1;
+    return buf[(int) streamPos++] & 0xff;
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException
+  {
+    checkClosed();
+    bitOffset = 0;
+    if (streamPos >= count) return -1;
+    int n = (int) Math.min(len, count - streamPos);
+    System.arraycopy(buf, (int) streamPos, b, off, n);
+    streamPos += n;
+    return n;
+  }
+
+  public long length()
+  {
+    return count;
+  }
+
+  /**
+   * @return byte[], the array with the written bytes at its start, it may be
+   *         longer than {@link #size()}
+   */
+  public byte[] buffer()
+  {
+    return buf;
+  }
+
+  /**
+   * @return int, the number of bytes written
+   */
+  public int size()
+  {
+    return count;
+  }
+
+  /**
+   * @return byte[], the written bytes, the array itself if it has their size
+   */
+  public byte[] toByteArray()
+  {
+    return count == buf.length ? buf : Arrays.copyOf(buf, count);
+  }
+
+  private void ensure(long size) throws IOException
+  {
+    if (size <= buf.length) return;
+    if (size > MAX_SIZE) throw new IOException("image too big for an array");
+    buf = Arrays.copyOf(buf, (int) Math.min(MAX_SIZE, Math.max(size, 2L * buf.length)));
+  }
+}
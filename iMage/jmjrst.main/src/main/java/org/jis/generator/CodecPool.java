@@ -0,0 +1,156 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>
+ * Keeps the image readers and the JPEG writer of one thread, so they are
+ * looked up in the ImageIO registry only once per thread and not for every
+ * image. A reader or writer is reset when it is released and can be used for
+ * the next image afterwards. The streams are not owned by the pool, the caller
+ * has to close them.
+ * </p>
+ */
+public final class CodecPool {
+  private static final ThreadLocal<CodecPool> POOL    = new ThreadLocal<CodecPool>()
+  {
+    protected CodecPool initialValue()
+    {
+      return new CodecPool();
+    }
+  };
+
+  private final ArrayList<ImageReader>        readers = new ArrayList<ImageReader>();
+  private ImageWriter                         writer;
+  private JPEGImageWriteParam                 writeParam;
+
+  private CodecPool() {
+    super();
+  }
+
+  /**
+   * @return the pool of the current thread
+   */
+  public static CodecPool get()
+  {
+    return POOL.get();
+  }
+
+  /**
+   * <p>
+   * get a reader for the stream, the input of the reader is already set
+   * </p>
+   * 
+   * @param iis
+   *          ImageInputStream, the image to read
+   * @return ImageReader, a reader of this thread
+   * @throws IOException
+   *           if no reader can decode the stream
+   */
+  public ImageReader reader(ImageInputStream iis) throws IOException
+  {
+    if (iis == null) throw new IOException("Can't create an ImageInputStream!");
+
+    ImageReader reader = null;
+    for (ImageReader r : readers)
+    {
+      if (r.getOriginatingProvider().canDecodeInput(iis))
+      {
+        reader = r;
+        break;
+      }
+    }
+
+    if (reader == null)
+    {
+      Iterator<ImageReader> it = ImageIO.getImageReaders(iis);
+      if (!it.hasNext()) throw new IOException("No ImageReader found!");
+      reader = it.next();
+      readers.add(reader);
+    }
+
+    reader.setInput(iis, true);
+    return reader;
+  }
+
+  /**
+   * @param reader
+   *          ImageReader, a reader of this pool, which is not used anymore
+   */
+  public void release(ImageReader reader)
+  {
+    reader.reset();
+  }
+
+  /**
+   * @return the JPEG writer of this thread
+   */
+  public ImageWriter writer()
+  {
+    if (writer == null) writer = ImageIO.getImageWritersByFormatName("jpg").next();
+    return writer;
+  }
+
+  /**
+   * <p>
+   * get the write parameter of this thread. Everything a previous image may
+   * have changed on it is set back, so only the quality differs between two
+   * calls.
+   * </p>
+   * 
+   * @param quality
+   *          float, the JPEG quality
+   * @return the write parameter of this thread, set to the quality
+   */
+  public JPEGImageWriteParam writeParam(float quality)
+  {
+    if (writeParam == null) writeParam = new JPEGImageWriteParam(Locale.getDefault());
+
+    writeParam.setSourceRegion(null);
+    writeParam.setSourceSubsampling(1, 1, 0, 0);
+    writeParam.setSourceBands(null);
+    writeParam.setDestinationType(null);
+    writeParam.setDestinationOffset(new Point());
+    writeParam.setProgressiveMode(ImageWriteParam.MODE_COPY_FROM_METADATA);
+    writeParam.unsetEncodeTables();
+    writeParam.setOptimizeHuffmanTables(true);
+    writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    writeParam.setCompressionQuality(quality);
+    return writeParam;
+  }
+
+  /**
+   * @param writer
+   *          ImageWriter, the writer of this pool, which is not used anymore
+   */
+  public void release(ImageWriter writer)
+  {
+    writer.reset();
+  }
+}
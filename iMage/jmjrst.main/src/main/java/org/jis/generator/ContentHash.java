@@ -0,0 +1,103 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>
+ * SHA-1 hashes of file contents and strings as hex strings
+ * </p>
+ */
+public final class ContentHash {
+
+  private ContentHash() {
+  }
+
+  /**
+   * @param file
+   *          File, the file to hash
+   * @return String, the hash of the content of the file
+   * @throws IOException
+   */
+  public static String of(File file) throws IOException
+  {
+    MessageDigest digest = digest();
+    byte[] buffer = new byte[ 64 * 1024];
+    try (InputStream in = new FileInputStream(file))
+    {
+      for (int len; (len = in.read(buffer)) != -1;)
+        digest.update(buffer, 0, len);
+    }
+    return hex(digest.digest());
+  }
+
+  /**
+   * @param data
+   *          byte[], the bytes to hash
+   * @return String, the hash of the bytes
+   */
+  public static String of(byte[] data)
+  {
+    return hex(digest().digest(data));
+  }
+
+  /**
+   * @param text
+   *          String, the text to hash
+   * @return String, the hash of the UTF-8 bytes of the text
+   */
+  public static String of(String text)
+  {
+    try
+    {
+      return of(text.getBytes("UTF-8"));
+    }
+    catch (UnsupportedEncodingException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static MessageDigest digest()
+  {
+    try
+    {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes)
+  {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes)
+    {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+      sb.append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+}
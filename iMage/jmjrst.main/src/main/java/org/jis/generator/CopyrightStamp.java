@@ -0,0 +1,118 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * The copyright text rendered once into a transparent image. All images of a
+ * target size get the same font size, so the text is laid out and rasterized
+ * once per text, size, colour and rendering hints and then only blitted onto
+ * every image. The stamps are shared by all threads.
+ * </p>
+ */
+final class CopyrightStamp {
+  // a few sizes per job, the cache is emptied if the options change often
+  private static final int                                      MAX_STAMPS = 32;
+  private static final ConcurrentHashMap<List<Object>, CopyrightStamp> STAMPS     = new ConcurrentHashMap<List<Object>, CopyrightStamp>();
+
+  // the rendered text or null, if the text has no pixels
+  private final BufferedImage                                   image;
+  // position of the stamp relative to the start of the baseline
+  private final int                                             dx;
+  private final int                                             dy;
+
+  private CopyrightStamp(String text, Font font, Color color, RenderingHints hints) {
+    BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+    Graphics2D g = probe.createGraphics();
+    g.setRenderingHints(hints);
+    GlyphVector glyphs = font.createGlyphVector(g.getFontRenderContext(), text);
+    // one pixel more on every side for the antialiasing
+    Rectangle bounds = glyphs.getPixelBounds(g.getFontRenderContext(), 0, 0);
+    bounds.grow(1, 1);
+    g.dispose();
+
+    if (text.length() == 0 || bounds.width <= 2 || bounds.height <= 2)
+    {
+      image = null;
+      dx = 0;
+      dy = 0;
+      return;
+    }
+
+    image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+    dx = bounds.x;
+    dy = bounds.y;
+    g = image.createGraphics();
+    g.setRenderingHints(hints);
+    g.setColor(color);
+    g.setFont(font);
+    g.drawString(text, -dx, -dy);
+    g.dispose();
+  }
+
+  /**
+   * @param text
+   *          String, the copyright text
+   * @param size
+   *          int, the font size
+   * @param color
+   *          Color, the colour of the text
+   * @param hints
+   *          RenderingHints, the hints of the graphics the stamp is drawn to
+   * @return CopyrightStamp, the stamp from the cache or a new one
+   */
+  static CopyrightStamp get(String text, int size, Color color, RenderingHints hints)
+  {
+    List<Object> key = Arrays.<Object> asList(text, size, color.getRGB(), hints);
+    CopyrightStamp stamp = STAMPS.get(key);
+    if (stamp == null)
+    {
+      stamp = new CopyrightStamp(text, new Font("Helvetica", Font.BOLD, size), color, hints);
+      if (STAMPS.size() >= MAX_STAMPS) STAMPS.clear();
+      CopyrightStamp cached = STAMPS.putIfAbsent(key, stamp);
+      if (cached != null) stamp = cached;
+    }
+    return stamp;
+  }
+
+  /**
+   * <p>
+   * draw the stamp like <code>drawString(text, x, y)</code>
+   * </p>
+   * 
+   * @param g
+   *          Graphics2D, the graphics of the image
+   * @param x
+   *          int, start of the baseline
+   * @param y
+   *          int, the baseline
+   */
+  void draw(Graphics2D g, int x, int y)
+  {
+    if (image != null) g.drawImage(image, x + dx, y + dy, null);
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jis.options.Options;
+
+/**
+ * <p>
+ * A local on-disk cache of generated images, shared by all jobs and galleries.
+ * The key is built from the content hash of the source and the parameters of
+ * the generated image, so the same photo in the same size is decoded, scaled
+ * and encoded only once. A hit is copied to the output.
+ * </p>
+ * <p>
+ * The cache is bounded in size, the least recently used images are evicted
+ * first. The access order survives restarts through the modification time of
+ * the cached files.
+ * </p>
+ */
+public class DerivedImageCache {
+  private static DerivedImageCache instance;
+
+  private final File               dir;
+  private final long               maxSize;
+  // key -> size of the cached file, in access order
+  private final Map<String, Long>  entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+  private long                     size    = 0;
+
+  /**
+   * @param dir
+   *          File, the cache directory
+   * @param maxSize
+   *          long, max. size of the cache in bytes
+   */
+  public DerivedImageCache(File dir, long maxSize) {
+    super();
+    this.dir = dir;
+    this.maxSize = maxSize;
+    dir.mkdirs();
+    load();
+  }
+
+  /**
+   * @return the cache configured in the Options or null, if the cache is
+   *         disabled
+   */
+  public static synchronized DerivedImageCache get()
+  {
+    Options o = Options.getInstance();
+    if (!o.isCache())
+    {
+      instance = null;
+      return null;
+    }
+
+    File dir = new File(o.getCacheDir());
+    long maxSize = o.getCacheSize() * 1024L * 1024L;
+    if (instance == null || !instance.dir.equals(dir) || instance.maxSize != maxSize) instance = new DerivedImageCache(dir, maxSize);
+    return instance;
+  }
+
+  /**
+   * @param sourceHash
+   *          String, content hash of the source image
+   * @param target
+   *          ImageTarget, the requested size
+   * @return String, the key of the generated image
+   */
+  public static String key(String sourceHash, ImageTarget target)
+  {
+    return ContentHash.of(sourceHash + "|" + BuildManifest.params(target, ""));
+  }
+
+  /**
+   * <p>
+   * copy a cached image to the output
+   * </p>
+   * 
+   * @param key
+   *          String, the key of the image
+   * @param dest
+   *          File, the output file
+   * @return true, if the image was in the cache and copied
+   */
+  public boolean fetch(String key, File dest)
+  {
+    File cached = lookup(key);
+    if (cached == null) return false;
+
+    try
+    {
+      Files.copy(cached.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return true;
+    }
+    catch (IOException e)
+    {
+      // evicted in the meantime or broken, generate it again
+      forget(key);
+      return false;
+    }
+  }
+
+  /**
+   * <p>
+   * read a cached image
+   * </p>
+   * 
+   * @param key
+   *          String, the key of the image
+   * @return byte[], the encoded image or null, if it is not in the cache
+   */
+  public byte[] fetch(String key)
+  {
+    File cached = lookup(key);
+    if (cached == null) return null;
+
+    try
+    {
+      return Files.readAllBytes(cached.toPath());
+    }
+    catch (IOException e)
+    {
+      forget(key);
+      return null;
+    }
+  }
+
+  private synchronized File lookup(String key)
+  {
+    if (entries.get(key) == null) return null;
+    File cached = file(key);
+    cached.setLastModified(System.currentTimeMillis());
+    return cached;
+  }
+
+  private synchronized void forget(String key)
+  {
+    Long removed = entries.remove(key);
+    if (removed != null) size -= removed;
+  }
+
+  /**
+   * <p>
+   * put a generated image into the cache
+   * </p>
+   * 
+   * @param key
+   *          String, the key of the image
+   * @param generated
+   *          File, the generated image
+   */
+  public void store(String key, File generated)
+  {
+    File tmp = tmp(key);
+    try
+    {
+      Files.copy(generated.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      commit(key, tmp);
+    }
+    catch (IOException e)
+    {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * <p>
+   * put an encoded image into the cache
+   * </p>
+   * 
+   * @param key
+   *          String, the key of the image
+   * @param data
+   *          byte[], the encoded image
+   */
+  public void store(String key, byte[] data)
+  {
+    File tmp = tmp(key);
+    try
+    {
+      Files.write(tmp.toPath(), data);
+      commit(key, tmp);
+    }
+    catch (IOException e)
+    {
+      tmp.delete();
+    }
+  }
+
+  private File tmp(String key)
+  {
+    file(key).getParentFile().mkdirs();
+    return new File(dir, key + "." + Thread.currentThread().getId() + ".tmp");
+  }
+
+  /**
+   * move a complete temporary file to its place in the cache
+   */
+  private void commit(String key, File tmp) throws IOException
+  {
+    File cached = file(key);
+    Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    synchronized (this)
+    {
+      Long old = entries.put(key, cached.length());
+      size += cached.length() - (old == null ? 0 : old);
+      evict();
+    }
+  }
+
+  /**
+   * @return long, the size of all cached images in bytes
+   */
+  public synchronized long size()
+  {
+    return size;
+  }
+
+  private void evict()
+  {
+    Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+    while (size > maxSize && it.hasNext())
+    {
+      Map.Entry<String, Long> eldest = it.next();
+      file(eldest.getKey()).delete();
+      size -= eldest.getValue();
+      it.remove();
+    }
+  }
+
+  private File file(String key)
+  {
+    return new File(new File(dir, key.substring(0, 2)), key + ".jpg");
+  }
+
+  /**
+   * read the cached images, the oldest modification time is the least recently
+   * used one
+   */
+  private void load()
+  {
+    ArrayList<File> files = new ArrayList<File>();
+    File[] subdirs = dir.listFiles();
+    if (subdirs != null) for (File sub : subdirs)
+    {
+      File[] cached = sub.listFiles();
+      if (cached != null) files.addAll(Arrays.asList(cached));
+    }
+
+    File[] sorted = files.toArray(new File[ files.size()]);
+    Arrays.sort(sorted, new Comparator<File>()
+    {
+      public int compare(File a, File b)
+      {
+        return Long.compare(a.lastModified(), b.lastModified());
+      }
+    });
+
+    for (File f : sorted)
+    {
+      String name = f.getName();
+      if (!name.endsWith(".jpg")) continue;
+      entries.put(name.substring(0, name.length() - 4), f.length());
+      size += f.length();
+    }
+    evict();
+  }
+}
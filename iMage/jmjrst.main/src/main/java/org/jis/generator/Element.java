@@ -8,15 +8,26 @@ public class Element {
   public final int width;
   public final int height;
   public final File outDir;
+  public final ImageTarget[] targets;
+  // bytes reserved in the MemoryBudget while the element is in work
+  long cost = 0;
+
+  // marks the end of the queue of a Producer
+  static final Element END = new Element(-1, null, new ImageTarget(0, 0, null));
   
   
   
   public Element(int index, File file, int width, int height, File outDir) {
+    this(index, file, new ImageTarget(width, height, outDir));
+  }
+
+  public Element(int index, File file, ImageTarget... targets) {
     super();
     this.file = file;
     this.index = index;
-    this.width = width;
-    this.height = height;
-    this.outDir = outDir;
+    this.targets = targets;
+    this.width = targets[0].width;
+    this.height = targets[0].height;
+    this.outDir = targets[0].out;
   }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * <p>
+ * Reads and changes the EXIF Orientation tag (0x0112) of a JPEG file. A
+ * rotation only updates the two bytes of the tag in the APP1 segment, the image
+ * data is not touched. The orientation is applied to the pixels when the image
+ * is scaled.
+ * </p>
+ */
+public final class ExifOrientation {
+  /** no orientation tag or the image is shown as it is stored */
+  public static final int  NORMAL        = 1;
+
+  private static final int ORIENTATION   = 0x0112;
+  private static final int TYPE_SHORT    = 3;
+  private static final int APP1          = 0xE1;
+  private static final int SOS           = 0xDA;
+  private static final int EOI           = 0xD9;
+
+  // orientation after a further quarter turn clockwise, index is the orientation
+  private static final int[] CLOCKWISE   = { 0, 6, 7, 8, 5, 2, 3, 4, 1 };
+
+  private ExifOrientation() {
+  }
+
+  /**
+   * @param orientation
+   *          int, the orientation 1..8
+   * @param degrees
+   *          int, a clockwise rotation by a multiple of 90 degrees
+   * @return int, the orientation of the rotated image
+   */
+  public static int rotate(int orientation, int degrees)
+  {
+    if (orientation < 1 || orientation > 8) orientation = NORMAL;
+    for (int turns = (((degrees / 90) % 4) + 4) % 4; turns > 0; turns--)
+      orientation = CLOCKWISE[orientation];
+    return orientation;
+  }
+
+  /**
+   * @param file
+   *          File, a JPEG file
+   * @return int, the orientation 1..8, or 0 if the file has no orientation tag
+   */
+  public static int read(File file)
+  {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
+    {
+      Tag tag = locate(raf);
+      return tag == null ? 0 : tag.value;
+    }
+    catch (IOException e)
+    {
+      return 0;
+    }
+  }
+
+  /**
+   * @param app1
+   *          byte[], the data of an APP1 segment without marker and length
+   * @return int, the orientation 1..8, or 0 if the segment has no orientation
+   *         tag
+   */
+  public static int read(byte[] app1)
+  {
+    Tag tag = locate(app1);
+    return tag == null ? 0 : tag.value;
+  }
+
+  /**
+   * <p>
+   * set the orientation of an APP1 segment to {@link #NORMAL}, after the
+   * orientation was applied to the pixels
+   * </p>
+   * 
+   * @param app1
+   *          byte[], the data of an APP1 segment without marker and length
+   * @return byte[], a copy with the normal orientation, the segment itself if
+   *         it has no orientation tag
+   */
+  public static byte[] normalize(byte[] app1)
+  {
+    Tag tag = locate(app1);
+    if (tag == null || tag.value == NORMAL) return app1;
+    byte[] copy = app1.clone();
+    put(copy, tag, NORMAL);
+    return copy;
+  }
+
+  /**
+   * <p>
+   * rotate a JPEG file clockwise by updating its orientation tag in place
+   * </p>
+   * 
+   * @param file
+   *          File, a JPEG file
+   * @param degrees
+   *          int, a multiple of 90
+   * @return boolean, false if the file has no orientation tag, the caller has
+   *         to rotate the pixels
+   * @throws IOException
+   */
+  public static boolean rotate(File file, int degrees) throws IOException
+  {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+    {
+      Tag tag = locate(raf);
+      if (tag == null) return false;
+      byte[] value = new byte[ 2];
+      put(value, new Tag(0, tag.bigEndian, 0), rotate(tag.value, degrees));
+      raf.seek(tag.position);
+      raf.write(value);
+      return true;
+    }
+  }
+
+  /**
+   * <p>
+   * apply an orientation to the pixels, the image is rotated and mirrored so
+   * it is shown upright
+   * </p>
+   * 
+   * @param image
+   *          BufferedImage, the decoded image
+   * @param orientation
+   *          int, the orientation 1..8
+   * @return BufferedImage, the upright image, the image itself for the normal
+   *         orientation
+   */
+  public static BufferedImage apply(BufferedImage image, int orientation)
+  {
+    if (image == null || orientation <= NORMAL || orientation > 8) return image;
+    return new OrthogonalRotator(Runtime.getRuntime().availableProcessors()).transform(image, orientation, null);
+  }
+
+  /**
+   * the position and value of the orientation tag
+   */
+  private static class Tag {
+    final long    position;
+    final boolean bigEndian;
+    final int     value;
+
+    Tag(long position, boolean bigEndian, int value) {
+      this.position = position;
+      this.bigEndian = bigEndian;
+      this.value = value;
+    }
+  }
+
+  private static void put(byte[] data, Tag tag, int value)
+  {
+    int p = (int) tag.position;
+    data[p + (tag.bigEndian ? 0 : 1)] = 0;
+    data[p + (tag.bigEndian ? 1 : 0)] = (byte) value;
+  }
+
+  /**
+   * find the orientation tag in the APP1 segments before the image data
+   */
+  private static Tag locate(RandomAccessFile raf) throws IOException
+  {
+    try
+    {
+      if (raf.readUnsignedByte() != 0xFF || raf.readUnsignedByte() != 0xD8) return null;
+      while (true)
+      {
+        int b = raf.readUnsignedByte();
+        if (b != 0xFF) return null;
+        int marker = raf.readUnsignedByte();
+        while (marker == 0xFF)
+          marker = raf.readUnsignedByte();
+        if (marker == SOS || marker == EOI) return null;
+        int len = raf.readUnsignedShort() - 2;
+        long start = raf.getFilePointer();
+        if (marker == APP1 && len > 14)
+        {
+          byte[] app1 = new byte[ len];
+          raf.readFully(app1);
+          Tag tag = locate(app1);
+          if (tag != null) return new Tag(start + tag.position, tag.bigEndian, tag.value);
+        }
+        raf.seek(start + len);
+      }
+    }
+    catch (EOFException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * find the orientation tag in the first IFD of an EXIF APP1 segment
+   */
+  private static Tag locate(byte[] app1)
+  {
+    if (app1 == null || app1.length < 14 || app1[0] != 'E' || app1[1] != 'x' || app1[2] != 'i' || app1[3] != 'f' || app1[4] != 0 || app1[5] != 0) return null;
+    int tiff = 6;
+    boolean bigEndian;
+    if (app1[tiff] == 'M' && app1[tiff + 1] == 'M') bigEndian = true;
+    else if (app1[tiff] == 'I' && app1[tiff + 1] == 'I') bigEndian = false;
+    else return null;
+
+    long ifd = tiff + unsigned(app1, tiff + 4, 4, bigEndian);
+    if (ifd + 2 > app1.length) return null;
+    int entries = (int) unsigned(app1, (int) ifd, 2, bigEndian);
+    for (int i = 0; i < entries; i++)
+    {
+      int entry = (int) ifd + 2 + 12 * i;
+      if (entry + 12 > app1.length) return null;
+      if (unsigned(app1, entry, 2, bigEndian) == ORIENTATION)
+      {
+        if (unsigned(app1, entry + 2, 2, bigEndian) != TYPE_SHORT) return null;
+        return new Tag(entry + 8, bigEndian, (int) unsigned(app1, entry + 8, 2, bigEndian));
+      }
+    }
+    return null;
+  }
+
+  private static long unsigned(byte[] data, int p, int n, boolean bigEndian)
+  {
+    long value = 0;
+    for (int i = 0; i < n; i++)
+    {
+      int b = data[p + (bigEndian ? i : n - 1 - i)] & 0xff;
+      value = (value << 8) | b;
+    }
+    return value;
+  }
+}
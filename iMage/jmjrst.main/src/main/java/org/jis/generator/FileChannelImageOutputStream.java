@@ -0,0 +1,148 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * <p>
+ * ImageOutputStream writing through a fixed size buffer into a FileChannel.
+ * Unlike the MemoryCacheImageOutputStream the encoded image is not kept on the
+ * heap, only the buffer is. Closing the stream closes the file.
+ * </p>
+ */
+public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
+  private final FileChannel channel;
+  private final ByteBuffer  buffer;
+  // file position of the first byte in the buffer
+  private long              bufferPos = 0;
+
+  /**
+   * @param file
+   *          File, the file to write, an existing file is truncated
+   * @param bufferSize
+   *          int, size of the write buffer in bytes
+   * @throws IOException
+   */
+  public FileChannelImageOutputStream(File file, int bufferSize) throws IOException {
+    super();
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.READ);
+    this.buffer = ByteBuffer.allocate(Math.max(512, bufferSize));
+  }
+
+  public void write(int b) throws IOException
+  {
+    checkClosed();
+    flushBits();
+    if (!buffer.hasRemaining()) flushBuffer();
+    buffer.put((byte) b);
+    streamPos++;
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    checkClosed();
+    flushBits();
+    if (len > buffer.remaining())
+    {
+      flushBuffer();
+      if (len > buffer.capacity())
+      {
+        // too big for the buffer, write it directly
+        ByteBuffer direct = ByteBuffer.wrap(b, off, len);
+        while (direct.hasRemaining())
+          streamPos += channel.write(direct, streamPos);
+        bufferPos = streamPos;
+        return;
+      }
+    }
+    buffer.put(b, off, len);
+    streamPos += len;
+  }
+
+  public int read() throws IOException
+  {
+    byte[] b = new byte[ 1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException
+  {
+    checkClosed();
+    flushBuffer();
+    bitOffset = 0;
+    int n = channel.read(ByteBuffer.wrap(b, off, len), streamPos);
+    if (n > 0)
+    {
+      streamPos += n;
+      bufferPos = streamPos;
+    }
+    return n;
+  }
+
+  public long length()
+  {
+    try
+    {
+      return Math.max(channel.size(), bufferPos + buffer.position());
+    }
+    catch (IOException e)
+    {
+      return -1L;
+    }
+  }
+
+  public void seek(long pos) throws IOException
+  {
+    checkClosed();
+    if (pos < flushedPos) throw new IndexOutOfBoundsException("pos < flushedPos!");
+    flushBuffer();
+    bitOffset = 0;
+    streamPos = pos;
+    bufferPos = pos;
+  }
+
+  public void close() throws IOException
+  {
+    try
+    {
+      if (channel.isOpen())
+      {
+        flushBits();
+        flushBuffer();
+      }
+      super.close();
+    }
+    finally
+    {
+      channel.close();
+    }
+  }
+
+  private void flushBuffer() throws IOException
+  {
+    buffer.flip();
+    while (buffer.hasRemaining())
+      bufferPos += channel.write(buffer, bufferPos);
+    buffer.clear();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>
+ * A Flight Recorder event for one phase of a {@link LayoutGalerie} or a
+ * {@link TableGalerie}: the assets of the layout, the HTML pages or the
+ * images.
+ * </p>
+ */
+@Name("org.jis.Gallery")
+@Label("Gallery Phase")
+@Category({ "jmjrst", "Gallery" })
+@Description("One phase of a gallery generation")
+public class GalleryEvent extends Event {
+  static final String ASSETS = "assets";
+  static final String HTML   = "html";
+  static final String IMAGES = "images";
+
+  @Label("Gallery")
+  @Description("layout or table")
+  String              gallery;
+
+  @Label("Phase")
+  @Description("assets, html or images")
+  String              phase;
+
+  @Label("Directory")
+  String              directory;
+
+  @Label("Images")
+  int                 images;
+
+  @Label("Bytes Written")
+  @Description("Bytes of the copied assets and the written pages, 0 for the images")
+  @DataAmount
+  long                bytesWritten;
+
+  /**
+   * <p>
+   * a started event of a phase
+   * </p>
+   */
+  GalleryEvent(String gallery, String phase, File directory) {
+    this.gallery = gallery;
+    this.phase = phase;
+    this.directory = directory.getPath();
+    begin();
+  }
+
+  /**
+   * <p>
+   * end the phase and commit it, if it is recorded
+   * </p>
+   * 
+   * @param images
+   *          int, the images of the gallery
+   * @param bytes
+   *          long, the bytes the phase wrote
+   */
+  void finish(int images, long bytes)
+  {
+    end();
+    if (!shouldCommit()) return;
+    this.images = images;
+    this.bytesWritten = bytes;
+    commit();
+  }
+}
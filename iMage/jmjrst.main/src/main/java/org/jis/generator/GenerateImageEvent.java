@@ -0,0 +1,101 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.awt.Dimension;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>
+ * A Flight Recorder event for one source image, from reading the file to the
+ * last written size. In the {@link ImagePipeline} the time includes the waits
+ * in the queues between the stages.
+ * </p>
+ */
+@Name("org.jis.GenerateImage")
+@Label("Generate Image")
+@Category({ "jmjrst", "Generator" })
+@Description("Decode, scale, encode and write the sizes of one image")
+public class GenerateImageEvent extends Event {
+  @Label("Source")
+  String  source;
+
+  @Label("Source Width")
+  int     sourceWidth;
+
+  @Label("Source Height")
+  int     sourceHeight;
+
+  @Label("Target Width")
+  @Description("Width of the biggest scaled image")
+  int     targetWidth;
+
+  @Label("Target Height")
+  @Description("Height of the biggest scaled image")
+  int     targetHeight;
+
+  @Label("Targets")
+  @Description("Sizes which were rendered, sizes which were up to date are left out")
+  int     targets;
+
+  @Label("Bytes Read")
+  @DataAmount
+  long    bytesRead;
+
+  @Label("Bytes Written")
+  @DataAmount
+  long    bytesWritten;
+
+  @Label("Failed")
+  boolean failed;
+
+  /**
+   * <p>
+   * end the event and commit it with the data of the task, if it is recorded
+   * </p>
+   * 
+   * @param task
+   *          RenderTask, the finished task
+   */
+  void finish(RenderTask task)
+  {
+    end();
+    if (!shouldCommit()) return;
+
+    source = task.file.getPath();
+    sourceWidth = task.width;
+    sourceHeight = task.height;
+    if (task.sizes != null) for (Dimension size : task.sizes)
+    {
+      if ((long) size.width * size.height > (long) targetWidth * targetHeight)
+      {
+        targetWidth = size.width;
+        targetHeight = size.height;
+      }
+    }
+    targets = task.targets.length;
+    bytesRead = task.read;
+    bytesWritten = task.written;
+    failed = task.failed;
+    commit();
+  }
+}
@@ -16,25 +16,18 @@
 package org.jis.generator;
 
 import java.awt.Color;
-import java.awt.Font;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Locale;
 import java.util.Vector;
 import java.util.zip.Deflater;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -48,7 +41,6 @@ import javax.imageio.metadata.IIOMetadataController;
 import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
-import javax.imageio.stream.MemoryCacheImageOutputStream;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.ProgressMonitor;
@@ -56,6 +48,7 @@ import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileSystemView;
 
 import org.jis.Main;
+import org.jis.Messages;
 import org.jis.options.Options;
 
 /**
@@ -69,10 +62,12 @@ public class Generator {
   public final static double ROTATE_90  = Math.toRadians(90);
   public final static double ROTATE_270 = Math.toRadians(270);
 
+  /** min. size of a scaled image, before the scaling is split across the cores */
+  private final static int   PARALLEL_SCALE_PIXELS = 1024 * 1024;
+
   private Main               m;
   private Options            o;
   private File               zipFile    = null;
-  private Vector<File>       zipIt;
   private boolean            zippen     = false;
   private float              quality;
 
@@ -95,48 +90,42 @@ public class Generator {
    */
   public void createZip(File zipFileName, Vector<File> selected)
   {
-    try
+    ZipEvent event = new ZipEvent();
+    event.begin();
+    long read = 0;
+    for (File f : selected)
+      read += f.length();
+
+    // the entries are compressed on all cores and written in their order
+    try (ParallelZipWriter out = new ParallelZipWriter(zipFileName, Deflater.BEST_COMPRESSION, Runtime.getRuntime().availableProcessors()))
     {
-      byte[] buffer = new byte[ 4096];
-
-      // Create the new ZIP-Fiel and set the Options
-      ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFileName), 8096));
-      out.setLevel(Deflater.BEST_COMPRESSION);
-      out.setMethod(ZipOutputStream.DEFLATED);
-
-      // Loop about the Files and put it into the new ZIP-File
       for (int i = 0; i < selected.size(); i++)
-      {
-        FileInputStream in = new FileInputStream(selected.get(i));
-
-        String file = selected.get(i).getPath();
-        if (file.indexOf("\\") != -1) file = file.substring(file.lastIndexOf(Options.fs) + 1, file.length());
-
-        ZipEntry ze = new ZipEntry(file);
-        out.putNextEntry(ze);
-        int len;
-        while ((len = in.read(buffer)) > 0)
-          out.write(buffer, 0, len);
-        out.closeEntry();
-        in.close();
-
-        // Delete the temp image
-        selected.get(i).delete();
-      }
-      out.close();
+        out.add(selected.get(i), selected.get(i).getName());
     }
     catch (IllegalArgumentException iae)
     {
       iae.printStackTrace();
-    }
-    catch (FileNotFoundException fnfe)
-    {
-      fnfe.printStackTrace();
+      return;
     }
     catch (IOException ioe)
     {
       ioe.printStackTrace();
+      return;
+    }
+
+    event.end();
+    if (event.shouldCommit())
+    {
+      event.file = zipFileName.getPath();
+      event.entries = selected.size();
+      event.bytesRead = read;
+      event.bytesWritten = zipFileName.length();
+      event.commit();
     }
+
+    // Delete the temp images
+    for (int i = 0; i < selected.size(); i++)
+      selected.get(i).delete();
   }
 
   /**
@@ -150,7 +139,8 @@ public class Generator {
     {
       File outputDir = new File(o.getOutput_dir());
 
-      if (outputDir.isDirectory() && outputDir.listFiles().length > 0)
+      // an output folder with a manifest is updated incrementally
+      if (outputDir.isDirectory() && outputDir.listFiles().length > 0 && !BuildManifest.exists(outputDir))
       {
         int response = JOptionPane.showConfirmDialog(m.list, m.mes.getString("Generator.53") + " " + o.getOutput_dir() + " " + m.mes.getString("Generator.54"), m.mes.getString("Generator.52"), JOptionPane.YES_NO_OPTION);
         if (response != JOptionPane.YES_OPTION) { return; }
@@ -160,7 +150,6 @@ public class Generator {
     this.quality = o.getQuality();
     try
     {
-      zipIt = new Vector<File>();
       zippen = false;
       zipFile = null;
 
@@ -186,6 +175,7 @@ public class Generator {
         fo.setCurrentDirectory(FileSystemView.getFileSystemView().getParentDirectory(new File(o.getOutput_dir())));
         int returnVal = fo.showOpenDialog(null);
         if (returnVal == JFileChooser.APPROVE_OPTION) zipFile = fo.getSelectedFile();
+        else return;
       }
 
       File[] dir = new File[ 0];
@@ -223,7 +213,7 @@ public class Generator {
       }
 
       final File files[] = dir;
-      Thread t = new Thread()
+      Runnable t = new Runnable()
       {
         public void run()
         {
@@ -236,54 +226,47 @@ public class Generator {
           for (int i = 0; i < files.length; i++)
             elements[i] = new Element(i, files[i], Options.getInstance().getHmax(), Options.getInstance().getVmax(), new File(Options.getInstance().getOutput_dir()));
 
-          Producer producer = new Producer(m, elements, m.mes.getString("Generator.22"));
-          Thread producerThread = new Thread(producer);
-          int cpus = Runtime.getRuntime().availableProcessors();
-          Thread consumerThreads[] = new Thread[ cpus];
-          for (int i = 0; i < cpus; i++)
+          // only the images which are out of date are generated again
+          BuildManifest manifest = null;
+          if (!zippen)
           {
-            consumerThreads[i] = new Thread(new Consumer(producer, m, zippen, zipIt));
+            manifest = new BuildManifest(new File(Options.getInstance().getOutput_dir()));
+            manifest.removeStale();
           }
 
-          producerThread.start();
-          for (int i = 0; i < cpus; i++)
-          {
-            consumerThreads[i].start();
-          }
+          Producer producer = new Producer(m, elements, m.mes.getString("Generator.22"));
+          // for a ZIP the images are streamed into the ZIP file
+          ImagePipeline pipeline = new ImagePipeline(producer, m, zippen ? zipFile : null, manifest);
+          JobReport report = Options.getInstance().isJobReport() ? new JobReport("generate") : null;
+          pipeline.setReport(report);
 
-          try
+          // a cancel of the progress monitor interrupts the running job
+          new ImageJob(producer, pipeline).start().waitFor(m.p_monitor);
+
+          if (manifest != null) manifest.save();
+          if (report != null) try
           {
-            producerThread.join();
-            for (int i = 0; i < cpus; i++)
-            {
-              consumerThreads[i].join();
-            }
+            report.write(zippen ? zipFile.getAbsoluteFile().getParentFile() : new File(o.getOutput_dir()));
           }
-          catch (InterruptedException ignore)
+          catch (IOException e)
           {
+            e.printStackTrace();
           }
 
           try
           {
-            m.jOutputDoc.insertString(m.jOutputDoc.getLength(), Options.ls + m.mes.getString("Generator.44") + o.getOutput_dir() + m.mes.getString("Generator.45") + Options.ls, m.readyAtr);
+            m.jOutputDoc.insertString(m.jOutputDoc.getLength(), Options.ls + m.mes.getString("Generator.44") + (zippen ? zipFile.getPath() : o.getOutput_dir()) + m.mes.getString("Generator.45") + Options.ls, m.readyAtr);
             m.text.setCaretPosition(m.jOutputDoc.getLength());
           }
           catch (Exception e)
           {
             System.out.println(Options.ls + m.mes.getString("Generator.46") + Options.ls);
           }
-
-          // if zip, then zip
-          if (zippen && zipFile != null)
-          {
-            m.p_monitor.setNote("Erstelle Zipdatei");
-            createZip(zipFile, zipIt);
-          }
           m.status.setStatusOff();
           m.p_monitor.close();
         }
       };
-      t.start();
+      ImageJobExecutor.get().execute(t);
 
     }
     catch (Exception ex)
@@ -315,133 +298,524 @@ public class Generator {
    */
   public File generateImage(File imageFile, File iout, boolean print, int width, int height, String praefix) throws IOException
   {
+    return generateImages(imageFile, new ImageTarget[] { new ImageTarget(width, height, iout) }, print, praefix)[0];
+  }
 
-    // Output Image
-    File fo = new File(iout, praefix + imageFile.getName());
+  /**
+   * <p>
+   * decode the Image once and write a scaled copy for every target. The
+   * targets are rendered from the largest to the smallest one, every smaller
+   * size is scaled down from the next larger one instead of the full source.
+   * </p>
+   * 
+   * @param imageFile
+   *          File, the input image
+   * @param targets
+   *          ImageTarget[], the requested sizes and their output locations
+   * @param print
+   *          boolean, Logs for GUI
+   * @param praefix
+   *          String, praefix for the filenames of the scaled images
+   * @return File[], the output file of each target
+   * @throws IOException
+   */
+  public File[] generateImages(File imageFile, ImageTarget[] targets, boolean print, String praefix) throws IOException
+  {
+    // Output Images
+    File[] fo = new File[ targets.length];
+    for (int i = 0; i < targets.length; i++)
+      fo[i] = new File(targets[i].out, praefix + imageFile.getName());
 
-    ImageInputStream iis = ImageIO.createImageInputStream(imageFile);
-    Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
-    ImageReader reader = readers.next();
-    reader.setInput(iis, true);
-    BufferedImage image = reader.read(0, null);
+    DerivedImageCache cache = DerivedImageCache.get();
+    if (cache == null)
+    {
+      renderImages(imageFile, targets, print, praefix);
+      return fo;
+    }
 
-    IIOMetadata imageMetadata = reader.getImageMetadata(0);
+    // copy the sizes which are in the cache, render only the others
+    String sourceHash = ContentHash.of(imageFile);
+    ArrayList<ImageTarget> missing = new ArrayList<ImageTarget>();
+    for (ImageTarget target : targets)
+    {
+      if (!cache.fetch(DerivedImageCache.key(sourceHash, target), target.file(imageFile, praefix))) missing.add(target);
+    }
 
+    if (missing.size() > 0 && renderImages(imageFile, missing.toArray(new ImageTarget[ missing.size()]), print, praefix))
+    {
+      for (ImageTarget target : missing)
+      {
+        File f = target.file(imageFile, praefix);
+        if (f.isFile()) cache.store(DerivedImageCache.key(sourceHash, target), f);
+      }
+    }
+    return fo;
+  }
+
+  /**
+   * <p>
+   * decode the Image and write the scaled copies of all targets
+   * </p>
+   * 
+   * @return true, if all targets were written
+   */
+  private boolean renderImages(File imageFile, ImageTarget[] targets, boolean print, String praefix) throws IOException
+  {
+    PipelineMetrics metrics = PipelineMetrics.get();
+    metrics.consumerStarted();
+    RenderTask task = new RenderTask(null, imageFile, targets, praefix);
+    task.event.begin();
     try
     {
-      // get width and height of the origianl image
-      int w = image.getWidth(null);
-      int h = image.getHeight(null);
+      task.read = imageFile.length();
+      metrics.read(task.read);
+      decode(task, ImageIO.createImageInputStream(imageFile));
 
-      // if image in landscape format?
-      if ((w >= h || height == 0) && width > 0)
+      try
       {
-        double tmp = (double) w / width;
-        double h1 = h;
-        height = (int) (h1 / tmp);
+        scale(task);
+
+        for (int i : task.order)
+        {
+          // Print process info for the GUI
+          if (print) try
+          {
+            m.jOutputDoc.insertString(m.jOutputDoc.getLength(), m.mes.getString("Generator.20"), m.outputAtr);
+            m.text.setCaretPosition(m.jOutputDoc.getLength());
+
+          }
+          catch (Exception e)
+          {
+            System.out.print(". . ");
+          }
+
+          // the image is encoded straight into the file, both count as encode
+          long start = System.nanoTime();
+          File out = task.output(i);
+          if (o.isCopyMetadata() && task.segments != null) writeImage(task, i, out);
+          else writeImage(task.scaled[i], out, task.metadata);
+          metrics.encode.record(System.nanoTime() - start);
+          metrics.written(out.length());
+          task.written += out.length();
+        }
       }
-      else
+      catch (Exception l)
       {
-        double tmp = (double) h / height;
-        double w1 = w;
-        width = (int) (w1 / tmp);
+        task.failed = true;
+        // without a window the caller gets the error
+        if (m == null) throw new IOException(l);
+        m.error = true;
+        return false;
       }
+      return true;
+    }
+    catch (IOException e)
+    {
+      task.failed = true;
+      throw e;
+    }
+    finally
+    {
+      metrics.consumerFinished();
+      metrics.imageDone(!task.failed);
+      task.event.finish(task);
+    }
+  }
 
-      // Create new Image
-      BufferedImage bimage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+  /**
+   * <p>
+   * decode the source of the task with as few pixels as its biggest target
+   * needs. The stream is closed.
+   * </p>
+   * 
+   * @param task
+   *          RenderTask, the task, its image, metadata and sizes are set
+   * @param iis
+   *          ImageInputStream, the encoded source image
+   * @throws IOException
+   */
+  void decode(RenderTask task, ImageInputStream iis) throws IOException
+  {
+    long start = System.nanoTime();
+    CodecPool pool = CodecPool.get();
+    ImageReader reader = null;
+    try
+    {
+      // the metadata of a JPEG is copied as raw bytes, without the metadata
+      // tree of ImageIO
+      if (iis != null) task.segments = JpegSegments.read(iis);
+      reader = pool.reader(iis);
+      // other formats have no EXIF orientation, their metadata is copied by
+      // ImageIO
+      int orientation = 0;
+      if (task.segments != null)
+      {
+        orientation = task.segments.orientation();
+        if (o.isCopyMetadata()) task.segments.prepare(o.isStripGps(), o.isStripThumbnail());
+      }
+      else task.metadata = reader.getImageMetadata(0);
+
+      // get width and height of the origianl image from the header, an EXIF
+      // orientation may turn the image
+      boolean swap = orientation >= 5;
+      int w = swap ? reader.getHeight(0) : reader.getWidth(0);
+      int h = swap ? reader.getWidth(0) : reader.getHeight(0);
+      task.width = w;
+      task.height = h;
+
+      task.sizes = new Dimension[ task.targets.length];
+      for (int i = 0; i < task.targets.length; i++)
+        task.sizes[i] = scaledSize(w, h, task.targets[i].width, task.targets[i].height);
+
+      // decode only as many pixels as the biggest target needs
+      ImageReadParam param = reader.getDefaultReadParam();
+      int subsampling = subsampling(w, h, task.sizes);
+      if (subsampling > 1) param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+      task.image = ExifOrientation.apply(reader.read(0, param), orientation);
+      PipelineMetrics.get().decode.record(System.nanoTime() - start);
+    }
+    finally
+    {
+      if (reader != null) pool.release(reader);
+      if (iis != null) iis.close();
+    }
+  }
 
-      // get graphics of the new Image
-      Graphics2D g = bimage.createGraphics();
+  /**
+   * <p>
+   * scale the decoded image of the task to all its sizes. The biggest size is
+   * rendered first, every smaller one is scaled down from the next larger one.
+   * </p>
+   * 
+   * @param task
+   *          RenderTask, a decoded task, its scaled images and their order are
+   *          set
+   */
+  void scale(RenderTask task)
+  {
+    final Dimension[] sizes = task.sizes;
+    Integer[] order = new Integer[ sizes.length];
+    for (int i = 0; i < order.length; i++)
+      order[i] = i;
+    Arrays.sort(order, new Comparator<Integer>()
+    {
+      public int compare(Integer a, Integer b)
+      {
+        return (sizes[b].width * sizes[b].height) - (sizes[a].width * sizes[a].height);
+      }
+    });
 
-      // set quality of the new Image
-      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    PipelineMetrics metrics = PipelineMetrics.get();
+    long start = System.nanoTime();
+    task.order = new int[ order.length];
+    task.scaled = new BufferedImage[ sizes.length];
+    BufferedImage image = task.image;
+    BufferedImage source = image;
+    for (int n = 0; n < order.length; n++)
+    {
+      int i = order[n];
+      task.order[n] = i;
+      if (sizes[i].width > source.getWidth() || sizes[i].height > source.getHeight()) source = image;
+      task.scaled[i] = scaleImage(source, sizes[i].width, sizes[i].height);
+      source = task.scaled[i];
+    }
+    metrics.scale.record(System.nanoTime() - start);
 
-      switch (Options.getInstance().getModus())
-      {
-      case Options.MODUS_QUALITY:
-        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        break;
+    // the overlay is drawn after all sizes are scaled, otherwise it would
+    // be cascaded into the smaller images
+    if (o.isCopyright())
+    {
+      start = System.nanoTime();
+      for (BufferedImage bimage : task.scaled)
+        drawCopyright(bimage);
+      metrics.overlay.record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * <p>
+   * encode the scaled images of the task as JPEG into memory
+   * </p>
+   * 
+   * @param task
+   *          RenderTask, a scaled task, its encoded images are set
+   * @throws IOException
+   */
+  void encode(RenderTask task) throws IOException
+  {
+    task.encoded = new byte[ task.scaled.length][];
+    for (int i = 0; i < task.scaled.length; i++)
+    {
+      long start = System.nanoTime();
+      task.encoded[i] = encode(task, i);
+      PipelineMetrics.get().encode.record(System.nanoTime() - start);
+    }
+  }
 
-      case Options.MODUS_DEFAULT:
-        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_DEFAULT);
-        g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_DEFAULT);
-        break;
+  /**
+   * @return byte[], the scaled image i of the task as JPEG with the metadata
+   *         of the source
+   */
+  private byte[] encode(RenderTask task, int i) throws IOException
+  {
+    BufferedImage bimage = task.scaled[i];
+    ByteArrayImageOutputStream out = encodeToArray(task, i);
+    if (o.isCopyMetadata() && task.segments != null) return task.segments.insertInto(out.buffer(), out.size(), bimage.getWidth(), bimage.getHeight());
+    return out.toByteArray();
+  }
 
-      case Options.MODUS_SPEED:
-        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
-        g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
-        break;
+  private ByteArrayImageOutputStream encodeToArray(RenderTask task, int i) throws IOException
+  {
+    ByteArrayImageOutputStream out = new ByteArrayImageOutputStream(64 * 1024);
+    try
+    {
+      writeImage(task.scaled[i], out, task.metadata);
+    }
+    finally
+    {
+      out.close();
+    }
+    return out;
+  }
 
-      default:
-        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_DEFAULT);
-        g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_DEFAULT);
-        break;
-      }
+  /**
+   * <p>
+   * write the scaled image i of the task with the raw segments of the source.
+   * The image is encoded on the heap, the segments are inserted while it is
+   * written to the file.
+   * </p>
+   */
+  private void writeImage(RenderTask task, int i, File out) throws IOException
+  {
+    ByteArrayImageOutputStream encoded = encodeToArray(task, i);
+    try (ImageOutputStream ios = new FileChannelImageOutputStream(out, o.getOutputBufferSize()))
+    {
+      task.segments.writeTo(ios, encoded.buffer(), encoded.size(), task.scaled[i].getWidth(), task.scaled[i].getHeight());
+    }
+  }
 
-      if (Options.getInstance().isAntialiasing())
+  /**
+   * <p>
+   * estimate the heap needed to render the targets of an image. Only the
+   * header of the image is read.
+   * </p>
+   * 
+   * @param imageFile
+   *          File, the input image
+   * @param targets
+   *          ImageTarget[], the requested sizes
+   * @return long, the bytes of the decoded and scaled pixels, 0 if the header
+   *         can't be read
+   */
+  public long estimateMemory(File imageFile, ImageTarget[] targets)
+  {
+    CodecPool pool = CodecPool.get();
+    try (ImageInputStream iis = ImageIO.createImageInputStream(imageFile))
+    {
+      ImageReader reader = pool.reader(iis);
+      try
       {
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        int w = reader.getWidth(0);
+        int h = reader.getHeight(0);
+
+        Dimension[] sizes = new Dimension[ targets.length];
+        for (int i = 0; i < targets.length; i++)
+          sizes[i] = scaledSize(w, h, targets[i].width, targets[i].height);
+
+        int subsampling = subsampling(w, h, sizes);
+        long decodedWidth = (w + subsampling - 1) / subsampling;
+        long decodedHeight = (h + subsampling - 1) / subsampling;
+
+        // decoded image, intermediate and result of the resampler for each size
+        long bytes = decodedWidth * decodedHeight * 4;
+        for (Dimension size : sizes)
+          bytes += (decodedHeight * size.width + (long) size.width * size.height) * 4;
+        return bytes;
       }
-      else
+      finally
       {
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        pool.release(reader);
       }
-      g.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+    }
+    catch (IOException e)
+    {
+      return 0;
+    }
+  }
+
+  /**
+   * <p>
+   * calculate the size of the scaled image, the aspect ratio of the original
+   * image is kept
+   * </p>
+   * 
+   * @param w
+   *          int, width of the original image
+   * @param h
+   *          int, height of the original image
+   * @param width
+   *          int, max. width of the scaled image
+   * @param height
+   *          int, max. height of the scaled image
+   * @return Dimension, the size of the scaled image
+   */
+  Dimension scaledSize(int w, int h, int width, int height)
+  {
+    // if image in landscape format?
+    if ((w >= h || height == 0) && width > 0)
+    {
+      double tmp = (double) w / width;
+      double h1 = h;
+      height = (int) (h1 / tmp);
+    }
+    else
+    {
+      double tmp = (double) h / height;
+      double w1 = w;
+      width = (int) (w1 / tmp);
+    }
+    return new Dimension(width, height);
+  }
 
-      // set white Background of the new Image
-      g.setColor(Color.WHITE);
-      g.fillRect(0, 0, width, height);
+  /**
+   * <p>
+   * calculate the source subsampling for decoding an image of the given size.
+   * The decoded image stays at least twice as big as the biggest target, so
+   * the final resample can smooth out the aliasing of the subsampling.
+   * </p>
+   * 
+   * @param w
+   *          int, width of the original image
+   * @param h
+   *          int, height of the original image
+   * @param sizes
+   *          Dimension[], sizes of the scaled images
+   * @return int, the subsampling in both directions, 1 for a full decode
+   */
+  int subsampling(int w, int h, Dimension[] sizes)
+  {
+    int maxWidth = 1;
+    int maxHeight = 1;
+    for (Dimension size : sizes)
+    {
+      maxWidth = Math.max(maxWidth, size.width);
+      maxHeight = Math.max(maxHeight, size.height);
+    }
+    return Math.max(1, Math.min(w / (2 * maxWidth), h / (2 * maxHeight)));
+  }
+
+  /**
+   * <p>
+   * scale the Image to the given size
+   * </p>
+   * 
+   * @param image
+   *          BufferedImage, the input image
+   * @param width
+   *          int, width of the scaled image
+   * @param height
+   *          int, heigth of the scaled image
+   * @return BufferedImage, the scaled image
+   */
+  BufferedImage scaleImage(BufferedImage image, int width, int height)
+  {
+    // one image is scaled on all cores only if it is big enough
+    int threads = width * height >= PARALLEL_SCALE_PIXELS ? Runtime.getRuntime().availableProcessors() : 1;
+    Resampler resampler = new Resampler(ResampleKernel.forModus(o.getModus()), threads);
+    return resampler.resize(image, width, height);
+  }
 
-      // create a scaled instance of the new Image
-      Image scale;
+  /**
+   * <p>
+   * draw the copyright text of the Options into the lower left corner
+   * </p>
+   * 
+   * @param bimage
+   *          BufferedImage, the scaled image
+   */
+  private void drawCopyright(BufferedImage bimage)
+  {
+    Graphics2D g = bimage.createGraphics();
+    setRenderingHints(g);
 
-      if (width < 300 || height < 300) scale = image.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING);
-      else scale = image.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-      g.drawImage(scale, 0, 0, null);
+    int font_size = (int) (bimage.getWidth() * 0.02);
 
-      int font_size = (int) (width * 0.02);
+    // the text is rendered once per size and only blitted onto the image
+    Color color = new Color(o.getCopyright_r(), o.getCopyright_g(), o.getCopyright_b());
+    CopyrightStamp.get(o.getCopyrightText(), font_size, color, g.getRenderingHints()).draw(g, font_size, bimage.getHeight() - (2 * font_size));
+    g.dispose();
+  }
 
-      if (o.isCopyright())
-      {
-        g.setColor(new Color(o.getCopyright_r(), o.getCopyright_g(), o.getCopyright_b()));
-        Font font1 = new Font("Helvetica", Font.BOLD, font_size);
-        g.setFont(font1);
-        g.drawString(o.getCopyrightText(), font_size, height - (2 * font_size));
-      }
+  private void setRenderingHints(Graphics2D g)
+  {
+    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
 
-      // Print process info for the GUI
-      if (print) try
-      {
-        m.jOutputDoc.insertString(m.jOutputDoc.getLength(), m.mes.getString("Generator.20"), m.outputAtr);
-        m.text.setCaretPosition(m.jOutputDoc.getLength());
+    switch (Options.getInstance().getModus())
+    {
+    case Options.MODUS_QUALITY:
+      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+      break;
+
+    case Options.MODUS_DEFAULT:
+      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_DEFAULT);
+      g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_DEFAULT);
+      break;
+
+    case Options.MODUS_SPEED:
+      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+      g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+      break;
+
+    default:
+      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_DEFAULT);
+      g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_DEFAULT);
+      break;
+    }
 
-      }
-      catch (Exception e)
-      {
-        System.out.print(". . ");
-      }
+    if (Options.getInstance().isAntialiasing())
+    {
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+    else
+    {
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+    }
+    g.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+  }
 
-      // create new File for the new Image
-      ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
-      ImageOutputStream ios;
+  /**
+   * <p>
+   * write the Image as JPEG with the quality of the Options
+   * </p>
+   * 
+   * @param bimage
+   *          BufferedImage, the scaled image
+   * @param out
+   *          File, the output file
+   * @param imageMetadata
+   *          IIOMetadata, metadata of the source image
+   * @throws IOException
+   */
+  private void writeImage(BufferedImage bimage, File out, IIOMetadata imageMetadata) throws IOException
+  {
+    // create new File for the new Image
+    try (ImageOutputStream ios = new FileChannelImageOutputStream(out, o.getOutputBufferSize()))
+    {
+      writeImage(bimage, ios, imageMetadata);
+    }
+  }
 
-      if (iout.isDirectory())
-      {
-        ios = new MemoryCacheImageOutputStream(new FileOutputStream(fo));
-      }
-      else
-      {
-        ios = new MemoryCacheImageOutputStream(new FileOutputStream(iout));
-      }
+  private void writeImage(BufferedImage bimage, ImageOutputStream ios, IIOMetadata imageMetadata) throws IOException
+  {
+    CodecPool pool = CodecPool.get();
+    ImageWriter writer = pool.writer();
+    try
+    {
       writer.setOutput(ios);
 
-      JPEGImageWriteParam iwparam = new JPEGImageWriteParam(Locale.getDefault());
-      iwparam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-
       // set JPEG Quality
-      iwparam.setCompressionQuality(o.getQuality());
-      iwparam.setOptimizeHuffmanTables(true);
+      JPEGImageWriteParam iwparam = pool.writeParam(o.getQuality());
 
       // copy the metadata
       if (o.isCopyMetadata())
@@ -452,22 +826,18 @@ public class Generator {
       {
         writer.write(null, new IIOImage(bimage, null, null), iwparam);
       }
-
-      bimage.getGraphics().dispose();
-      writer.dispose();
-
     }
-    catch (Exception l)
+    finally
     {
-      m.error = true;
+      pool.release(writer);
     }
-
-    return fo;
   }
 
   /**
    * <p>
-   * rotate the Image and write it to the File
+   * rotate the Image by 90 degrees and write it to the File. JPEGs whose height
+   * is a multiple of the MCU size are rotated losslessly, other images are
+   * decoded and encoded again.
    * </p>
    * 
    * @param file
@@ -475,23 +845,97 @@ public class Generator {
    */
   public void rotate(File file)
   {
+    rotateFile(file, 90);
+  }
+
+  /**
+   * <p>
+   * rotate the Image clockwise and write it to the File. In the EXIF rotation
+   * mode only the orientation tag is changed, a file without one is rotated
+   * like in the pixel mode: losslessly if the JPEG allows it, else decoded and
+   * encoded again.
+   * </p>
+   * 
+   * @param file
+   *          File
+   * @param degrees
+   *          int, 90, 180 or 270
+   * @return boolean, true if the file was rotated
+   */
+  public boolean rotateFile(File file, int degrees)
+  {
+    RotateEvent event = new RotateEvent();
+    event.begin();
+    // the header is only read, if the event is recorded
+    Dimension size = event.isEnabled() ? imageSize(file) : null;
+    long read = file.length();
+
+    String method = rotateBy(file, degrees);
+
+    event.end();
+    if (event.shouldCommit())
+    {
+      event.source = file.getPath();
+      event.method = method;
+      event.degrees = degrees;
+      if (size != null)
+      {
+        event.sourceWidth = size.width;
+        event.sourceHeight = size.height;
+      }
+      event.bytesRead = read;
+      event.bytesWritten = method.length() > 0 ? file.length() : 0;
+      event.commit();
+    }
+
+    return method.length() > 0;
+  }
+
+  /**
+   * @return String, the method of the rotation: exif, lossless or pixels, an
+   *         empty String if the image couldn't be rotated
+   */
+  private String rotateBy(File file, int degrees)
+  {
+    try
+    {
+      if (o.getRotateMode() == Options.ROTATE_EXIF && rotateOrientation(file, degrees)) return "exif";
+
+      // a baseline JPEG is rotated in the DCT domain, without losing quality
+      if (LosslessJpegRotator.rotate(file, degrees))
+      {
+        System.out.println("Drehe Bild verlustfrei:" + file.getAbsolutePath());
+        return "lossless";
+      }
+    }
+    catch (IOException e)
+    {
+      // try the decoded image
+    }
+
     BufferedImage i = null;
     IIOMetadata imeta = null;
 
-    try
+    CodecPool pool = CodecPool.get();
+    try (ImageInputStream iis = ImageIO.createImageInputStream(file))
     {
-      ImageInputStream iis = ImageIO.createImageInputStream(file);
-      ImageReader reader = ImageIO.getImageReadersByFormatName("jpg").next();
-      reader.setInput(iis, true);
-      ImageReadParam params = reader.getDefaultReadParam();
-      i = reader.read(0, params);
-      imeta = reader.getImageMetadata(0);
+      ImageReader reader = pool.reader(iis);
+      try
+      {
+        ImageReadParam params = reader.getDefaultReadParam();
+        i = reader.read(0, params);
+        imeta = reader.getImageMetadata(0);
+      }
+      finally
+      {
+        pool.release(reader);
+      }
     }
     catch (IOException e)
     {
       System.err.println("Error while reading File: " + file.getAbsolutePath());
       e.printStackTrace();
-      return;
+      return "";
     }
 
     try
@@ -502,34 +946,63 @@ public class Generator {
       System.out.println("Width: " + w + " Height :" + h);
 
       System.out.println("Drehe Bild:" + file.getAbsolutePath());
-      AffineTransform rotation = new AffineTransform();
-      AffineTransformOp rotator;
-      rotation.translate(h, 0);
-      rotation.rotate(90.0 * Math.PI / 180.0);
-
-      rotator = new AffineTransformOp(rotation, AffineTransformOp.TYPE_BICUBIC);
-      i = rotator.filter(i, null);
+      i = rotateImage(i, Math.toRadians(degrees));
       w = i.getWidth(null);
       h = i.getHeight(null);
       System.out.println("Width: " + w + " Height :" + h);
 
       System.out.println("Speichere Bild:" + file.getAbsolutePath());
-      ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
-
-      writer.setOutput(new MemoryCacheImageOutputStream(new FileOutputStream(file)));
-      ImageWriteParam iwparam = new JPEGImageWriteParam(Locale.getDefault());
-      iwparam.setCompressionMode(ImageWriteParam.MODE_COPY_FROM_METADATA);
-      IIOMetadata meta_convert = writer.convertImageMetadata(imeta, new ImageTypeSpecifier(i), iwparam);
-      IIOMetadataController imc = meta_convert.getController();
-      imc.activate(meta_convert);
+      ImageWriter writer = pool.writer();
 
-      writer.write(meta_convert, new IIOImage(i, null, imeta), iwparam);
-      writer.dispose();
+      try (ImageOutputStream ios = new FileChannelImageOutputStream(file, o.getOutputBufferSize()))
+      {
+        writer.setOutput(ios);
+        ImageWriteParam iwparam = new JPEGImageWriteParam(Locale.getDefault());
+        iwparam.setCompressionMode(ImageWriteParam.MODE_COPY_FROM_METADATA);
+        IIOMetadata meta_convert = writer.convertImageMetadata(imeta, new ImageTypeSpecifier(i), iwparam);
+        IIOMetadataController imc = meta_convert.getController();
+        imc.activate(meta_convert);
+
+        writer.write(meta_convert, new IIOImage(i, null, imeta), iwparam);
+      }
+      finally
+      {
+        pool.release(writer);
+      }
       System.out.println("Bild gespeichert!");
+      return "pixels";
     }
     catch (Exception l)
     {
       m.error = true;
+      return "";
+    }
+  }
+
+  /**
+   * @param file
+   *          File, an image
+   * @return Dimension, the size from the header of the image, null if it
+   *         can't be read
+   */
+  private Dimension imageSize(File file)
+  {
+    CodecPool pool = CodecPool.get();
+    try (ImageInputStream iis = ImageIO.createImageInputStream(file))
+    {
+      ImageReader reader = pool.reader(iis);
+      try
+      {
+        return new Dimension(reader.getWidth(0), reader.getHeight(0));
+      }
+      finally
+      {
+        pool.release(reader);
+      }
+    }
+    catch (IOException e)
+    {
+      return null;
     }
   }
 
@@ -589,7 +1062,8 @@ public class Generator {
   /**
    * <p>
    * Resize the Images without the GUI, when the Programm is started with
-   * Arguments
+   * Arguments. A directory is processed with all its subdirectories, which
+   * are mirrored into the output directory.
    * </p>
    * 
    * @param input
@@ -603,36 +1077,13 @@ public class Generator {
    */
   public void generateText(File input, File output, int width, int height)
   {
+    Messages mes = m != null ? m.mes : new Messages(o.getLocal());
 
     // check if mass resize or single picture resize
     if (input.isDirectory() && output.isDirectory()) try
     {
-
-      // get all JPEGs of the directory
-      File[] dir = input.listFiles();
-      Vector<File> v = new Vector<File>();
-      for (int i = 0; i < dir.length; i++)
-        // text.setText(text.getText() + dir[i].toString() + "\n");
-        try
-        {
-          String end = dir[i].toString().substring(dir[i].toString().lastIndexOf(".") + 1, dir[i].toString().length());
-          if (dir[i].isFile() && (end.equalsIgnoreCase("jpg") || end.equalsIgnoreCase("jpeg"))) v.addElement(dir[i]);
-        }
-        catch (Exception st)
-        {
-        }
-
-      // print info message
-      System.out.println(v.size() + m.mes.getString("Generator.28") + input.toString() + m.mes.getString("Generator.29") + quality + m.mes.getString("Generator.30") + Options.ls + Options.ls);
-
-      // resize the images
-      for (int i = 0; i < v.size(); i++)
-      {
-        System.out.print(m.mes.getString("Generator.10") + v.elementAt(i).getName() + "\t . . . ");
-        generateImage(v.elementAt(i), output, true, o.getHmax(), o.getVmax(), m.mes.getString("Generator.22"));
-        System.out.println(m.mes.getString("Generator.12"));
-      }
-      System.out.println(Options.ls + v.size() + m.mes.getString("Generator.46") + Options.ls);
+      // the whole tree on all cores, the progress as JSON lines
+      new BatchGenerator(this, System.out, Runtime.getRuntime().availableProcessors()).run(input, output, o.getHmax(), o.getVmax(), mes.getString("Generator.22"));
     }
     catch (Exception ex)
     {
@@ -643,7 +1094,7 @@ public class Generator {
       try
       {
         // resize single image
-        generateImage(input, output, true, o.getHmax(), o.getVmax(), m.mes.getString("Generator.22"));
+        generateImage(input, output, true, o.getHmax(), o.getVmax(), mes.getString("Generator.22"));
       }
       catch (Exception e)
       {
@@ -652,6 +1103,63 @@ public class Generator {
     }
   }
 
+  /**
+   * <p>
+   * Resize the new and changed Images of the input directories without the
+   * GUI as soon as they are written. The method returns only when the JVM is
+   * shut down.
+   * </p>
+   * 
+   * @param inputs
+   *          File[], the watched directories
+   * @param output
+   *          File, the Output Directory
+   * @throws IOException
+   */
+  public void watch(File[] inputs, File output) throws IOException
+  {
+    Messages mes = m != null ? m.mes : new Messages(o.getLocal());
+    final WatchFolder watch = new WatchFolder(this, inputs, output, o.getHmax(), o.getVmax(), mes.getString("Generator.22"), o.getWatchQuiet(), System.out);
+
+    // the images in work are finished and the manifest is saved on exit
+    Runtime.getRuntime().addShutdownHook(new Thread("jmjrst-watch-close")
+    {
+      public void run()
+      {
+        try
+        {
+          watch.close();
+        }
+        catch (IOException e)
+        {
+          e.printStackTrace();
+        }
+      }
+    });
+    watch.run();
+  }
+
+  /**
+   * <p>
+   * rotate the Image clockwise by changing its EXIF orientation tag. Only two
+   * bytes of the file are written, the pixels are turned when the image is
+   * scaled.
+   * </p>
+   * 
+   * @param file
+   *          File, a JPEG file
+   * @param degrees
+   *          int, a multiple of 90
+   * @return boolean, false if the file has no orientation tag
+   * @throws IOException
+   */
+  public boolean rotateOrientation(File file, int degrees) throws IOException
+  {
+    if (!ExifOrientation.rotate(file, degrees)) return false;
+    System.out.println("Drehe Bild (EXIF):" + file.getAbsolutePath());
+    return true;
+  }
+
   /**
    * <p>
    * <b>Not used because loose of Metadata and Quality</b> rotate the Image and
@@ -666,14 +1174,20 @@ public class Generator {
     BufferedImage i = null;
     IIOMetadata imeta = null;
 
-    try
+    CodecPool pool = CodecPool.get();
+    try (ImageInputStream iis = ImageIO.createImageInputStream(file))
     {
-      ImageInputStream iis = ImageIO.createImageInputStream(file);
-      ImageReader reader = ImageIO.getImageReadersByFormatName("jpg").next();
-      reader.setInput(iis, true);
-      ImageReadParam params = reader.getDefaultReadParam();
-      i = reader.read(0, params);
-      imeta = reader.getImageMetadata(0);
+      ImageReader reader = pool.reader(iis);
+      try
+      {
+        ImageReadParam params = reader.getDefaultReadParam();
+        i = reader.read(0, params);
+        imeta = reader.getImageMetadata(0);
+      }
+      finally
+      {
+        pool.release(reader);
+      }
     }
     catch (IOException e)
     {
@@ -693,21 +1207,22 @@ public class Generator {
       System.out.println("Drehe Bild:" + file.getAbsolutePath());
       i = rotateImage(i, angel);
 
-      FileOutputStream fos = new FileOutputStream(file);
-
-      ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
-      ImageOutputStream ios = ImageIO.createImageOutputStream(fos);
-      writer.setOutput(ios);
-      ImageWriteParam iwparam = new JPEGImageWriteParam(Locale.getDefault());
-      iwparam.setCompressionMode(ImageWriteParam.MODE_COPY_FROM_METADATA);
-
-      // set JPEG Quality
-      iwparam.setCompressionQuality(0.92f);
-      writer.write(imeta, new IIOImage(i, null, null), iwparam);
-      ios.flush();
-      writer.dispose();
-      ios.close();
-      fos.close();
+      ImageWriter writer = pool.writer();
+      try (ImageOutputStream ios = new FileChannelImageOutputStream(file, o.getOutputBufferSize()))
+      {
+        writer.setOutput(ios);
+        ImageWriteParam iwparam = new JPEGImageWriteParam(Locale.getDefault());
+        iwparam.setCompressionMode(ImageWriteParam.MODE_COPY_FROM_METADATA);
+
+        // set JPEG Quality
+        iwparam.setCompressionQuality(0.92f);
+        writer.write(imeta, new IIOImage(i, null, null), iwparam);
+        ios.flush();
+      }
+      finally
+      {
+        pool.release(writer);
+      }
 
       System.out.println("Bild gespeichert!");
     }
@@ -719,44 +1234,35 @@ public class Generator {
 
   public BufferedImage rotateImage(BufferedImage image, double rotate)
   {
-	if (rotate == 0) return image; 
-
-    AffineTransform transform = new AffineTransform();
-
-    // get width and height of the origianl image
-    int width = image.getWidth(null);
-    int height = image.getHeight(null);
+    return rotateImage(image, rotate, null);
+  }
 
-    if (rotate == Generator.ROTATE_90)
-    {
-      transform.translate(height, 0);
-      transform.rotate(Generator.ROTATE_90);
-      width = image.getHeight(); // swap
-      height = image.getWidth();
-    }
-    else if (rotate == Generator.ROTATE_270)
-    {
-      transform.translate(0, width);
-      transform.rotate(Generator.ROTATE_270);
-      width = image.getHeight(null); // swap
-      height = image.getWidth(null);
-    }
-    /**
-   	 * Sommersemester 2018, Übungsblatt 1, Aufgabe 2 g)
-   	 */
-    else if (Math.abs(rotate - Math.toRadians(180)) < 0.0000001d) {
-       	return rotateImage(rotateImage(image, ROTATE_90), ROTATE_90);
-   	}
-    else
-    {
-      throw new IllegalArgumentException("degree must be a mutiple of 90°!");
-    }
+  /**
+   * <p>
+   * rotate the Image by a multiple of 90 degrees. The pixels are copied
+   * directly between the data buffers, big images on all cores.
+   * </p>
+   * 
+   * @param image
+   *          BufferedImage, the image
+   * @param rotate
+   *          double, {@link #ROTATE_90}, {@link #ROTATE_270}, 180 degrees or 0
+   *          in radians
+   * @param destination
+   *          BufferedImage, an image of the rotated size which is reused, or
+   *          null for a new image like the source
+   * @return BufferedImage, the rotated image, the image itself for 0
+   */
+  public BufferedImage rotateImage(BufferedImage image, double rotate, BufferedImage destination)
+  {
+    if (rotate == 0) return image;
 
-    // Return a new Image
-    BufferedImage returnImage = new BufferedImage(width, height, image.getColorModel().getColorSpace().getType());
-    Graphics2D g = returnImage.createGraphics();
-    g.drawImage(image, transform, null);
+    int transformation;
+    if (rotate == Generator.ROTATE_90) transformation = OrthogonalRotator.CLOCKWISE;
+    else if (rotate == Generator.ROTATE_270) transformation = OrthogonalRotator.COUNTERCLOCKWISE;
+    else if (Math.abs(rotate - Math.toRadians(180)) < 0.0000001d) transformation = OrthogonalRotator.HALF_TURN;
+    else throw new IllegalArgumentException("degree must be a mutiple of 90°!");
 
-    return returnImage;
+    return new OrthogonalRotator(Runtime.getRuntime().availableProcessors()).transform(image, transformation, destination);
   }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.ProgressMonitor;
+
+/**
+ * <p>
+ * Handle of a running image job: one producer and the stages of an
+ * {@link ImagePipeline} on the {@link ImageJobExecutor}. Cancelling the job
+ * interrupts all of them, the job is done when every one of them has returned.
+ * </p>
+ */
+public class ImageJob implements Future<Void> {
+  /** interval to check the ProgressMonitor for a cancel */
+  private static final long      POLL_MILLIS = 50;
+
+  private final Producer         producer;
+  private final int              readers;
+  private final ArrayList<Task>  tasks       = new ArrayList<Task>();
+  private CountDownLatch         done;
+  private AtomicInteger          running;
+  private volatile boolean       cancelled   = false;
+
+  /**
+   * @param producer
+   *          Producer, the producer of the job
+   * @param pipeline
+   *          ImagePipeline, the pipeline which takes the elements of the
+   *          producer
+   */
+  public ImageJob(Producer producer, ImagePipeline pipeline) {
+    super();
+    this.producer = producer;
+    this.readers = pipeline.readers();
+    add(producer, ImageJobExecutor.get());
+    pipeline.addTo(this);
+  }
+
+  /**
+   * @param worker
+   *          Runnable, a worker of the job
+   * @param executor
+   *          ExecutorService, the executor the worker is started on
+   */
+  synchronized void add(Runnable worker, ExecutorService executor)
+  {
+    tasks.add(new Task(worker, executor));
+  }
+
+  /**
+   * <p>
+   * start the producer and the stages on the shared executors
+   * </p>
+   * 
+   * @return this job
+   */
+  public synchronized ImageJob start()
+  {
+    producer.setConsumers(readers);
+    done = new CountDownLatch(tasks.size());
+    running = new AtomicInteger(tasks.size());
+    producer.progress.start();
+    for (Task task : tasks)
+      task.future = task.executor.submit(task);
+    return this;
+  }
+
+  /**
+   * <p>
+   * wait for the end of the job. A cancel of the monitor cancels the job.
+   * </p>
+   * 
+   * @param monitor
+   *          ProgressMonitor, the monitor of the job or null
+   * @return true, if neither the job nor the monitor was cancelled
+   */
+  public boolean waitFor(ProgressMonitor monitor)
+  {
+    try
+    {
+      while (!done.await(POLL_MILLIS, TimeUnit.MILLISECONDS))
+      {
+        if (monitor != null && monitor.isCanceled()) cancel(true);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      cancel(true);
+      Thread.currentThread().interrupt();
+    }
+    return !cancelled && (monitor == null || !monitor.isCanceled());
+  }
+
+  public synchronized boolean cancel(boolean mayInterruptIfRunning)
+  {
+    if (done == null || isDone()) return false;
+    cancelled = true;
+    for (Task task : tasks)
+    {
+      task.future.cancel(mayInterruptIfRunning);
+      // a task which never ran doesn't count down itself
+      if (task.claimed.compareAndSet(false, true)) countDown();
+    }
+    return true;
+  }
+
+  public boolean isCancelled()
+  {
+    return cancelled;
+  }
+
+  public boolean isDone()
+  {
+    return done != null && done.getCount() == 0;
+  }
+
+  public Void get() throws InterruptedException
+  {
+    done.await();
+    if (cancelled) throw new CancellationException();
+    return null;
+  }
+
+  public Void get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException
+  {
+    if (!done.await(timeout, unit)) throw new TimeoutException();
+    if (cancelled) throw new CancellationException();
+    return null;
+  }
+
+  private void countDown()
+  {
+    // the last lines of the workers are shown before the job is done
+    if (running.decrementAndGet() == 0) producer.progress.stop();
+    done.countDown();
+  }
+
+  /**
+   * the producer or a worker of a stage, which counts down the latch when it returns
+   */
+  private class Task implements Runnable {
+    final Runnable        runnable;
+    final ExecutorService executor;
+    final AtomicBoolean   claimed = new AtomicBoolean(false);
+    Future<?>             future;
+
+    Task(Runnable runnable, ExecutorService executor) {
+      this.runnable = runnable;
+      this.executor = executor;
+    }
+
+    public void run()
+    {
+      if (!claimed.compareAndSet(false, true)) return;
+      try
+      {
+        runnable.run();
+      }
+      finally
+      {
+        countDown();
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The one executor for all image jobs of the application. Its threads live
+ * across jobs, so a job doesn't start threads of its own. The threads are
+ * daemon threads and don't keep the application alive.
+ * </p>
+ */
+public final class ImageJobExecutor {
+  private static final ExecutorService EXECUTOR;
+  private static final ExecutorService IO_EXECUTOR;
+
+  static
+  {
+    final AtomicInteger count = new AtomicInteger();
+    ThreadFactory factory = new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "jmjrst-worker-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+
+    // one thread for each core and the producer stay alive, more are
+    // started only if several jobs run at the same time
+    int core = Runtime.getRuntime().availableProcessors() + 2;
+    EXECUTOR = new ThreadPoolExecutor(core, Integer.MAX_VALUE, 5, TimeUnit.MINUTES, new SynchronousQueue<Runnable>(), factory);
+
+    // tasks which mostly wait for the disk run on virtual threads, if the
+    // runtime has them
+    ExecutorService io;
+    try
+    {
+      Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      io = (ExecutorService) virtual.invoke(null);
+    }
+    catch (Exception e)
+    {
+      io = EXECUTOR;
+    }
+    IO_EXECUTOR = io;
+  }
+
+  private ImageJobExecutor() {
+  }
+
+  /**
+   * @return the shared executor
+   */
+  public static ExecutorService get()
+  {
+    return EXECUTOR;
+  }
+
+  /**
+   * @return the executor for tasks which block on I/O, it uses virtual threads
+   *         on Java 21 and later and the shared executor otherwise
+   */
+  public static ExecutorService io()
+  {
+    return IO_EXECUTOR;
+  }
+}
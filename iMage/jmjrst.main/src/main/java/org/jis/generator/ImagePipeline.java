@@ -0,0 +1,510 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.swing.text.AttributeSet;
+
+import org.jis.Main;
+import org.jis.options.Options;
+
+/**
+ * <p>
+ * Generates the images of a {@link Producer} in five stages: read, decode,
+ * scale, encode and write. The stages are connected by bounded queues and run
+ * at the same time, so the disk is read and written while the cores decode and
+ * scale other images.
+ * </p>
+ * <p>
+ * For a ZIP file the write stage is replaced by a single archive stage, which
+ * streams the encoded images into the ZIP file without temporary files.
+ * </p>
+ * <p>
+ * The read and write stages run on the I/O executor of the
+ * {@link ImageJobExecutor}. The other stages share as many permits as there are
+ * cores, so the CPU bound work never runs on more threads than cores.
+ * </p>
+ */
+public class ImagePipeline {
+  /** concurrent reads and writes of the I/O stages */
+  private static final int      IO_WORKERS = 4;
+
+  private final Main            m;
+  private final Producer        producer;
+  private final BuildManifest   manifest;
+  private final File            zipFile;
+  private final Semaphore       cpu;
+  private final Stage[]         stages;
+  // workers of all stages which are still running
+  private final AtomicInteger   running    = new AtomicInteger();
+  private final PipelineMetrics metrics    = PipelineMetrics.get();
+  private JobReport             report     = null;
+
+  /**
+   * @param producer
+   *          Producer, the producer of the elements
+   * @param m
+   *          Main, the main window
+   * @param zipFile
+   *          File, the ZIP file for all images or null, if the images are
+   *          written to their targets
+   * @param manifest
+   *          BuildManifest, the manifest of the output directory or null, if
+   *          all images should be generated
+   */
+  public ImagePipeline(Producer producer, Main m, File zipFile, BuildManifest manifest) {
+    super();
+    this.producer = producer;
+    this.m = m;
+    this.manifest = manifest;
+    this.zipFile = zipFile;
+
+    int cpus = Runtime.getRuntime().availableProcessors();
+    this.cpu = new Semaphore(cpus);
+    Stage last = zipFile == null ? new Write(IO_WORKERS) : new Archive(zipFile);
+    this.stages = new Stage[] { new Read(IO_WORKERS), new Decode(cpus), new Scale(cpus), new Encode(cpus), last };
+    for (int i = 0; i < stages.length - 1; i++)
+      stages[i].next = stages[i + 1];
+  }
+
+  /**
+   * @param report
+   *          JobReport, the report the finished images are added to, or null
+   */
+  public void setReport(JobReport report)
+  {
+    this.report = report;
+  }
+
+  /**
+   * @return int, the number of workers which take from the queue of the
+   *         producer
+   */
+  int readers()
+  {
+    return stages[0].workers;
+  }
+
+  /**
+   * @param job
+   *          ImageJob, the job the workers of all stages are added to
+   */
+  void addTo(ImageJob job)
+  {
+    for (Stage stage : stages)
+      running.addAndGet(stage.workers);
+
+    for (Stage stage : stages)
+    {
+      for (int i = 0; i < stage.workers; i++)
+        job.add(stage, stage.cpuBound ? ImageJobExecutor.get() : ImageJobExecutor.io());
+    }
+  }
+
+  /**
+   * @return int, the images which wait in the queues between the stages
+   */
+  int queued()
+  {
+    int n = 0;
+    for (Stage stage : stages)
+    {
+      for (RenderTask task : stage.queue)
+      {
+        if (task != RenderTask.END) n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * <p>
+   * One stage of the pipeline, every worker of the stage runs this loop. The
+   * last worker of a stage which sees the end of the input passes the end to
+   * all workers of the next stage.
+   * </p>
+   */
+  private abstract class Stage implements Runnable {
+    final int                       workers;
+    final boolean                   cpuBound;
+    final BlockingQueue<RenderTask> queue;
+    final AtomicInteger             running;
+    Stage                           next;
+
+    Stage(int workers, boolean cpuBound) {
+      this.workers = workers;
+      this.cpuBound = cpuBound;
+      this.queue = new ArrayBlockingQueue<RenderTask>(workers + 1);
+      this.running = new AtomicInteger(workers);
+    }
+
+    RenderTask take() throws InterruptedException
+    {
+      return queue.take();
+    }
+
+    abstract void process(RenderTask task) throws Exception;
+
+    public void run()
+    {
+      metrics.started(ImagePipeline.this);
+      boolean interrupted = false;
+      try
+      {
+        for (RenderTask task; (task = take()) != RenderTask.END;)
+        {
+          if (!task.failed && !m.p_monitor.isCanceled())
+          {
+            if (cpuBound) cpu.acquire();
+            metrics.consumerStarted();
+            long start = System.nanoTime();
+            try
+            {
+              process(task);
+            }
+            catch (InterruptedException e)
+            {
+              throw e;
+            }
+            catch (Exception e)
+            {
+              e.printStackTrace();
+              task.failed = true;
+            }
+            finally
+            {
+              task.work += System.nanoTime() - start;
+              metrics.consumerFinished();
+              if (cpuBound) cpu.release();
+            }
+          }
+
+          if (next != null) next.queue.put(task);
+          else finish(task);
+        }
+      }
+      catch (InterruptedException ex)
+      {
+        System.out.println("PIPELINE INTERRUPTED");
+        interrupted = true;
+      }
+      finally
+      {
+        if (running.decrementAndGet() == 0) end(interrupted);
+        if (ImagePipeline.this.running.decrementAndGet() == 0) metrics.finished(ImagePipeline.this);
+      }
+    }
+
+    /**
+     * <p>
+     * called by the last worker of the stage, passes the end to the next stage
+     * </p>
+     * 
+     * @param interrupted
+     *          boolean, true if the job was cancelled
+     */
+    void end(boolean interrupted)
+    {
+      if (next == null || interrupted) return;
+      try
+      {
+        for (int i = 0; i < next.workers; i++)
+          next.queue.put(RenderTask.END);
+      }
+      catch (InterruptedException ex)
+      {
+        System.out.println("PIPELINE INTERRUPTED");
+      }
+    }
+  }
+
+  /**
+   * reads the source, sizes which are up to date or in the cache are skipped
+   */
+  private class Read extends Stage {
+    Read(int workers) {
+      super(workers, false);
+    }
+
+    RenderTask take() throws InterruptedException
+    {
+      Element elem = producer.queue.take();
+      if (elem == Element.END) return RenderTask.END;
+      RenderTask task = new RenderTask(elem, elem.file, elem.targets, producer.praefix);
+      task.event.begin();
+      return task;
+    }
+
+    void process(RenderTask task) throws IOException
+    {
+      producer.progress.note("Aktuelles Bild: " + task.file.getName());
+
+      // skip the sizes which are still up to date
+      ArrayList<ImageTarget> targets = new ArrayList<ImageTarget>();
+      for (ImageTarget target : task.targets)
+      {
+        if (manifest == null || !manifest.isUpToDate(task.file, target.file(task.file, task.praefix), BuildManifest.params(target, task.praefix))) targets.add(target);
+      }
+      if (targets.isEmpty())
+      {
+        task.targets = new ImageTarget[ 0];
+        return;
+      }
+
+      task.source = Files.readAllBytes(task.file.toPath());
+      task.read = task.source.length;
+      metrics.read(task.read);
+
+      // the hash of the bytes in memory serves the cache and the manifest
+      DerivedImageCache cache = DerivedImageCache.get();
+      if (cache != null || manifest != null) task.sourceHash = ContentHash.of(task.source);
+
+      // take the sizes which are in the cache
+      if (cache != null)
+      {
+        for (int i = targets.size() - 1; i >= 0; i--)
+        {
+          ImageTarget target = targets.get(i);
+          String key = DerivedImageCache.key(task.sourceHash, target);
+          if (zipFile != null)
+          {
+            byte[] data = cache.fetch(key);
+            if (data == null) continue;
+            task.fetched.put(target, data);
+          }
+          else
+          {
+            if (!cache.fetch(key, target.file(task.file, task.praefix))) continue;
+            record(task, target);
+          }
+          targets.remove(i);
+        }
+      }
+      task.targets = targets.toArray(new ImageTarget[ targets.size()]);
+      if (task.targets.length == 0) task.source = null;
+    }
+  }
+
+  private class Decode extends Stage {
+    Decode(int workers) {
+      super(workers, true);
+    }
+
+    void process(RenderTask task) throws IOException
+    {
+      if (task.targets.length == 0) return;
+      m.generator.decode(task, new MemoryCacheImageInputStream(new ByteArrayInputStream(task.source)));
+      task.source = null;
+    }
+  }
+
+  private class Scale extends Stage {
+    Scale(int workers) {
+      super(workers, true);
+    }
+
+    void process(RenderTask task)
+    {
+      if (task.targets.length == 0) return;
+      m.generator.scale(task);
+      task.image = null;
+    }
+  }
+
+  private class Encode extends Stage {
+    Encode(int workers) {
+      super(workers, true);
+    }
+
+    void process(RenderTask task) throws IOException
+    {
+      if (task.targets.length == 0) return;
+      m.generator.encode(task);
+      task.scaled = null;
+    }
+  }
+
+  /**
+   * writes the encoded images and stores them in the cache
+   */
+  private class Write extends Stage {
+    Write(int workers) {
+      super(workers, false);
+    }
+
+    void process(RenderTask task) throws IOException
+    {
+      DerivedImageCache cache = DerivedImageCache.get();
+      for (int i = 0; i < task.targets.length; i++)
+      {
+        long start = System.nanoTime();
+        File out = task.output(i);
+        try (FileChannel channel = new FileOutputStream(out).getChannel())
+        {
+          ByteBuffer buffer = ByteBuffer.wrap(task.encoded[i]);
+          while (buffer.hasRemaining())
+            channel.write(buffer);
+        }
+        metrics.write.record(System.nanoTime() - start);
+        metrics.written(task.encoded[i].length);
+        task.written += task.encoded[i].length;
+        if (cache != null && task.sourceHash != null) cache.store(DerivedImageCache.key(task.sourceHash, task.targets[i]), task.encoded[i]);
+        record(task, task.targets[i]);
+      }
+      task.encoded = null;
+    }
+  }
+
+  /**
+   * <p>
+   * the only writer of the ZIP file. The {@link ParallelZipWriter} STOREs the
+   * JPEG data, which doesn't get smaller by deflating, and deflates other
+   * entries on all cores.
+   * </p>
+   */
+  private class Archive extends Stage {
+    private final File        file;
+    private final ZipEvent    event   = new ZipEvent();
+    private ParallelZipWriter out     = null;
+    private int               entries = 0;
+    private long              read    = 0;
+
+    Archive(File file) {
+      super(1, false);
+      this.file = file;
+    }
+
+    void process(RenderTask task) throws IOException
+    {
+      if (out == null) open();
+      read += task.read;
+      for (Map.Entry<ImageTarget, byte[]> entry : task.fetched.entrySet())
+        put(name(task, entry.getKey()), entry.getValue());
+      task.fetched.clear();
+
+      DerivedImageCache cache = DerivedImageCache.get();
+      for (int i = 0; i < task.targets.length; i++)
+      {
+        long start = System.nanoTime();
+        put(name(task, task.targets[i]), task.encoded[i]);
+        metrics.write.record(System.nanoTime() - start);
+        metrics.written(task.encoded[i].length);
+        task.written += task.encoded[i].length;
+        if (cache != null && task.sourceHash != null) cache.store(DerivedImageCache.key(task.sourceHash, task.targets[i]), task.encoded[i]);
+      }
+      task.encoded = null;
+    }
+
+    /**
+     * the name of the entry, the sizes of an image with several targets are
+     * kept apart by the name of their directory
+     */
+    private String name(RenderTask task, ImageTarget target)
+    {
+      String name = target.file(task.file, task.praefix).getName();
+      if (task.element != null && task.element.targets.length > 1) name = target.out.getName() + "/" + name;
+      return name;
+    }
+
+    private void open() throws IOException
+    {
+      event.begin();
+      out = new ParallelZipWriter(file, Deflater.BEST_COMPRESSION, Runtime.getRuntime().availableProcessors());
+    }
+
+    private void put(String name, byte[] data) throws IOException
+    {
+      out.add(data, name, System.currentTimeMillis());
+      entries++;
+    }
+
+    void end(boolean interrupted)
+    {
+      try
+      {
+        if (out == null) open();
+        out.close();
+      }
+      catch (IOException e)
+      {
+        e.printStackTrace();
+        m.error = true;
+      }
+
+      // a cancelled job leaves no half written ZIP file
+      if (interrupted || m.p_monitor.isCanceled())
+      {
+        file.delete();
+        return;
+      }
+
+      event.end();
+      if (event.shouldCommit())
+      {
+        event.file = file.getPath();
+        event.entries = entries;
+        event.bytesRead = read;
+        event.bytesWritten = file.length();
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * add a generated file to the manifest
+   * </p>
+   */
+  private void record(RenderTask task, ImageTarget target)
+  {
+    File f = target.file(task.file, task.praefix);
+    if (manifest != null && f.isFile()) manifest.record(task.file, f, BuildManifest.params(target, task.praefix), task.sourceHash);
+  }
+
+  /**
+   * <p>
+   * log the result of an image and return its memory to the producer
+   * </p>
+   */
+  private void finish(RenderTask task)
+  {
+    if (task.failed) m.error = true;
+    metrics.imageDone(!task.failed);
+    task.event.finish(task);
+    if (report != null) report.add(task);
+    producer.progress.imageDone(task.failed);
+    producer.progress.log(new String[] { m.mes.getString("Generator.10"), task.file.getName(), "\t . . . . . .  ", m.mes.getString(task.failed ? "Generator.42" : "Generator.40") + Options.ls },
+                          new AttributeSet[] { m.outputAtr, m.fileAtr, m.outputAtr, task.failed ? m.errorAtr : m.readyAtr });
+
+    producer.release(task.element);
+    producer.incrementIndex();
+  }
+}
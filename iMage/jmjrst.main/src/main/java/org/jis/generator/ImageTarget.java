@@ -0,0 +1,59 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.File;
+
+/**
+ * <p>
+ * One requested output of a source image: the maximal width and height and the
+ * directory (or file) the scaled image is written to. An {@link Element} can
+ * carry several targets, all of them are rendered from a single decode of the
+ * source.
+ * </p>
+ */
+public class ImageTarget {
+  public final int  width;
+  public final int  height;
+  public final File out;
+
+  /**
+   * @param width
+   *          int, max. width of the scaled image
+   * @param height
+   *          int, max. height of the scaled image
+   * @param out
+   *          File, the directory or file for the scaled image
+   */
+  public ImageTarget(int width, int height, File out) {
+    super();
+    this.width = width;
+    this.height = height;
+    this.out = out;
+  }
+
+  /**
+   * @param source
+   *          File, the source image
+   * @param praefix
+   *          String, praefix for the filename
+   * @return File, the file the scaled image is written to
+   */
+  public File file(File source, String praefix)
+  {
+    return out.isDirectory() ? new File(out, praefix + source.getName()) : out;
+  }
+}
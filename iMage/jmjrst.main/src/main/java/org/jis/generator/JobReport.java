@@ -0,0 +1,276 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>
+ * The performance report of one job: wall and CPU time, throughput, the
+ * bytes read and written, the peak heap and the time of every image. It is
+ * written as {@value #JSON} and {@value #CSV} into the output directory of the
+ * job, so the runs can be compared over time and slow images are found
+ * without reading the log.
+ * </p>
+ * <p>
+ * The CPU time is the one of the whole process and the peak heap is the sum of
+ * the peaks of the heap pools, both are reset at the start of the job.
+ * </p>
+ */
+public class JobReport {
+  public static final String      JSON    = "jmjrst-report.json";
+  public static final String      CSV     = "jmjrst-report.csv";
+  /** images listed as the slowest of the job */
+  public static final int         SLOWEST = 10;
+
+  private final String            job;
+  private final long              started = System.currentTimeMillis();
+  private final long              start   = System.nanoTime();
+  private final long              cpuStart;
+  private final List<Image>       images  = new ArrayList<Image>();
+  private long                    wallNanos;
+  private long                    cpuNanos;
+  private long                    peakHeap;
+  private boolean                 finished;
+
+  /**
+   * <p>
+   * the time of one image
+   * </p>
+   */
+  private static class Image {
+    final String  file;
+    final long    work;
+    final long    latency;
+    final long    read;
+    final long    written;
+    final boolean failed;
+
+    Image(String file, long work, long latency, long read, long written, boolean failed) {
+      this.file = file;
+      this.work = work;
+      this.latency = latency;
+      this.read = read;
+      this.written = written;
+      this.failed = failed;
+    }
+  }
+
+  /**
+   * @param job
+   *          String, the kind of the job, e.g. generate or gallery
+   */
+  public JobReport(String job) {
+    super();
+    this.job = job;
+    this.cpuStart = cpuTime();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+    {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) pool.resetPeakUsage();
+    }
+  }
+
+  /**
+   * @return long, the CPU time of the process in nanoseconds, -1 if the JVM
+   *         doesn't tell it
+   */
+  private static long cpuTime()
+  {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+    return -1;
+  }
+
+  /**
+   * <p>
+   * add a finished image of the pipeline
+   * </p>
+   * 
+   * @param task
+   *          RenderTask, the finished task
+   */
+  void add(RenderTask task)
+  {
+    add(task.file.getPath(), task.work, System.nanoTime() - task.created, task.read, task.written, task.failed);
+  }
+
+  /**
+   * @param file
+   *          String, the source image
+   * @param work
+   *          long, nanoseconds the stages worked on the image
+   * @param latency
+   *          long, nanoseconds from reading the image to the last write
+   * @param read
+   *          long, bytes of the source
+   * @param written
+   *          long, bytes of the written images
+   * @param failed
+   *          boolean, true if the image failed
+   */
+  public synchronized void add(String file, long work, long latency, long read, long written, boolean failed)
+  {
+    images.add(new Image(file, work, latency, read, written, failed));
+  }
+
+  /**
+   * <p>
+   * stop the clocks of the job, later calls don't change the report
+   * </p>
+   */
+  public synchronized void finish()
+  {
+    if (finished) return;
+    finished = true;
+    wallNanos = System.nanoTime() - start;
+    long cpu = cpuTime();
+    cpuNanos = cpu < 0 || cpuStart < 0 ? -1 : cpu - cpuStart;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+    {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.getPeakUsage() != null) peakHeap += pool.getPeakUsage().getUsed();
+    }
+  }
+
+  /**
+   * <p>
+   * finish the report and write it as JSON and CSV into the directory
+   * </p>
+   * 
+   * @param dir
+   *          File, the output directory of the job
+   * @throws IOException
+   */
+  public synchronized void write(File dir) throws IOException
+  {
+    finish();
+    dir.mkdirs();
+    write(new File(dir, JSON), toJson());
+    write(new File(dir, CSV), toCsv());
+  }
+
+  private static void write(File file, String text) throws IOException
+  {
+    try (Writer out = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8))
+    {
+      out.write(text);
+    }
+  }
+
+  /**
+   * @return List, the slowest images by the time the stages worked on them
+   */
+  private List<Image> slowest()
+  {
+    List<Image> sorted = new ArrayList<Image>(images);
+    Collections.sort(sorted, new Comparator<Image>()
+    {
+      public int compare(Image a, Image b)
+      {
+        return Long.compare(b.work, a.work);
+      }
+    });
+    return sorted.subList(0, Math.min(SLOWEST, sorted.size()));
+  }
+
+  private static String millis(long nanos)
+  {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+
+  /**
+   * @return String, the report as JSON object
+   */
+  synchronized String toJson()
+  {
+    long read = 0;
+    long written = 0;
+    int failed = 0;
+    for (Image image : images)
+    {
+      read += image.read;
+      written += image.written;
+      if (image.failed) failed++;
+    }
+    double seconds = wallNanos / 1e9;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\n");
+    sb.append("  \"job\": ").append(BatchGenerator.quote(job)).append(",\n");
+    sb.append("  \"started\": ").append(started).append(",\n");
+    sb.append("  \"wallMillis\": ").append(millis(wallNanos)).append(",\n");
+    sb.append("  \"cpuMillis\": ").append(cpuNanos < 0 ? "null" : millis(cpuNanos)).append(",\n");
+    sb.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+    sb.append("  \"imageCount\": ").append(images.size()).append(",\n");
+    sb.append("  \"failed\": ").append(failed).append(",\n");
+    sb.append("  \"imagesPerSecond\": ").append(String.format(Locale.ROOT, "%.3f", seconds > 0 ? images.size() / seconds : 0)).append(",\n");
+    sb.append("  \"bytesRead\": ").append(read).append(",\n");
+    sb.append("  \"bytesWritten\": ").append(written).append(",\n");
+    sb.append("  \"peakHeapBytes\": ").append(peakHeap).append(",\n");
+    sb.append("  \"slowest\": ");
+    append(sb, slowest());
+    sb.append(",\n  \"images\": ");
+    append(sb, images);
+    sb.append("\n}\n");
+    return sb.toString();
+  }
+
+  private static void append(StringBuilder sb, List<Image> list)
+  {
+    sb.append('[');
+    for (int i = 0; i < list.size(); i++)
+    {
+      Image image = list.get(i);
+      sb.append(i == 0 ? "\n    " : ",\n    ");
+      sb.append("{\"file\": ").append(BatchGenerator.quote(image.file));
+      sb.append(", \"millis\": ").append(millis(image.work));
+      sb.append(", \"latencyMillis\": ").append(millis(image.latency));
+      sb.append(", \"bytesRead\": ").append(image.read);
+      sb.append(", \"bytesWritten\": ").append(image.written);
+      sb.append(", \"failed\": ").append(image.failed).append('}');
+    }
+    sb.append(list.isEmpty() ? "]" : "\n  ]");
+  }
+
+  /**
+   * @return String, one line for every image
+   */
+  synchronized String toCsv()
+  {
+    StringBuilder sb = new StringBuilder("file,millis,latencyMillis,bytesRead,bytesWritten,failed\n");
+    for (Image image : images)
+    {
+      String file = image.file;
+      if (file.indexOf(',') >= 0 || file.indexOf('"') >= 0 || file.indexOf('\n') >= 0) file = "\"" + file.replace("\"", "\"\"") + "\"";
+      sb.append(file).append(',').append(millis(image.work)).append(',').append(millis(image.latency)).append(',');
+      sb.append(image.read).append(',').append(image.written).append(',').append(image.failed).append('\n');
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * <p>
+ * The metadata segments of a JPEG as raw bytes: the EXIF and XMP APP1 and the
+ * ICC profile APP2 segments. They are read from the header of the source and
+ * inserted into the encoded scaled images, instead of building and writing the
+ * metadata tree of ImageIO for every image.
+ * </p>
+ * <p>
+ * Only the fields which depend on the pixels are changed: the orientation, as
+ * it is applied to the pixels, and the dimensions of the EXIF data. GPS data
+ * and the EXIF thumbnail can be removed.
+ * </p>
+ */
+public final class JpegSegments {
+  private static final int     SOI           = 0xD8;
+  private static final int     EOI           = 0xD9;
+  private static final int     SOS           = 0xDA;
+  private static final int     APP0          = 0xE0;
+  private static final int     APP1          = 0xE1;
+  private static final int     APP2          = 0xE2;
+
+  private static final byte[]  EXIF          = bytes("Exif\0\0");
+  private static final byte[]  XMP           = bytes("http://ns.adobe.com/xap/1.0/\0");
+  private static final byte[]  XMP_EXTENSION = bytes("http://ns.adobe.com/xmp/extension/\0");
+  private static final byte[]  ICC           = bytes("ICC_PROFILE\0");
+  private static final byte[]  XMP_GPS       = bytes("exif:GPS");
+
+  private final List<Segment>  segments      = new ArrayList<Segment>();
+
+  /**
+   * one segment without marker and length
+   */
+  private static class Segment {
+    final int marker;
+    byte[]    data;
+
+    Segment(int marker, byte[] data) {
+      this.marker = marker;
+      this.data = data;
+    }
+
+    boolean isExif()
+    {
+      return marker == APP1 && startsWith(data, EXIF);
+    }
+  }
+
+  private JpegSegments() {
+    super();
+  }
+
+  private static byte[] bytes(String s)
+  {
+    return s.getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  private static boolean startsWith(byte[] data, byte[] prefix)
+  {
+    if (data.length < prefix.length) return false;
+    for (int i = 0; i < prefix.length; i++)
+    {
+      if (data[i] != prefix[i]) return false;
+    }
+    return true;
+  }
+
+  private static boolean contains(byte[] data, byte[] part)
+  {
+    outer: for (int i = 0; i + part.length <= data.length; i++)
+    {
+      for (int j = 0; j < part.length; j++)
+      {
+        if (data[i + j] != part[j]) continue outer;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * <p>
+   * read the metadata segments from the header of a JPEG, up to the image
+   * data. The position of the stream is not changed.
+   * </p>
+   * 
+   * @param iis
+   *          ImageInputStream, the encoded image
+   * @return JpegSegments, the segments, null if the stream is no JPEG
+   * @throws IOException
+   */
+  static JpegSegments read(ImageInputStream iis) throws IOException
+  {
+    iis.mark();
+    try
+    {
+      if (iis.read() != 0xFF || iis.read() != SOI) return null;
+      JpegSegments jpeg = new JpegSegments();
+      while (iis.read() == 0xFF)
+      {
+        int marker = iis.read();
+        while (marker == 0xFF)
+          marker = iis.read();
+        if (marker == -1 || marker == SOS || marker == EOI) break;
+        // markers without a length
+        if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) continue;
+
+        int len = iis.readUnsignedShort() - 2;
+        if (len < 0) break;
+        if (marker == APP1 || marker == APP2)
+        {
+          byte[] data = new byte[ len];
+          iis.readFully(data);
+          if (marker == APP1 ? startsWith(data, EXIF) || startsWith(data, XMP) || startsWith(data, XMP_EXTENSION) : startsWith(data, ICC)) jpeg.segments.add(new Segment(marker, data));
+        }
+        else iis.skipBytes(len);
+      }
+      return jpeg;
+    }
+    catch (EOFException e)
+    {
+      return null;
+    }
+    finally
+    {
+      iis.reset();
+    }
+  }
+
+  /**
+   * @return int, the EXIF orientation 1..8, 0 if there is none
+   */
+  int orientation()
+  {
+    for (Segment s : segments)
+    {
+      if (s.isExif()) return ExifOrientation.read(s.data);
+    }
+    return 0;
+  }
+
+  /**
+   * <p>
+   * prepare the segments for the scaled images: the orientation is set to
+   * normal, because it is applied to the pixels, and the GPS data and the
+   * thumbnail are removed if requested. An EXIF segment which can't be parsed
+   * for stripping is left out. XMP packets with GPS data are left out as a
+   * whole, if the GPS data is removed.
+   * </p>
+   * 
+   * @param stripGps
+   *          boolean, remove the GPS data
+   * @param stripThumbnail
+   *          boolean, remove the EXIF thumbnail
+   */
+  void prepare(boolean stripGps, boolean stripThumbnail)
+  {
+    for (Iterator<Segment> it = segments.iterator(); it.hasNext();)
+    {
+      Segment s = it.next();
+      if (s.isExif())
+      {
+        s.data = ExifOrientation.normalize(s.data);
+        if (stripGps || stripThumbnail) s.data = strip(s.data, stripGps, stripThumbnail);
+        if (s.data == null) it.remove();
+      }
+      else if (stripGps && s.marker == APP1 && contains(s.data, XMP_GPS)) it.remove();
+    }
+  }
+
+  /**
+   * @return byte[], the data without GPS and thumbnail, null if it can't be
+   *         parsed
+   */
+  private static byte[] strip(byte[] data, boolean stripGps, boolean stripThumbnail)
+  {
+    try
+    {
+      Tiff tiff = new Tiff(data);
+      int ifd0 = tiff.ifd0();
+      if (stripGps)
+      {
+        int entry = tiff.entry(ifd0, Tiff.GPS_IFD);
+        if (entry >= 0)
+        {
+          tiff.clear(Tiff.START + (int) tiff.u32(entry + 8));
+          tiff.remove(ifd0, entry);
+        }
+      }
+      if (stripThumbnail)
+      {
+        int next = ifd0 + 2 + 12 * tiff.u16(ifd0);
+        long ifd1 = tiff.u32(next);
+        if (ifd1 != 0)
+        {
+          List<int[]> thumbnail = new ArrayList<int[]>();
+          tiff.ranges(Tiff.START + (int) ifd1, thumbnail, 0);
+          tiff.put(next, 4, 0);
+
+          // the thumbnail is usually the last part, then the segment gets
+          // shorter, otherwise its bytes are cleared
+          List<int[]> kept = new ArrayList<int[]>();
+          tiff.ranges(ifd0, kept, 0);
+          int end = Tiff.START + 8;
+          for (int[] r : kept)
+            end = Math.max(end, r[1]);
+          int start = data.length;
+          for (int[] r : thumbnail)
+            start = Math.min(start, r[0]);
+          if (start >= end) return Arrays.copyOf(data, end);
+          for (int[] r : thumbnail)
+            Arrays.fill(data, r[0], r[1], (byte) 0);
+        }
+      }
+      return data;
+    }
+    catch (RuntimeException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * <p>
+   * insert the segments into an encoded image, after the JFIF segment of the
+   * writer. The dimensions of the EXIF data are set to the size of the image.
+   * An ICC profile is left out if the writer has written one.
+   * </p>
+   * 
+   * @param jpeg
+   *          byte[], the encoded scaled image at the start of the array
+   * @param length
+   *          int, the length of the encoded image
+   * @param width
+   *          int, the width of the image
+   * @param height
+   *          int, the height of the image
+   * @return byte[], the image with the metadata
+   */
+  byte[] insertInto(byte[] jpeg, int length, int width, int height)
+  {
+    int size = length;
+    for (Segment s : segments)
+      size += 4 + s.data.length;
+    ByteArrayImageOutputStream out = new ByteArrayImageOutputStream(size);
+    try
+    {
+      writeTo(out, jpeg, length, width, height);
+    }
+    catch (IOException e)
+    {
+      // not thrown by an array
+      throw new IllegalStateException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * <p>
+   * write an encoded image with the segments, like
+   * {@link #insertInto(byte[], int, int, int)}.
+   * </p>
+   * 
+   * @param out
+   *          ImageOutputStream, receives the image with the metadata
+   * @param jpeg
+   *          byte[], the encoded scaled image at the start of the array
+   * @param length
+   *          int, the length of the encoded image
+   * @param width
+   *          int, the width of the image
+   * @param height
+   *          int, the height of the image
+   * @throws IOException
+   */
+  void writeTo(ImageOutputStream out, byte[] jpeg, int length, int width, int height) throws IOException
+  {
+    if (segments.isEmpty() || length < 4 || (jpeg[0] & 0xff) != 0xFF || (jpeg[1] & 0xff) != SOI)
+    {
+      out.write(jpeg, 0, length);
+      return;
+    }
+
+    int p = 2;
+    int insert = -1;
+    boolean icc = false;
+    while (p + 4 <= length && (jpeg[p] & 0xff) == 0xFF)
+    {
+      int marker = jpeg[p + 1] & 0xff;
+      if (marker == SOS) break;
+      if (marker != APP0 && insert < 0) insert = p;
+      int len = ((jpeg[p + 2] & 0xff) << 8) | (jpeg[p + 3] & 0xff);
+      if (marker == APP2 && p + 4 + ICC.length <= length && startsWith(Arrays.copyOfRange(jpeg, p + 4, p + 4 + ICC.length), ICC)) icc = true;
+      p += 2 + len;
+    }
+    if (insert < 0) insert = Math.min(p, length);
+
+    out.write(jpeg, 0, insert);
+    for (Segment s : segments)
+    {
+      if (s.marker == APP2 && icc) continue;
+      byte[] data = s.data;
+      if (s.isExif()) data = dimensions(data.clone(), width, height);
+      int len = data.length + 2;
+      if (len > 0xFFFF) continue;
+      out.write(0xFF);
+      out.write(s.marker);
+      out.writeShort(len);
+      out.write(data, 0, data.length);
+    }
+    out.write(jpeg, insert, length - insert);
+  }
+
+  /**
+   * @return byte[], the EXIF data with the size of the scaled image
+   */
+  private static byte[] dimensions(byte[] data, int width, int height)
+  {
+    try
+    {
+      Tiff tiff = new Tiff(data);
+      int ifd0 = tiff.ifd0();
+      tiff.set(ifd0, Tiff.IMAGE_WIDTH, width);
+      tiff.set(ifd0, Tiff.IMAGE_LENGTH, height);
+      int exif = tiff.entry(ifd0, Tiff.EXIF_IFD);
+      if (exif >= 0)
+      {
+        int ifd = Tiff.START + (int) tiff.u32(exif + 8);
+        tiff.set(ifd, Tiff.PIXEL_X_DIMENSION, width);
+        tiff.set(ifd, Tiff.PIXEL_Y_DIMENSION, height);
+      }
+    }
+    catch (RuntimeException e)
+    {
+      // the dimensions are kept
+    }
+    return data;
+  }
+
+  /**
+   * <p>
+   * the TIFF structure of an EXIF segment. Broken offsets throw a
+   * RuntimeException.
+   * </p>
+   */
+  private static class Tiff {
+    static final int     START             = 6;
+    static final int     IMAGE_WIDTH       = 0x0100;
+    static final int     IMAGE_LENGTH      = 0x0101;
+    static final int     THUMBNAIL_OFFSET  = 0x0201;
+    static final int     THUMBNAIL_LENGTH  = 0x0202;
+    static final int     EXIF_IFD          = 0x8769;
+    static final int     GPS_IFD           = 0x8825;
+    static final int     INTEROP_IFD       = 0xA005;
+    static final int     PIXEL_X_DIMENSION = 0xA002;
+    static final int     PIXEL_Y_DIMENSION = 0xA003;
+    // bytes of the TIFF types 1..12
+    static final int[]   TYPE_SIZES        = { 0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8 };
+    static final int     SHORT             = 3;
+    static final int     LONG              = 4;
+
+    final byte[]         d;
+    final boolean        bigEndian;
+
+    Tiff(byte[] d) {
+      this.d = d;
+      if (d[START] == 'M' && d[START + 1] == 'M') bigEndian = true;
+      else if (d[START] == 'I' && d[START + 1] == 'I') bigEndian = false;
+      else throw new IllegalArgumentException("no TIFF header");
+    }
+
+    int u16(int p)
+    {
+      check(p, 2);
+      return bigEndian ? ((d[p] & 0xff) << 8) | (d[p + 1] & 0xff) : ((d[p + 1] & 0xff) << 8) | (d[p] & 0xff);
+    }
+
+    long u32(int p)
+    {
+      check(p, 4);
+      long value = 0;
+      for (int i = 0; i < 4; i++)
+        value = (value << 8) | (d[p + (bigEndian ? i : 3 - i)] & 0xff);
+      return value;
+    }
+
+    void put(int p, int n, long value)
+    {
+      check(p, n);
+      for (int i = 0; i < n; i++)
+        d[p + (bigEndian ? n - 1 - i : i)] = (byte) (value >>> (8 * i));
+    }
+
+    void check(int p, int n)
+    {
+      if (p < START || p + n > d.length) throw new IndexOutOfBoundsException("offset " + p);
+    }
+
+    int ifd0()
+    {
+      return START + (int) u32(START + 4);
+    }
+
+    /**
+     * @return int, the position of the entry of the tag, -1 if there is none
+     */
+    int entry(int ifd, int tag)
+    {
+      int n = u16(ifd);
+      for (int i = 0; i < n; i++)
+      {
+        int e = ifd + 2 + 12 * i;
+        if (u16(e) == tag) return e;
+      }
+      return -1;
+    }
+
+    /**
+     * @return int[], start and end of the value of the entry, null if it is
+     *         stored in the entry
+     */
+    int[] value(int e)
+    {
+      int type = u16(e + 2);
+      long size = (type < TYPE_SIZES.length ? TYPE_SIZES[type] : 1) * u32(e + 4);
+      if (size <= 4) return null;
+      long start = START + u32(e + 8);
+      check((int) start, (int) size);
+      return new int[] { (int) start, (int) (start + size) };
+    }
+
+    /**
+     * set a SHORT or LONG tag of the IFD, if it is there
+     */
+    void set(int ifd, int tag, int value)
+    {
+      int e = entry(ifd, tag);
+      if (e < 0 || u32(e + 4) != 1) return;
+      int type = u16(e + 2);
+      if (type == SHORT && value <= 0xFFFF) put(e + 8, 2, value);
+      else if (type == LONG) put(e + 8, 4, value);
+    }
+
+    /**
+     * <p>
+     * collect the bytes of the IFD, its values and the IFDs it points to
+     * </p>
+     */
+    void ranges(int ifd, List<int[]> ranges, int depth)
+    {
+      if (depth > 4) throw new IllegalArgumentException("IFDs nested too deep");
+      int n = u16(ifd);
+      check(ifd, 2 + 12 * n + 4);
+      ranges.add(new int[] { ifd, ifd + 2 + 12 * n + 4 });
+      long thumbnail = -1;
+      for (int i = 0; i < n; i++)
+      {
+        int e = ifd + 2 + 12 * i;
+        int tag = u16(e);
+        int[] value = value(e);
+        if (value != null) ranges.add(value);
+        if (tag == EXIF_IFD || tag == GPS_IFD || tag == INTEROP_IFD) ranges(START + (int) u32(e + 8), ranges, depth + 1);
+        else if (tag == THUMBNAIL_OFFSET) thumbnail = u32(e + 8);
+      }
+      int length = entry(ifd, THUMBNAIL_LENGTH);
+      if (thumbnail >= 0 && length >= 0)
+      {
+        int start = START + (int) thumbnail;
+        int size = (int) (u16(length + 2) == SHORT ? u16(length + 8) : u32(length + 8));
+        check(start, size);
+        ranges.add(new int[] { start, start + size });
+      }
+    }
+
+    /**
+     * <p>
+     * clear the IFD and everything it points to
+     * </p>
+     */
+    void clear(int ifd)
+    {
+      List<int[]> ranges = new ArrayList<int[]>();
+      ranges(ifd, ranges, 0);
+      for (int[] r : ranges)
+        Arrays.fill(d, r[0], r[1], (byte) 0);
+    }
+
+    /**
+     * <p>
+     * remove an entry of the IFD, the following entries and the offset of the
+     * next IFD move up
+     * </p>
+     */
+    void remove(int ifd, int e)
+    {
+      int n = u16(ifd);
+      int end = ifd + 2 + 12 * n + 4;
+      check(ifd, end - ifd);
+      System.arraycopy(d, e + 12, d, e, end - e - 12);
+      Arrays.fill(d, end - 12, end, (byte) 0);
+      put(ifd, 2, n - 1);
+    }
+  }
+}
@@ -49,6 +49,8 @@ public class LayoutGalerie {
   private Layout               layout;
   private BufferedInputStream  in  = null;
   private BufferedOutputStream out = null;
+  // bytes written by the current phase
+  private long                 written = 0;
 
   /**
    * @param main
@@ -61,7 +63,8 @@ public class LayoutGalerie {
     this.m = main;
     this.layout = l;
 
-    if (this.directory.isDirectory() && this.directory.listFiles().length > 0)
+    // a gallery with a manifest is updated incrementally
+    if (this.directory.isDirectory() && this.directory.listFiles().length > 0 && !BuildManifest.exists(this.directory))
     {
       int response = JOptionPane.showConfirmDialog(m.list, m.mes.getString("Generator.53") + " " + o.getOutput_dir_gallerie() + " " + m.mes.getString("Generator.54"), m.mes.getString("Generator.52"), JOptionPane.YES_NO_OPTION);
       if (response != JOptionPane.YES_OPTION) { return; }
@@ -115,13 +118,15 @@ public class LayoutGalerie {
     m.p_monitor.setProgress(1);
     //    m.p_monitor.setMillisToDecideToPopup(1);
 
-    Thread t = new Thread()
+    Runnable t = new Runnable()
     {
       public void run()
       {
         m.status.setStatusOn();
         // createCSS();
 
+        GalleryEvent event = new GalleryEvent("layout", GalleryEvent.ASSETS, directory);
+        written = 0;
         StringBuilder sb_file = new StringBuilder("");
         try
         {
@@ -150,7 +155,10 @@ public class LayoutGalerie {
         {
           e2.printStackTrace();
         }
+        event.finish(images.length, written);
 
+        event = new GalleryEvent("layout", GalleryEvent.HTML, directory);
+        written = 0;
         StringBuilder sb_files = new StringBuilder();
 
         // generate the 3 images small, medium, big
@@ -186,6 +194,7 @@ public class LayoutGalerie {
         File out_m;
         File out_b;
         ArrayList<Element> elements = new ArrayList<Element>();
+        ArrayList<ImageTarget> targets = new ArrayList<ImageTarget>();
 
         for (int i = 0; i < images.length; i++)
         {
@@ -206,7 +215,8 @@ public class LayoutGalerie {
 
           // generate small image
           out_s = new File(small, images[i].getName());
-          elements.add(new Element(i, images[i], layout.getSmallWidth(), layout.getSmallHeight(), small));
+          targets.clear();
+          targets.add(new ImageTarget(layout.getSmallWidth(), layout.getSmallHeight(), small));
 
           try
           {
@@ -223,7 +233,7 @@ public class LayoutGalerie {
           out_m = new File(medium, images[i].getName());
           if (layout.isMediumCreate())
           {
-            elements.add(new Element(i, images[i], layout.getMediumWidth(), layout.getMediumHeight(), medium));
+            targets.add(new ImageTarget(layout.getMediumWidth(), layout.getMediumHeight(), medium));
           }
 
           try
@@ -241,9 +251,12 @@ public class LayoutGalerie {
           out_b = new File(big, images[i].getName());
           if (layout.isBigCreate())
           {
-            elements.add(new Element(i, images[i], layout.getBigWidth(), layout.getBigHeight(), big));
+            targets.add(new ImageTarget(layout.getBigWidth(), layout.getBigHeight(), big));
           }
 
+          // all sizes of the image are rendered from one decode
+          elements.add(new Element(i, images[i], targets.toArray(new ImageTarget[ targets.size()])));
+
           if (layout.isMediumCreate())
           {
 
@@ -331,8 +344,10 @@ public class LayoutGalerie {
             try
             {
               FileOutputStream fos = new FileOutputStream(new File(directory, index));
-              fos.write(sb_file.toString().getBytes());
+              byte[] data = sb_file.toString().getBytes();
+              fos.write(data);
               fos.close();
+              written += data.length;
             }
             catch (Exception e1)
             {
@@ -370,8 +385,10 @@ public class LayoutGalerie {
           try
           {
             FileOutputStream fos = new FileOutputStream(new File(directory, index));
-            fos.write(sb_file.toString().getBytes());
+            byte[] data = sb_file.toString().getBytes();
+            fos.write(data);
             fos.close();
+            written += data.length;
           }
           catch (Exception e1)
           {
@@ -390,39 +407,39 @@ public class LayoutGalerie {
           System.out.println(ls + images.length + m.mes.getString("Generator.46") + ls);
         }
 
+        event.finish(images.length, written);
+
         Element[] els = new Element[ elements.size()];
+        // only the images which are out of date are generated again
+        BuildManifest manifest = new BuildManifest(directory);
+        manifest.removeStale();
+
         Producer producer = new Producer(m, elements.toArray(els), "");
-        Thread producerThread = new Thread(producer);
-        int cpus = Runtime.getRuntime().availableProcessors();
-        Thread consumerThreads[] = new Thread[ cpus];
-        for (int i = 0; i < cpus; i++)
-        {
-          consumerThreads[i] = new Thread(new Consumer(producer, m, false, null));
-        }
+        ImagePipeline pipeline = new ImagePipeline(producer, m, null, manifest);
 
-        producerThread.start();
-        for (int i = 0; i < cpus; i++)
-        {
-          consumerThreads[i].start();
-        }
+        JobReport report = o.isJobReport() ? new JobReport("gallery") : null;
+        pipeline.setReport(report);
 
-        try
+        // a cancel of the progress monitor interrupts the running job
+        event = new GalleryEvent("layout", GalleryEvent.IMAGES, directory);
+        new ImageJob(producer, pipeline).start().waitFor(m.p_monitor);
+        event.finish(images.length, 0);
+        if (report != null) try
         {
-          producerThread.join();
-          for (int i = 0; i < cpus; i++)
-          {
-            consumerThreads[i].join();
-          }
+          report.write(directory);
         }
-        catch (InterruptedException ignore)
+        catch (IOException e)
         {
+          e.printStackTrace();
         }
 
+        manifest.save();
+
         m.status.setStatusOff();
         m.p_monitor.close();
       }
     };
-    t.start();
+    ImageJobExecutor.get().execute(t);
 
   }
 
@@ -519,8 +536,10 @@ public class LayoutGalerie {
     try
     {
       FileOutputStream fos = new FileOutputStream(new File(file, "image" + t + "." + layout.getPrefix() + ""));
-      fos.write(sb.toString().getBytes());
+      byte[] data = sb.toString().getBytes();
+      fos.write(data);
       fos.close();
+      written += data.length;
     }
     catch (Exception e)
     {
@@ -548,7 +567,7 @@ public class LayoutGalerie {
   public void copyFile(File file, File ziel) throws FileNotFoundException, IOException
   {
     in = new BufferedInputStream(new FileInputStream(file));
-    out = new BufferedOutputStream(new FileOutputStream(ziel, true));
+    out = new BufferedOutputStream(new FileOutputStream(ziel));
     int bytes = 0;
     while ((bytes = in.read()) != -1)
     {
@@ -556,6 +575,7 @@ public class LayoutGalerie {
     }
     in.close();
     out.close();
+    written += file.length();
   }
 
   private String createTitle(String filename)
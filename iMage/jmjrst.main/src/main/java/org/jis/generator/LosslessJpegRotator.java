@@ -0,0 +1,1017 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/**
+ * <p>
+ * Rotates a JPEG file by 90, 180 or 270 degrees without decoding the pixels.
+ * The quantized DCT coefficients of every block are transposed and their signs
+ * flipped, the blocks are moved to their new place and the coefficients are
+ * written again with optimized Huffman tables. The image data doesn't lose any
+ * quality and no IDCT or color conversion is needed.
+ * </p>
+ * <p>
+ * Only sequential Huffman coded JPEGs with 8 bit samples and a single scan are
+ * supported. An edge which is not a multiple of the MCU size can't be moved to
+ * the left or top of the image, such images are left to the caller as well.
+ * </p>
+ */
+public final class LosslessJpegRotator {
+  // natural order index of the zig-zag position
+  private static final int[] ZIGZAG = { 0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28, 35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51, 58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63 };
+
+  private static final int   SOI    = 0xD8;
+  private static final int   EOI    = 0xD9;
+  private static final int   SOS    = 0xDA;
+  private static final int   DQT    = 0xDB;
+  private static final int   DHT    = 0xC4;
+  private static final int   DRI    = 0xDD;
+
+  private LosslessJpegRotator() {
+  }
+
+  /**
+   * <p>
+   * rotate a JPEG file clockwise. The file is replaced only if the rotation was
+   * possible.
+   * </p>
+   * 
+   * @param file
+   *          File, the JPEG file
+   * @param degrees
+   *          int, 90, 180 or 270
+   * @return true, if the file was rotated, false if the caller has to rotate
+   *         the decoded image
+   * @throws IOException
+   */
+  public static boolean rotate(File file, int degrees) throws IOException
+  {
+    byte[] rotated = rotate(Files.readAllBytes(file.toPath()), degrees);
+    if (rotated == null) return false;
+
+    // the original stays intact until the rotated file is complete
+    File tmp = new File(file.getParentFile(), "." + file.getName() + ".rotate.tmp");
+    try
+    {
+      Files.write(tmp.toPath(), rotated);
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally
+    {
+      tmp.delete();
+    }
+    return true;
+  }
+
+  /**
+   * @param jpeg
+   *          byte[], the JPEG file
+   * @param degrees
+   *          int, 90, 180 or 270 clockwise
+   * @return byte[], the rotated JPEG file or null, if the JPEG can't be rotated
+   *         losslessly
+   */
+  public static byte[] rotate(byte[] jpeg, int degrees)
+  {
+    degrees = ((degrees % 360) + 360) % 360;
+    if (degrees != 90 && degrees != 180 && degrees != 270) return null;
+    try
+    {
+      Jpeg image = Jpeg.parse(jpeg);
+      if (image == null || !image.rotate(degrees)) return null;
+      return image.write();
+    }
+    catch (IOException e)
+    {
+      return null;
+    }
+    catch (RuntimeException e)
+    {
+      // broken data
+      return null;
+    }
+  }
+
+  /**
+   * a component of the frame and its coefficients in the MCU padded block grid
+   */
+  private static class Component {
+    int     id;
+    int     h;
+    int     v;
+    int     tq;
+    int     td;
+    int     ta;
+    int     blocksW;
+    int     blocksH;
+    short[] coef;
+  }
+
+  /**
+   * the parsed JPEG: its segments, tables and coefficients
+   */
+  private static class Jpeg {
+    final ArrayList<byte[]> segments = new ArrayList<byte[]>();
+    final int[][]           qt       = new int[ 4][];
+    final int[]             qtPrec   = new int[ 4];
+    final Huffman[]         dcTables = new Huffman[ 4];
+    final Huffman[]         acTables = new Huffman[ 4];
+    int                     sof;
+    int                     width;
+    int                     height;
+    Component[]             comps;
+    Component[]             scan;
+    int                     restart  = 0;
+    int                     hMax;
+    int                     vMax;
+    int                     mcusX;
+    int                     mcusY;
+
+    static Jpeg parse(byte[] data) throws IOException
+    {
+      if (data.length < 4 || (data[0] & 0xff) != 0xFF || (data[1] & 0xff) != SOI) return null;
+      Jpeg jpeg = new Jpeg();
+      int pos = 2;
+      while (true)
+      {
+        // fill bytes before a marker
+        while (pos < data.length && (data[pos] & 0xff) == 0xFF && (data[pos + 1] & 0xff) == 0xFF)
+          pos++;
+        if (pos + 4 > data.length || (data[pos] & 0xff) != 0xFF) throw new IOException("marker expected");
+        int marker = data[pos + 1] & 0xff;
+        int len = ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+        int start = pos + 4;
+        int end = pos + 2 + len;
+        if (end > data.length) throw new IOException("segment too long");
+
+        if (marker == 0xC0 || marker == 0xC1)
+        {
+          jpeg.readFrame(data, start, marker);
+        }
+        else if (marker >= 0xC2 && marker <= 0xCF && marker != DHT && marker != 0xC8 && marker != 0xCC)
+        {
+          // progressive, lossless or arithmetic coded
+          return null;
+        }
+        else if (marker == DQT)
+        {
+          jpeg.readQuantization(data, start, end);
+        }
+        else if (marker == DHT)
+        {
+          jpeg.readHuffman(data, start, end);
+        }
+        else if (marker == DRI)
+        {
+          jpeg.restart = ((data[start] & 0xff) << 8) | (data[start + 1] & 0xff);
+        }
+        else if (marker == SOS)
+        {
+          if (jpeg.comps == null) throw new IOException("no frame");
+          jpeg.readScanHeader(data, start);
+          if (jpeg.scan.length != jpeg.comps.length) return null;
+          int next = jpeg.decode(data, end);
+          // only a single scan is supported
+          return next + 1 < data.length && (data[next + 1] & 0xff) == EOI ? jpeg : null;
+        }
+        else if ((marker >= 0xE0 && marker <= 0xEF) || marker == 0xFE)
+        {
+          // APPn and COM are copied
+          byte[] segment = new byte[ end - pos];
+          System.arraycopy(data, pos, segment, 0, segment.length);
+          jpeg.segments.add(segment);
+        }
+        else if (marker == EOI)
+        {
+          return null;
+        }
+        else
+        {
+          // DNL, DHP, EXP ... are not supported
+          return null;
+        }
+        pos = end;
+      }
+    }
+
+    void readFrame(byte[] data, int p, int marker) throws IOException
+    {
+      if ((data[p] & 0xff) != 8) throw new IOException("only 8 bit samples");
+      sof = marker;
+      height = ((data[p + 1] & 0xff) << 8) | (data[p + 2] & 0xff);
+      width = ((data[p + 3] & 0xff) << 8) | (data[p + 4] & 0xff);
+      int n = data[p + 5] & 0xff;
+      if (height == 0 || width == 0 || n == 0 || n > 4) throw new IOException("unsupported frame");
+      comps = new Component[ n];
+      hMax = 1;
+      vMax = 1;
+      for (int i = 0; i < n; i++)
+      {
+        Component c = new Component();
+        int q = p + 6 + 3 * i;
+        c.id = data[q] & 0xff;
+        c.h = (data[q + 1] >> 4) & 0x0f;
+        c.v = data[q + 1] & 0x0f;
+        c.tq = data[q + 2] & 0x0f;
+        if (c.h < 1 || c.h > 4 || c.v < 1 || c.v > 4) throw new IOException("bad sampling");
+        hMax = Math.max(hMax, c.h);
+        vMax = Math.max(vMax, c.v);
+        comps[i] = c;
+      }
+      // a single component scan has one block per MCU
+      if (n == 1)
+      {
+        comps[0].h = 1;
+        comps[0].v = 1;
+        hMax = 1;
+        vMax = 1;
+      }
+      layout();
+    }
+
+    /**
+     * the size of the block grid of every component, padded to whole MCUs
+     */
+    void layout()
+    {
+      mcusX = (width + 8 * hMax - 1) / (8 * hMax);
+      mcusY = (height + 8 * vMax - 1) / (8 * vMax);
+      for (Component c : comps)
+      {
+        c.blocksW = mcusX * c.h;
+        c.blocksH = mcusY * c.v;
+      }
+    }
+
+    void readQuantization(byte[] data, int p, int end) throws IOException
+    {
+      while (p < end)
+      {
+        int pq = (data[p] >> 4) & 0x0f;
+        int tq = data[p] & 0x0f;
+        if (tq > 3 || pq > 1) throw new IOException("bad DQT");
+        p++;
+        int[] table = new int[ 64];
+        for (int i = 0; i < 64; i++)
+        {
+          // stored in natural order
+          if (pq == 0) table[ZIGZAG[i]] = data[p++] & 0xff;
+          else
+          {
+            table[ZIGZAG[i]] = ((data[p] & 0xff) << 8) | (data[p + 1] & 0xff);
+            p += 2;
+          }
+        }
+        qt[tq] = table;
+        qtPrec[tq] = pq;
+      }
+    }
+
+    void readHuffman(byte[] data, int p, int end) throws IOException
+    {
+      while (p < end)
+      {
+        int tc = (data[p] >> 4) & 0x0f;
+        int th = data[p] & 0x0f;
+        if (tc > 1 || th > 3) throw new IOException("bad DHT");
+        p++;
+        int[] bits = new int[ 17];
+        int count = 0;
+        for (int i = 1; i <= 16; i++)
+        {
+          bits[i] = data[p++] & 0xff;
+          count += bits[i];
+        }
+        int[] values = new int[ count];
+        for (int i = 0; i < count; i++)
+          values[i] = data[p++] & 0xff;
+        Huffman table = Huffman.decoder(bits, values);
+        if (tc == 0) dcTables[th] = table;
+        else acTables[th] = table;
+      }
+    }
+
+    void readScanHeader(byte[] data, int p) throws IOException
+    {
+      int n = data[p] & 0xff;
+      scan = new Component[ n];
+      for (int i = 0; i < n; i++)
+      {
+        int id = data[p + 1 + 2 * i] & 0xff;
+        Component c = null;
+        for (Component f : comps)
+          if (f.id == id) c = f;
+        if (c == null) throw new IOException("unknown component");
+        c.td = (data[p + 2 + 2 * i] >> 4) & 0x0f;
+        c.ta = data[p + 2 + 2 * i] & 0x0f;
+        if (c.td > 3 || c.ta > 3 || dcTables[c.td] == null || acTables[c.ta] == null) throw new IOException("missing Huffman table");
+        scan[i] = c;
+      }
+      int q = p + 1 + 2 * n;
+      if ((data[q] & 0xff) != 0 || (data[q + 1] & 0xff) != 63 || (data[q + 2] & 0xff) != 0) throw new IOException("not sequential");
+    }
+
+    /**
+     * decode the entropy coded data of the scan
+     * 
+     * @return int, the position of the marker after the scan
+     */
+    int decode(byte[] data, int pos) throws IOException
+    {
+      for (Component c : comps)
+      {
+        if (qt[c.tq] == null) throw new IOException("missing quantization table");
+        c.coef = new short[ c.blocksW * c.blocksH * 64];
+      }
+
+      BitReader in = new BitReader(data, pos);
+      int[] pred = new int[ scan.length];
+      int mcus = mcusX * mcusY;
+      for (int mcu = 0; mcu < mcus; mcu++)
+      {
+        if (restart > 0 && mcu > 0 && mcu % restart == 0)
+        {
+          in.restart();
+          for (int i = 0; i < pred.length; i++)
+            pred[i] = 0;
+        }
+        int mx = mcu % mcusX;
+        int my = mcu / mcusX;
+        for (int i = 0; i < scan.length; i++)
+        {
+          Component c = scan[i];
+          for (int v = 0; v < c.v; v++)
+            for (int h = 0; h < c.h; h++)
+              pred[i] = decodeBlock(in, c, ((my * c.v + v) * c.blocksW + mx * c.h + h) * 64, pred[i]);
+        }
+        in.check();
+      }
+      return in.end();
+    }
+
+    int decodeBlock(BitReader in, Component c, int off, int pred) throws IOException
+    {
+      short[] coef = c.coef;
+      int t = dcTables[c.td].decode(in);
+      pred += t == 0 ? 0 : in.receive(t);
+      coef[off] = (short) pred;
+
+      Huffman ac = acTables[c.ta];
+      for (int k = 1; k < 64;)
+      {
+        int rs = ac.decode(in);
+        int r = rs >> 4;
+        int s = rs & 15;
+        if (s == 0)
+        {
+          if (r != 15) break;
+          k += 16;
+          continue;
+        }
+        k += r;
+        if (k > 63) throw new IOException("bad AC run");
+        coef[off + ZIGZAG[k]] = (short) in.receive(s);
+        k++;
+      }
+      return pred;
+    }
+
+    /**
+     * move and transform the blocks, the quantization tables and the frame
+     * 
+     * @return boolean, false if the edges don't allow a lossless rotation
+     */
+    boolean rotate(int degrees)
+    {
+      boolean alignedX = width % (8 * hMax) == 0;
+      boolean alignedY = height % (8 * vMax) == 0;
+      if (degrees == 90 && !alignedY) return false;
+      if (degrees == 270 && !alignedX) return false;
+      if (degrees == 180 && (!alignedX || !alignedY)) return false;
+
+      // source index and sign of every coefficient of a rotated block
+      int[] src = new int[ 64];
+      int[] sign = new int[ 64];
+      for (int v = 0; v < 8; v++)
+      {
+        for (int u = 0; u < 8; u++)
+        {
+          int i = v * 8 + u;
+          if (degrees == 180)
+          {
+            src[i] = i;
+            sign[i] = ((u + v) & 1) == 0 ? 1 : -1;
+          }
+          else
+          {
+            src[i] = u * 8 + v;
+            sign[i] = ((degrees == 90 ? u : v) & 1) == 0 ? 1 : -1;
+          }
+        }
+      }
+
+      for (Component c : comps)
+      {
+        int w = c.blocksW;
+        int h = c.blocksH;
+        int nw = degrees == 180 ? w : h;
+        int nh = degrees == 180 ? h : w;
+        short[] coef = new short[ c.coef.length];
+        for (int by = 0; by < nh; by++)
+        {
+          for (int bx = 0; bx < nw; bx++)
+          {
+            int sx, sy;
+            if (degrees == 90)
+            {
+              sx = by;
+              sy = h - 1 - bx;
+            }
+            else if (degrees == 270)
+            {
+              sx = w - 1 - by;
+              sy = bx;
+            }
+            else
+            {
+              sx = w - 1 - bx;
+              sy = h - 1 - by;
+            }
+            int so = (sy * w + sx) * 64;
+            int d = (by * nw + bx) * 64;
+            for (int i = 0; i < 64; i++)
+              coef[d + i] = (short) (sign[i] * c.coef[so + src[i]]);
+          }
+        }
+        c.coef = coef;
+        if (degrees != 180)
+        {
+          int t = c.h;
+          c.h = c.v;
+          c.v = t;
+        }
+      }
+
+      if (degrees != 180)
+      {
+        // the coefficients are transposed, so are their quantizers
+        for (int t = 0; t < 4; t++)
+        {
+          if (qt[t] == null) continue;
+          int[] q = new int[ 64];
+          for (int i = 0; i < 64; i++)
+            q[i] = qt[t][(i % 8) * 8 + i / 8];
+          qt[t] = q;
+        }
+        int t = width;
+        width = height;
+        height = t;
+        t = hMax;
+        hMax = vMax;
+        vMax = t;
+        layout();
+      }
+      return true;
+    }
+
+    byte[] write() throws IOException
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+      out.write(0xFF);
+      out.write(SOI);
+      for (byte[] segment : segments)
+        out.write(segment);
+
+      // quantization tables
+      for (int t = 0; t < 4; t++)
+      {
+        if (qt[t] == null) continue;
+        int size = 64 * (qtPrec[t] + 1);
+        marker(out, DQT, 1 + size);
+        out.write((qtPrec[t] << 4) | t);
+        for (int i = 0; i < 64; i++)
+        {
+          int q = qt[t][ZIGZAG[i]];
+          if (qtPrec[t] == 1) out.write(q >> 8);
+          out.write(q & 0xff);
+        }
+      }
+
+      // frame
+      marker(out, sof, 6 + 3 * comps.length);
+      out.write(8);
+      out.write(height >> 8);
+      out.write(height & 0xff);
+      out.write(width >> 8);
+      out.write(width & 0xff);
+      out.write(comps.length);
+      for (Component c : comps)
+      {
+        out.write(c.id);
+        out.write((c.h << 4) | c.v);
+        out.write(c.tq);
+      }
+
+      // optimal Huffman tables for the new order of the coefficients
+      long[][] dcFreq = new long[ 4][];
+      long[][] acFreq = new long[ 4][];
+      for (Component c : scan)
+      {
+        if (dcFreq[c.td] == null) dcFreq[c.td] = new long[ 257];
+        if (acFreq[c.ta] == null) acFreq[c.ta] = new long[ 257];
+      }
+      encode(null, dcFreq, acFreq, null, null);
+
+      Huffman[] dc = new Huffman[ 4];
+      Huffman[] ac = new Huffman[ 4];
+      ByteArrayOutputStream tables = new ByteArrayOutputStream();
+      for (int t = 0; t < 4; t++)
+      {
+        if (dcFreq[t] != null) dc[t] = Huffman.optimal(dcFreq[t], tables, t);
+        if (acFreq[t] != null) ac[t] = Huffman.optimal(acFreq[t], tables, 0x10 | t);
+      }
+      marker(out, DHT, tables.size());
+      tables.writeTo(out);
+
+      if (restart > 0)
+      {
+        marker(out, DRI, 2);
+        out.write(restart >> 8);
+        out.write(restart & 0xff);
+      }
+
+      marker(out, SOS, 4 + 2 * scan.length);
+      out.write(scan.length);
+      for (Component c : scan)
+      {
+        out.write(c.id);
+        out.write((c.td << 4) | c.ta);
+      }
+      out.write(0);
+      out.write(63);
+      out.write(0);
+
+      BitWriter bits = new BitWriter(out);
+      encode(bits, null, null, dc, ac);
+      bits.flush();
+
+      out.write(0xFF);
+      out.write(EOI);
+      return out.toByteArray();
+    }
+
+    private static void marker(ByteArrayOutputStream out, int marker, int length)
+    {
+      out.write(0xFF);
+      out.write(marker);
+      out.write((length + 2) >> 8);
+      out.write((length + 2) & 0xff);
+    }
+
+    /**
+     * walk through the blocks in the order of the scan, either counting the
+     * symbols or writing them
+     */
+    void encode(BitWriter out, long[][] dcFreq, long[][] acFreq, Huffman[] dc, Huffman[] ac)
+    {
+      int[] pred = new int[ scan.length];
+      int mcus = mcusX * mcusY;
+      for (int mcu = 0; mcu < mcus; mcu++)
+      {
+        if (restart > 0 && mcu > 0 && mcu % restart == 0)
+        {
+          if (out != null) out.restart((mcu / restart - 1) & 7);
+          for (int i = 0; i < pred.length; i++)
+            pred[i] = 0;
+        }
+        int mx = mcu % mcusX;
+        int my = mcu / mcusX;
+        for (int i = 0; i < scan.length; i++)
+        {
+          Component c = scan[i];
+          for (int v = 0; v < c.v; v++)
+          {
+            for (int h = 0; h < c.h; h++)
+            {
+              int off = ((my * c.v + v) * c.blocksW + mx * c.h + h) * 64;
+              if (out == null) pred[i] = countBlock(c.coef, off, pred[i], dcFreq[c.td], acFreq[c.ta]);
+              else pred[i] = encodeBlock(out, c.coef, off, pred[i], dc[c.td], ac[c.ta]);
+            }
+          }
+        }
+      }
+    }
+
+    private static int countBlock(short[] coef, int off, int pred, long[] dc, long[] ac)
+    {
+      int diff = coef[off] - pred;
+      dc[bitLength(diff)]++;
+      int run = 0;
+      for (int k = 1; k < 64; k++)
+      {
+        int value = coef[off + ZIGZAG[k]];
+        if (value == 0)
+        {
+          run++;
+          continue;
+        }
+        while (run > 15)
+        {
+          ac[0xF0]++;
+          run -= 16;
+        }
+        ac[(run << 4) | bitLength(value)]++;
+        run = 0;
+      }
+      if (run > 0) ac[0x00]++;
+      return coef[off];
+    }
+
+    private static int encodeBlock(BitWriter out, short[] coef, int off, int pred, Huffman dc, Huffman ac)
+    {
+      int diff = coef[off] - pred;
+      int s = bitLength(diff);
+      dc.write(out, s);
+      if (s > 0) out.write(diff < 0 ? diff - 1 : diff, s);
+
+      int run = 0;
+      for (int k = 1; k < 64; k++)
+      {
+        int value = coef[off + ZIGZAG[k]];
+        if (value == 0)
+        {
+          run++;
+          continue;
+        }
+        while (run > 15)
+        {
+          ac.write(out, 0xF0);
+          run -= 16;
+        }
+        s = bitLength(value);
+        ac.write(out, (run << 4) | s);
+        out.write(value < 0 ? value - 1 : value, s);
+        run = 0;
+      }
+      if (run > 0) ac.write(out, 0x00);
+      return coef[off];
+    }
+
+    private static int bitLength(int value)
+    {
+      return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+  }
+
+  /**
+   * a Huffman table for decoding or encoding
+   */
+  private static class Huffman {
+    private static final int LOOKAHEAD = 9;
+
+    // decoder
+    int[]                    lookup;
+    int[]                    maxcode;
+    int[]                    valptr;
+    int[]                    mincode;
+    int[]                    values;
+    // encoder
+    int[]                    code;
+    int[]                    size;
+
+    static Huffman decoder(int[] bits, int[] values)
+    {
+      Huffman t = new Huffman();
+      t.values = values;
+      t.maxcode = new int[ 18];
+      t.valptr = new int[ 17];
+      t.mincode = new int[ 17];
+      t.lookup = new int[ 1 << LOOKAHEAD];
+      int code = 0;
+      int k = 0;
+      for (int l = 1; l <= 16; l++)
+      {
+        t.valptr[l] = k;
+        t.mincode[l] = code;
+        for (int i = 0; i < bits[l]; i++)
+        {
+          if (l <= LOOKAHEAD)
+          {
+            int shift = LOOKAHEAD - l;
+            for (int fill = 0; fill < (1 << shift); fill++)
+              t.lookup[(code << shift) | fill] = (l << 8) | values[k];
+          }
+          code++;
+          k++;
+        }
+        t.maxcode[l] = bits[l] == 0 ? -1 : code - 1;
+        code <<= 1;
+      }
+      t.maxcode[17] = Integer.MAX_VALUE;
+      return t;
+    }
+
+    int decode(BitReader in) throws IOException
+    {
+      int entry = lookup[in.peek(LOOKAHEAD)];
+      if (entry != 0)
+      {
+        in.skip(entry >> 8);
+        return entry & 0xff;
+      }
+      int code = in.bits(LOOKAHEAD + 1);
+      int l = LOOKAHEAD + 1;
+      while (code > maxcode[l])
+      {
+        code = (code << 1) | in.bits(1);
+        if (++l > 16) throw new IOException("bad Huffman code");
+      }
+      return values[valptr[l] + code - mincode[l]];
+    }
+
+    void write(BitWriter out, int symbol)
+    {
+      out.write(code[symbol], size[symbol]);
+    }
+
+    /**
+     * <p>
+     * build the optimal table for the symbol frequencies (JPEG Annex K.2) and
+     * write its DHT entry
+     * </p>
+     */
+    static Huffman optimal(long[] freq, ByteArrayOutputStream dht, int id)
+    {
+      freq = freq.clone();
+      // reserve a code, so no code consists of 1 bits only
+      freq[256] = 1;
+      int[] codesize = new int[ 257];
+      int[] others = new int[ 257];
+      for (int i = 0; i < 257; i++)
+        others[i] = -1;
+
+      while (true)
+      {
+        int c1 = -1;
+        long v = Long.MAX_VALUE;
+        for (int i = 0; i <= 256; i++)
+        {
+          if (freq[i] != 0 && freq[i] <= v)
+          {
+            v = freq[i];
+            c1 = i;
+          }
+        }
+        int c2 = -1;
+        v = Long.MAX_VALUE;
+        for (int i = 0; i <= 256; i++)
+        {
+          if (freq[i] != 0 && freq[i] <= v && i != c1)
+          {
+            v = freq[i];
+            c2 = i;
+          }
+        }
+        if (c2 < 0) break;
+
+        freq[c1] += freq[c2];
+        freq[c2] = 0;
+        codesize[c1]++;
+        while (others[c1] >= 0)
+        {
+          c1 = others[c1];
+          codesize[c1]++;
+        }
+        others[c1] = c2;
+        codesize[c2]++;
+        while (others[c2] >= 0)
+        {
+          c2 = others[c2];
+          codesize[c2]++;
+        }
+      }
+
+      int[] bits = new int[ 33];
+      for (int i = 0; i <= 256; i++)
+        if (codesize[i] > 0) bits[codesize[i]]++;
+
+      // limit the code length to 16 bits
+      for (int i = 32; i > 16; i--)
+      {
+        while (bits[i] > 0)
+        {
+          int j = i - 2;
+          while (bits[j] == 0)
+            j--;
+          bits[i] -= 2;
+          bits[i - 1]++;
+          bits[j + 1] += 2;
+          bits[j]--;
+        }
+      }
+      int last = 16;
+      while (bits[last] == 0)
+        last--;
+      // remove the reserved code
+      bits[last]--;
+
+      int count = 0;
+      for (int i = 1; i <= 16; i++)
+        count += bits[i];
+      int[] values = new int[ count];
+      int p = 0;
+      for (int l = 1; l <= 32; l++)
+        for (int s = 0; s < 256; s++)
+          if (codesize[s] == l) values[p++] = s;
+
+      dht.write(id);
+      for (int i = 1; i <= 16; i++)
+        dht.write(bits[i]);
+      for (int value : values)
+        dht.write(value);
+
+      Huffman t = new Huffman();
+      t.code = new int[ 256];
+      t.size = new int[ 256];
+      int code = 0;
+      int k = 0;
+      for (int l = 1; l <= 16; l++)
+      {
+        for (int i = 0; i < bits[l]; i++)
+        {
+          t.code[values[k]] = code;
+          t.size[values[k]] = l;
+          code++;
+          k++;
+        }
+        code <<= 1;
+      }
+      return t;
+    }
+  }
+
+  /**
+   * reads the bits of entropy coded data, stuffed bytes are removed
+   */
+  private static class BitReader {
+    private final byte[] data;
+    private int          pos;
+    private long         acc    = 0;
+    private int          count  = 0;
+    // zero bits which were added after a marker
+    private int          padded = 0;
+
+    BitReader(byte[] data, int pos) {
+      this.data = data;
+      this.pos = pos;
+    }
+
+    private void fill()
+    {
+      while (count <= 56)
+      {
+        int b = 0;
+        if (pos < data.length && padded == 0)
+        {
+          b = data[pos] & 0xff;
+          if (b == 0xFF)
+          {
+            int next = pos + 1 < data.length ? data[pos + 1] & 0xff : 0xD9;
+            if (next == 0x00) pos += 2;
+            else
+            {
+              // a marker, the data of the scan or the interval ends
+              b = 0;
+              padded += 8;
+            }
+          }
+          else pos++;
+        }
+        else padded += 8;
+        acc = (acc << 8) | b;
+        count += 8;
+      }
+    }
+
+    int peek(int n)
+    {
+      if (count < n) fill();
+      return (int) (acc >>> (count - n)) & ((1 << n) - 1);
+    }
+
+    void skip(int n)
+    {
+      count -= n;
+    }
+
+    int bits(int n)
+    {
+      int value = peek(n);
+      count -= n;
+      return value;
+    }
+
+    /** read a coefficient of s bits */
+    int receive(int s)
+    {
+      int value = bits(s);
+      return value < (1 << (s - 1)) ? value - (1 << s) + 1 : value;
+    }
+
+    /** fail if bits after the end of the data were used */
+    void check() throws IOException
+    {
+      if (padded > 0 && count < padded) throw new IOException("premature end of data");
+    }
+
+    /** read the restart marker and start a new interval */
+    void restart() throws IOException
+    {
+      // the remaining bits of the interval are padding
+      pos = marker();
+      int m = data[pos + 1] & 0xff;
+      if (m < 0xD0 || m > 0xD7) throw new IOException("restart marker expected");
+      pos += 2;
+      acc = 0;
+      count = 0;
+      padded = 0;
+    }
+
+    /** @return the position of the marker after the data */
+    int end() throws IOException
+    {
+      return marker();
+    }
+
+    private int marker() throws IOException
+    {
+      // the buffered bytes which were not used belong to the data before the
+      // marker, the marker itself was never consumed
+      int p = pos;
+      while (p + 1 < data.length && !((data[p] & 0xff) == 0xFF && (data[p + 1] & 0xff) != 0x00 && (data[p + 1] & 0xff) != 0xFF))
+        p++;
+      if (p + 1 >= data.length) throw new IOException("marker expected");
+      return p;
+    }
+  }
+
+  /**
+   * writes bits of entropy coded data with byte stuffing
+   */
+  private static class BitWriter {
+    private final ByteArrayOutputStream out;
+    private long                        acc   = 0;
+    private int                         count = 0;
+
+    BitWriter(ByteArrayOutputStream out) {
+      this.out = out;
+    }
+
+    void write(int value, int n)
+    {
+      acc = (acc << n) | (value & ((1L << n) - 1));
+      count += n;
+      while (count >= 8)
+      {
+        int b = (int) (acc >>> (count - 8)) & 0xff;
+        out.write(b);
+        if (b == 0xFF) out.write(0);
+        count -= 8;
+      }
+    }
+
+    /** pad the last byte with 1 bits */
+    void flush()
+    {
+      if (count > 0) write(0x7F, 8 - count);
+      acc = 0;
+    }
+
+    void restart(int n)
+    {
+      flush();
+      out.write(0xFF);
+      out.write(0xD0 + n);
+    }
+  }
+}
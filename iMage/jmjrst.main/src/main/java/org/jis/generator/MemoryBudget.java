@@ -0,0 +1,99 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import org.jis.options.Options;
+
+/**
+ * <p>
+ * Admission control for the images in work. Every image reserves the bytes of
+ * its decoded and scaled pixels before it is queued and returns them when it
+ * is done. If the budget is used up, the next image has to wait. A single image
+ * bigger than the whole budget is admitted when nothing else is in work, so it
+ * can't block the job forever.
+ * </p>
+ */
+public class MemoryBudget {
+  private final long capacity;
+  private long       used = 0;
+
+  /**
+   * @param capacity
+   *          long, the budget in bytes
+   */
+  public MemoryBudget(long capacity) {
+    super();
+    this.capacity = capacity;
+  }
+
+  /**
+   * @return the budget of the Options, or 60% of the max. heap, if no budget
+   *         is set
+   */
+  public static MemoryBudget fromOptions()
+  {
+    long budget = Options.getInstance().getMemoryBudget() * 1024L * 1024L;
+    if (budget <= 0) budget = (long) (Runtime.getRuntime().maxMemory() * 0.6);
+    return new MemoryBudget(budget);
+  }
+
+  /**
+   * @param bytes
+   *          long, the bytes to reserve
+   * @param timeout
+   *          long, max. time to wait in milliseconds
+   * @return true, if the bytes are reserved
+   * @throws InterruptedException
+   */
+  public synchronized boolean acquire(long bytes, long timeout) throws InterruptedException
+  {
+    long end = System.currentTimeMillis() + timeout;
+    while (used > 0 && used + bytes > capacity)
+    {
+      long wait = end - System.currentTimeMillis();
+      if (wait <= 0) return false;
+      wait(wait);
+    }
+    used += bytes;
+    return true;
+  }
+
+  /**
+   * @param bytes
+   *          long, the bytes to return
+   */
+  public synchronized void release(long bytes)
+  {
+    used -= bytes;
+    notifyAll();
+  }
+
+  /**
+   * @return the reserved bytes
+   */
+  public synchronized long used()
+  {
+    return used;
+  }
+
+  /**
+   * @return the budget in bytes
+   */
+  public long capacity()
+  {
+    return capacity;
+  }
+}
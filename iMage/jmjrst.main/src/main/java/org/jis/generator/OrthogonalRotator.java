@@ -0,0 +1,302 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Rotates and mirrors images by multiples of 90 degrees directly on the pixel
+ * arrays of the images. The pixels are copied in square tiles, so the column
+ * wise reads of a quarter turn stay in the cache. Big images are split into
+ * bands of rows which are copied in parallel. Images whose raster isn't one
+ * of the packed int or interleaved byte layouts are copied pixel by pixel,
+ * a destination of another color model is drawn with Java2D.
+ * </p>
+ * <p>
+ * The transformations are numbered like the EXIF orientations, the number is
+ * the transformation which turns a stored image upright.
+ * </p>
+ */
+public class OrthogonalRotator {
+  /** a quarter turn clockwise */
+  public static final int  CLOCKWISE        = 6;
+  /** a half turn */
+  public static final int  HALF_TURN        = 3;
+  /** a quarter turn counterclockwise */
+  public static final int  COUNTERCLOCKWISE = 8;
+
+  /** size of the square tiles in pixels */
+  private static final int TILE             = 64;
+  /** min. size of an image, before the work is split across the threads */
+  private static final int PARALLEL_PIXELS  = 1024 * 1024;
+
+  // source pixel of a target pixel: x = a x' + b y' + c (w - 1), y = d x' + e y' + f (h - 1)
+  private static final int[][] MAPPING = { null, //
+      { 1, 0, 0, 0, 1, 0 }, // normal
+      { -1, 0, 1, 0, 1, 0 }, // mirrored
+      { -1, 0, 1, 0, -1, 1 }, // half turn
+      { 1, 0, 0, 0, -1, 1 }, // upside down
+      { 0, 1, 0, 1, 0, 0 }, // transposed
+      { 0, 1, 0, -1, 0, 1 }, // clockwise
+      { 0, -1, 1, -1, 0, 1 }, // transversed
+      { 0, -1, 1, 1, 0, 0 } }; // counterclockwise
+
+  private final int        threads;
+
+  /**
+   * @param threads
+   *          int, max. number of threads for one big image
+   */
+  public OrthogonalRotator(int threads) {
+    super();
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * @param degrees
+   *          int, a clockwise rotation by a multiple of 90 degrees
+   * @return int, the transformation of the rotation
+   */
+  public static int forDegrees(int degrees)
+  {
+    return ExifOrientation.rotate(ExifOrientation.NORMAL, degrees);
+  }
+
+  /**
+   * <p>
+   * transform the image into the destination
+   * </p>
+   * 
+   * @param image
+   *          BufferedImage, the source image
+   * @param transformation
+   *          int, the transformation 1..8, e.g. {@link #CLOCKWISE}
+   * @param destination
+   *          BufferedImage, an image of the transformed size or null, then an
+   *          image of the layout of the source is created
+   * @return BufferedImage, the destination
+   */
+  public BufferedImage transform(BufferedImage image, int transformation, BufferedImage destination)
+  {
+    if (transformation < 1 || transformation > 8) throw new IllegalArgumentException("transformation must be 1..8");
+    int w = image.getWidth();
+    int h = image.getHeight();
+    boolean swap = transformation >= 5;
+    int dw = swap ? h : w;
+    int dh = swap ? w : h;
+
+    if (destination == null) destination = createCompatible(image, dw, dh);
+    else if (destination.getWidth() != dw || destination.getHeight() != dh) throw new IllegalArgumentException("destination must be " + dw + "x" + dh);
+
+    Layout src = Layout.of(image);
+    Layout dst = Layout.of(destination);
+    if (src == null || !src.compatible(dst, image.getColorModel(), destination.getColorModel()))
+    {
+      if (image.getColorModel().equals(destination.getColorModel())) copyElements(image, transformation, destination);
+      else draw(image, transformation, destination);
+      return destination;
+    }
+
+    int[] m = MAPPING[transformation];
+    // steps through the source for one target pixel to the right and one down
+    final int stepX = m[0] * src.pixelStride + m[3] * src.scanline;
+    final int stepY = m[1] * src.pixelStride + m[4] * src.scanline;
+    final int origin = src.index(m[2] * (w - 1), m[5] * (h - 1));
+    final Layout s = src;
+    final Layout d = dst;
+    final int width = dw;
+
+    Resampler.runBands(w * h >= PARALLEL_PIXELS ? threads : 1, dh, new Resampler.Band()
+    {
+      public void run(int from, int to)
+      {
+        for (int ty = from; ty < to; ty += TILE)
+        {
+          int tyEnd = Math.min(to, ty + TILE);
+          for (int tx = 0; tx < width; tx += TILE)
+          {
+            int txEnd = Math.min(width, tx + TILE);
+            if (s.ints != null) copyInts(s.ints, d.ints, d, origin, stepX, stepY, tx, txEnd, ty, tyEnd);
+            else copyBytes(s.bytes, d.bytes, d, origin, stepX, stepY, tx, txEnd, ty, tyEnd);
+          }
+        }
+      }
+    });
+    return destination;
+  }
+
+  private static void copyInts(int[] src, int[] dst, Layout d, int origin, int stepX, int stepY, int x0, int x1, int y0, int y1)
+  {
+    for (int y = y0; y < y1; y++)
+    {
+      int si = origin + x0 * stepX + y * stepY;
+      int di = d.index(x0, y);
+      for (int x = x0; x < x1; x++, si += stepX)
+        dst[di++] = src[si];
+    }
+  }
+
+  private static void copyBytes(byte[] src, byte[] dst, Layout d, int origin, int stepX, int stepY, int x0, int x1, int y0, int y1)
+  {
+    int ps = d.pixelStride;
+    for (int y = y0; y < y1; y++)
+    {
+      int si = origin + x0 * stepX + y * stepY;
+      int di = d.index(x0, y);
+      switch (ps)
+      {
+      case 1:
+        for (int x = x0; x < x1; x++, si += stepX)
+          dst[di++] = src[si];
+        break;
+      case 3:
+        for (int x = x0; x < x1; x++, si += stepX, di += 3)
+        {
+          dst[di] = src[si];
+          dst[di + 1] = src[si + 1];
+          dst[di + 2] = src[si + 2];
+        }
+        break;
+      default:
+        for (int x = x0; x < x1; x++, si += stepX, di += ps)
+          System.arraycopy(src, si, dst, di, ps);
+      }
+    }
+  }
+
+  /**
+   * an image of the same type or color model as the source
+   */
+  private static BufferedImage createCompatible(BufferedImage image, int width, int height)
+  {
+    if (image.getType() != BufferedImage.TYPE_CUSTOM) return new BufferedImage(width, height, image.getType());
+    ColorModel cm = image.getColorModel();
+    WritableRaster raster = cm.createCompatibleWritableRaster(width, height);
+    return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+  }
+
+  /**
+   * copy the pixels of another layout of the same color model one by one
+   */
+  private static void copyElements(BufferedImage image, int transformation, BufferedImage destination)
+  {
+    int[] m = MAPPING[transformation];
+    int cx = m[2] * (image.getWidth() - 1);
+    int cy = m[5] * (image.getHeight() - 1);
+    Raster src = image.getRaster();
+    WritableRaster dst = destination.getRaster();
+    Object pixel = null;
+    for (int y = 0; y < destination.getHeight(); y++)
+    {
+      for (int x = 0; x < destination.getWidth(); x++)
+      {
+        pixel = src.getDataElements(m[0] * x + m[1] * y + cx, m[3] * x + m[4] * y + cy, pixel);
+        dst.setDataElements(x, y, pixel);
+      }
+    }
+  }
+
+  /**
+   * the Java2D way for a destination of another color model
+   */
+  private static void draw(BufferedImage image, int transformation, BufferedImage destination)
+  {
+    int[] m = MAPPING[transformation];
+    int w = image.getWidth();
+    int h = image.getHeight();
+    // the inverse of the mapping, from source to target coordinates
+    AffineTransform t = new AffineTransform(m[0], m[3], m[1], m[4], 0, 0);
+    try
+    {
+      t = t.createInverse();
+    }
+    catch (NoninvertibleTransformException e)
+    {
+      throw new IllegalStateException(e);
+    }
+    t.translate(-m[2] * w, -m[5] * h);
+    Graphics2D g = destination.createGraphics();
+    g.drawImage(image, t, null);
+    g.dispose();
+  }
+
+  /**
+   * where the pixels of an image are in its data buffer
+   */
+  private static class Layout {
+    int[]  ints;
+    byte[] bytes;
+    int    offset;
+    int    scanline;
+    int    pixelStride;
+    int[]  bandOffsets;
+
+    static Layout of(BufferedImage image)
+    {
+      WritableRaster raster = image.getRaster();
+      SampleModel sm = raster.getSampleModel();
+      DataBuffer buffer = raster.getDataBuffer();
+      if (buffer.getNumBanks() != 1) return null;
+
+      Layout l = new Layout();
+      if (sm instanceof SinglePixelPackedSampleModel && buffer instanceof DataBufferInt)
+      {
+        l.ints = ((DataBufferInt) buffer).getData();
+        l.scanline = ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+        l.pixelStride = 1;
+        l.bandOffsets = ((SinglePixelPackedSampleModel) sm).getBitMasks();
+      }
+      else if (sm instanceof PixelInterleavedSampleModel && buffer instanceof DataBufferByte)
+      {
+        PixelInterleavedSampleModel pi = (PixelInterleavedSampleModel) sm;
+        if (pi.getPixelStride() != pi.getNumBands()) return null;
+        l.bytes = ((DataBufferByte) buffer).getData();
+        l.scanline = pi.getScanlineStride();
+        l.pixelStride = pi.getPixelStride();
+        l.bandOffsets = pi.getBandOffsets();
+        for (int b : l.bandOffsets)
+          if (b < 0 || b >= l.pixelStride) return null;
+      }
+      else return null;
+      l.offset = buffer.getOffset() - raster.getSampleModelTranslateY() * l.scanline - raster.getSampleModelTranslateX() * l.pixelStride;
+      return l;
+    }
+
+    int index(int x, int y)
+    {
+      return offset + y * scanline + x * pixelStride;
+    }
+
+    boolean compatible(Layout other, ColorModel cm, ColorModel otherCm)
+    {
+      return other != null && (ints != null) == (other.ints != null) && pixelStride == other.pixelStride && Arrays.equals(bandOffsets, other.bandOffsets) && cm.equals(otherCm);
+    }
+  }
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * Writes a ZIP file and deflates its entries on several cores. Every entry is
+ * cut into chunks, each chunk is compressed by its own task with the end of
+ * the previous chunk as dictionary and flushed to a byte boundary, so the
+ * compressed chunks simply follow each other in the entry. The chunks are
+ * written in order by the thread which adds the files.
+ * </p>
+ * <p>
+ * Already compressed formats (JPEG, PNG, ZIP ...) are STORED. ZIP64 records are
+ * written when an entry, the archive or the number of entries needs them.
+ * </p>
+ */
+public class ParallelZipWriter implements Closeable {
+  /** uncompressed bytes of one chunk */
+  static final int                 CHUNK_SIZE  = 1024 * 1024;
+  /** the window of deflate, the dictionary of the next chunk */
+  private static final int         DICTIONARY  = 32 * 1024;
+  private static final long        ZIP32_LIMIT = 0xFFFFFFFFL;
+  private static final Charset     UTF8        = Charset.forName("UTF-8");
+  private static final Set<String> STORED      = new HashSet<String>(Arrays.asList("jpg", "jpeg", "png", "gif", "zip", "gz", "bz2", "7z", "mp3", "mp4", "mov", "avi", "webp"));
+
+  private final FileChannelImageOutputStream out;
+  private final int                          level;
+  private final int                          window;
+  private final ExecutorService              executor;
+  private final ArrayDeque<Chunk>            pending     = new ArrayDeque<Chunk>();
+  private final ArrayList<Entry>             entries     = new ArrayList<Entry>();
+  private final CRC32                        crc         = new CRC32();
+
+  /**
+   * @param file
+   *          File, the ZIP file
+   * @param level
+   *          int, the level of the Deflater
+   * @param threads
+   *          int, the number of chunks compressed at the same time
+   * @throws IOException
+   */
+  public ParallelZipWriter(File file, int level, int threads) throws IOException {
+    super();
+    this.out = new FileChannelImageOutputStream(file, 64 * 1024);
+    this.out.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+    this.level = level;
+    this.window = Math.max(1, threads) * 2;
+    this.executor = ImageJobExecutor.get();
+  }
+
+  /**
+   * <p>
+   * add a file to the ZIP. The chunks of the file are compressed in the
+   * background, the method blocks only if too many chunks are waiting.
+   * </p>
+   * 
+   * @param file
+   *          File, the file
+   * @param name
+   *          String, the name of the entry
+   * @throws IOException
+   */
+  public void add(final File file, String name) throws IOException
+  {
+    long length = file.length();
+    final Entry entry = new Entry(name, length, file.lastModified(), isStored(name));
+
+    long chunks = Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    for (long c = 0; c < chunks; c++)
+    {
+      waitForWindow();
+      final long pos = c * CHUNK_SIZE;
+      final int len = (int) Math.min(CHUNK_SIZE, length - pos);
+      final boolean last = c == chunks - 1;
+      Chunk chunk = new Chunk(entry, c == 0, last);
+      chunk.result = executor.submit(new Callable<Data>()
+      {
+        public Data call() throws IOException
+        {
+          return compress(file, pos, len, last, entry.stored);
+        }
+      });
+      pending.add(chunk);
+    }
+  }
+
+  /**
+   * <p>
+   * add data in memory to the ZIP. The data must not be changed until the
+   * writer is closed. Already compressed data is written without a task.
+   * </p>
+   * 
+   * @param data
+   *          byte[], the content of the entry
+   * @param name
+   *          String, the name of the entry
+   * @param time
+   *          long, the modification time of the entry
+   * @throws IOException
+   */
+  public void add(final byte[] data, String name, long time) throws IOException
+  {
+    final Entry entry = new Entry(name, data.length, time, isStored(name));
+
+    int chunks = Math.max(1, (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    for (int c = 0; c < chunks; c++)
+    {
+      waitForWindow();
+      final int pos = c * CHUNK_SIZE;
+      final int len = Math.min(CHUNK_SIZE, data.length - pos);
+      final boolean last = c == chunks - 1;
+      Chunk chunk = new Chunk(entry, c == 0, last);
+      if (entry.stored) chunk.result = CompletableFuture.completedFuture(new Data(data, pos, len, null));
+      else chunk.result = executor.submit(new Callable<Data>()
+      {
+        public Data call()
+        {
+          return compress(data, pos, len, Math.min(DICTIONARY, pos), last);
+        }
+      });
+      pending.add(chunk);
+    }
+  }
+
+  private static boolean isStored(String name)
+  {
+    return STORED.contains(name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ENGLISH));
+  }
+
+  private void waitForWindow() throws IOException
+  {
+    while (pending.size() >= window)
+      writeNext();
+  }
+
+  /**
+   * <p>
+   * write the remaining chunks and the central directory
+   * </p>
+   */
+  public void close() throws IOException
+  {
+    try
+    {
+      while (!pending.isEmpty())
+        writeNext();
+      writeCentralDirectory();
+    }
+    finally
+    {
+      for (Chunk chunk : pending)
+        chunk.result.cancel(true);
+      out.close();
+    }
+  }
+
+  /**
+   * @return the uncompressed and the compressed data of a chunk of a file
+   */
+  private Data compress(File file, long pos, int len, boolean last, boolean stored) throws IOException
+  {
+    // the chunk and the end of the previous one as dictionary
+    int dict = stored ? 0 : (int) Math.min(DICTIONARY, pos);
+    ByteBuffer data = ByteBuffer.allocate(dict + len);
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+    {
+      while (data.hasRemaining())
+      {
+        if (in.read(data, pos - dict + data.position()) < 0) throw new IOException(file + " was truncated");
+      }
+    }
+    if (stored) return new Data(data.array(), 0, len, null);
+    return compress(data.array(), dict, len, dict, last);
+  }
+
+  /**
+   * @return the uncompressed and the compressed data of a chunk, the bytes
+   *         before the chunk are the dictionary
+   */
+  private Data compress(byte[] data, int off, int len, int dict, boolean last)
+  {
+    Deflater deflater = new Deflater(level, true);
+    try
+    {
+      if (dict > 0) deflater.setDictionary(data, off - dict, dict);
+      deflater.setInput(data, off, len);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(len / 2 + 64);
+      byte[] buffer = new byte[ Math.min(64 * 1024, len + 1024)];
+      if (last)
+      {
+        deflater.finish();
+        while (!deflater.finished())
+          compressed.write(buffer, 0, deflater.deflate(buffer));
+      }
+      else
+      {
+        // a sync flush ends the chunk on a byte boundary without ending the stream
+        int n;
+        do
+        {
+          n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          compressed.write(buffer, 0, n);
+        }
+        while (n == buffer.length);
+      }
+      return new Data(data, off, len, compressed.toByteArray());
+    }
+    finally
+    {
+      deflater.end();
+    }
+  }
+
+  private void writeNext() throws IOException
+  {
+    Chunk chunk = pending.poll();
+    Entry entry = chunk.entry;
+    if (chunk.first)
+    {
+      crc.reset();
+      writeLocalHeader(entry);
+    }
+
+    Data result;
+    try
+    {
+      result = chunk.result.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted");
+    }
+    catch (ExecutionException e)
+    {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    }
+
+    crc.update(result.raw, result.off, result.len);
+    if (result.compressed == null)
+    {
+      out.write(result.raw, result.off, result.len);
+      entry.compressed += result.len;
+    }
+    else
+    {
+      out.write(result.compressed);
+      entry.compressed += result.compressed.length;
+    }
+
+    if (chunk.last)
+    {
+      entry.crc = crc.getValue();
+      patchLocalHeader(entry);
+      entries.add(entry);
+    }
+  }
+
+  private void writeLocalHeader(Entry entry) throws IOException
+  {
+    entry.offset = out.getStreamPosition();
+    out.writeInt(0x04034b50);
+    out.writeShort(entry.zip64 ? 45 : 20);
+    out.writeShort(1 << 11); // UTF-8 names
+    out.writeShort(entry.stored ? 0 : 8);
+    out.writeInt(entry.dosTime);
+    // crc and sizes are written when the entry is complete
+    out.writeInt(0);
+    out.writeInt(entry.zip64 ? (int) ZIP32_LIMIT : 0);
+    out.writeInt(entry.zip64 ? (int) ZIP32_LIMIT : 0);
+    out.writeShort(entry.name.length);
+    out.writeShort(entry.zip64 ? 20 : 0);
+    out.write(entry.name);
+    if (entry.zip64)
+    {
+      out.writeShort(0x0001);
+      out.writeShort(16);
+      out.writeLong(0);
+      out.writeLong(0);
+    }
+  }
+
+  private void patchLocalHeader(Entry entry) throws IOException
+  {
+    long end = out.getStreamPosition();
+    out.seek(entry.offset + 14);
+    out.writeInt((int) entry.crc);
+    if (entry.zip64)
+    {
+      out.seek(entry.offset + 30 + entry.name.length + 4);
+      out.writeLong(entry.size);
+      out.writeLong(entry.compressed);
+    }
+    else
+    {
+      if (entry.compressed >= ZIP32_LIMIT) throw new IOException(new String(entry.name, UTF8) + " is too big for a ZIP entry");
+      out.writeInt((int) entry.compressed);
+      out.writeInt((int) entry.size);
+    }
+    out.seek(end);
+  }
+
+  private void writeCentralDirectory() throws IOException
+  {
+    long start = out.getStreamPosition();
+    for (Entry entry : entries)
+    {
+      boolean bigOffset = entry.offset >= ZIP32_LIMIT;
+      int extra = (entry.zip64 ? 16 : 0) + (bigOffset ? 8 : 0);
+
+      out.writeInt(0x02014b50);
+      out.writeShort(entry.zip64 || bigOffset ? 45 : 20);
+      out.writeShort(entry.zip64 || bigOffset ? 45 : 20);
+      out.writeShort(1 << 11);
+      out.writeShort(entry.stored ? 0 : 8);
+      out.writeInt(entry.dosTime);
+      out.writeInt((int) entry.crc);
+      out.writeInt(entry.zip64 ? (int) ZIP32_LIMIT : (int) entry.compressed);
+      out.writeInt(entry.zip64 ? (int) ZIP32_LIMIT : (int) entry.size);
+      out.writeShort(entry.name.length);
+      out.writeShort(extra > 0 ? extra + 4 : 0);
+      out.writeShort(0); // comment
+      out.writeShort(0); // disk
+      out.writeShort(0); // internal attributes
+      out.writeInt(0); // external attributes
+      out.writeInt(bigOffset ? (int) ZIP32_LIMIT : (int) entry.offset);
+      out.write(entry.name);
+      if (extra > 0)
+      {
+        out.writeShort(0x0001);
+        out.writeShort(extra);
+        if (entry.zip64)
+        {
+          out.writeLong(entry.size);
+          out.writeLong(entry.compressed);
+        }
+        if (bigOffset) out.writeLong(entry.offset);
+      }
+    }
+    long end = out.getStreamPosition();
+    long size = end - start;
+
+    if (entries.size() >= 0xFFFF || start >= ZIP32_LIMIT || size >= ZIP32_LIMIT)
+    {
+      // zip64 end of central directory record and its locator
+      out.writeInt(0x06064b50);
+      out.writeLong(44);
+      out.writeShort(45);
+      out.writeShort(45);
+      out.writeInt(0);
+      out.writeInt(0);
+      out.writeLong(entries.size());
+      out.writeLong(entries.size());
+      out.writeLong(size);
+      out.writeLong(start);
+
+      out.writeInt(0x07064b50);
+      out.writeInt(0);
+      out.writeLong(end);
+      out.writeInt(1);
+    }
+
+    out.writeInt(0x06054b50);
+    out.writeShort(0);
+    out.writeShort(0);
+    out.writeShort(Math.min(entries.size(), 0xFFFF));
+    out.writeShort(Math.min(entries.size(), 0xFFFF));
+    out.writeInt((int) Math.min(size, ZIP32_LIMIT));
+    out.writeInt((int) Math.min(start, ZIP32_LIMIT));
+    out.writeShort(0);
+  }
+
+  /**
+   * a file in the ZIP
+   */
+  private static class Entry {
+    final byte[]  name;
+    final long    size;
+    final int     dosTime;
+    final boolean stored;
+    final boolean zip64;
+    long          offset;
+    long          compressed = 0;
+    long          crc;
+
+    Entry(String name, long size, long time, boolean stored) {
+      this.name = name.getBytes(UTF8);
+      this.size = size;
+      this.stored = stored;
+      // deflate can grow incompressible data a little
+      this.zip64 = size >= ZIP32_LIMIT - (size >> 6) - 1024;
+
+      Calendar c = Calendar.getInstance();
+      c.setTimeInMillis(time);
+      int year = Math.max(1980, c.get(Calendar.YEAR));
+      this.dosTime = ((year - 1980) << 25) | ((c.get(Calendar.MONTH) + 1) << 21) | (c.get(Calendar.DAY_OF_MONTH) << 16) | (c.get(Calendar.HOUR_OF_DAY) << 11) | (c.get(Calendar.MINUTE) << 5) | (c.get(Calendar.SECOND) >> 1);
+    }
+  }
+
+  /**
+   * the uncompressed bytes of a chunk and its compressed bytes, null if the
+   * entry is STORED
+   */
+  private static class Data {
+    final byte[] raw;
+    final int    off;
+    final int    len;
+    final byte[] compressed;
+
+    Data(byte[] raw, int off, int len, byte[] compressed) {
+      this.raw = raw;
+      this.off = off;
+      this.len = len;
+      this.compressed = compressed;
+    }
+  }
+
+  /**
+   * a part of an entry, compressed by its own task
+   */
+  private static class Chunk {
+    final Entry   entry;
+    final boolean first;
+    final boolean last;
+    Future<Data>  result;
+
+    Chunk(Entry entry, boolean first, boolean last) {
+      this.entry = entry;
+      this.first = first;
+      this.last = last;
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * The live metrics of all image jobs of the process. They are registered in
+ * the platform MBean server as <code>org.jis.generator:type=Pipeline</code>
+ * and one <code>org.jis.generator:type=Pipeline,stage=...</code> for each
+ * stage, so jconsole or a JMX scraper can read them while a batch runs.
+ * </p>
+ */
+public final class PipelineMetrics implements PipelineMetricsMBean {
+  public static final String             DOMAIN    = "org.jis.generator";
+  private static final int               WINDOW    = 10;
+  private static final PipelineMetrics   INSTANCE  = new PipelineMetrics();
+
+  final StageMetrics                     decode    = new StageMetrics("decode");
+  final StageMetrics                     scale     = new StageMetrics("scale");
+  final StageMetrics                     overlay   = new StageMetrics("overlay");
+  final StageMetrics                     encode    = new StageMetrics("encode");
+  final StageMetrics                     write     = new StageMetrics("write");
+
+  private final AtomicLong               done      = new AtomicLong();
+  private final AtomicLong               failed    = new AtomicLong();
+  private final AtomicLong               bytesRead = new AtomicLong();
+  private final AtomicLong               written   = new AtomicLong();
+  private final AtomicInteger            active    = new AtomicInteger();
+  private final Set<ImagePipeline>       pipelines = Collections.newSetFromMap(new ConcurrentHashMap<ImagePipeline, Boolean>());
+
+  // finished images of the last seconds, one slot per second
+  private final long[]                   seconds   = new long[ WINDOW];
+  private final long[]                   counts    = new long[ WINDOW];
+
+  private PipelineMetrics() {
+    super();
+  }
+
+  /**
+   * @return the metrics of the process, registered in the platform MBean
+   *         server
+   */
+  public static PipelineMetrics get()
+  {
+    return INSTANCE;
+  }
+
+  static
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try
+    {
+      server.registerMBean(INSTANCE, new ObjectName(DOMAIN + ":type=Pipeline"));
+      for (StageMetrics stage : INSTANCE.stages())
+        server.registerMBean(stage, new ObjectName(DOMAIN + ":type=Pipeline,stage=" + stage.getName()));
+    }
+    catch (InstanceAlreadyExistsException e)
+    {
+      // loaded by another class loader, the first one is shown
+    }
+    catch (JMException e)
+    {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * @return StageMetrics[], the stages in the order of the pipeline
+   */
+  public StageMetrics[] stages()
+  {
+    return new StageMetrics[] { decode, scale, overlay, encode, write };
+  }
+
+  /**
+   * @param success
+   *          boolean, false if the image failed
+   */
+  void imageDone(boolean success)
+  {
+    if (!success)
+    {
+      failed.incrementAndGet();
+      return;
+    }
+    done.incrementAndGet();
+
+    long now = System.currentTimeMillis() / 1000;
+    synchronized (counts)
+    {
+      int slot = (int) (now % WINDOW);
+      if (seconds[slot] != now)
+      {
+        seconds[slot] = now;
+        counts[slot] = 0;
+      }
+      counts[slot]++;
+    }
+  }
+
+  void read(long bytes)
+  {
+    bytesRead.addAndGet(bytes);
+  }
+
+  void written(long bytes)
+  {
+    written.addAndGet(bytes);
+  }
+
+  void consumerStarted()
+  {
+    active.incrementAndGet();
+  }
+
+  void consumerFinished()
+  {
+    active.decrementAndGet();
+  }
+
+  /**
+   * @param pipeline
+   *          ImagePipeline, a running pipeline, its queues are counted
+   */
+  void started(ImagePipeline pipeline)
+  {
+    pipelines.add(pipeline);
+  }
+
+  void finished(ImagePipeline pipeline)
+  {
+    pipelines.remove(pipeline);
+  }
+
+  public long getImagesDone()
+  {
+    return done.get();
+  }
+
+  public long getImagesFailed()
+  {
+    return failed.get();
+  }
+
+  public double getImagesPerSecond()
+  {
+    long now = System.currentTimeMillis() / 1000;
+    long sum = 0;
+    synchronized (counts)
+    {
+      // the current second is not over yet, it is left out
+      for (int i = 0; i < WINDOW; i++)
+      {
+        if (seconds[i] < now && seconds[i] >= now - WINDOW) sum += counts[i];
+      }
+    }
+    return (double) sum / WINDOW;
+  }
+
+  public long getBytesRead()
+  {
+    return bytesRead.get();
+  }
+
+  public long getBytesWritten()
+  {
+    return written.get();
+  }
+
+  public int getQueueDepth()
+  {
+    int depth = 0;
+    for (ImagePipeline pipeline : pipelines)
+      depth += pipeline.queued();
+    return depth;
+  }
+
+  public int getActiveConsumers()
+  {
+    return active.get();
+  }
+
+  public int getAvailableProcessors()
+  {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  public long getHeapUsed()
+  {
+    Runtime r = Runtime.getRuntime();
+    return r.totalMemory() - r.freeMemory();
+  }
+
+  public long getHeapMax()
+  {
+    return Runtime.getRuntime().maxMemory();
+  }
+
+  public long getGcMillis()
+  {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      millis += Math.max(0, gc.getCollectionTime());
+    return millis;
+  }
+
+  public void reset()
+  {
+    done.set(0);
+    failed.set(0);
+    bytesRead.set(0);
+    written.set(0);
+    synchronized (counts)
+    {
+      for (int i = 0; i < WINDOW; i++)
+        counts[i] = 0;
+    }
+    for (StageMetrics stage : stages())
+      stage.reset();
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+/**
+ * <p>
+ * The JMX view of the image pipeline. Together with the
+ * {@link StageMetricsMBean stage times} it shows whether a running job waits
+ * for the cores, the disk or the heap.
+ * </p>
+ */
+public interface PipelineMetricsMBean {
+  /**
+   * @return long, the images which were generated
+   */
+  long getImagesDone();
+
+  /**
+   * @return long, the images which failed
+   */
+  long getImagesFailed();
+
+  /**
+   * @return double, the finished images per second during the last ten
+   *         seconds
+   */
+  double getImagesPerSecond();
+
+  /**
+   * @return long, the bytes of the source images which were read
+   */
+  long getBytesRead();
+
+  /**
+   * @return long, the bytes of the scaled images which were written
+   */
+  long getBytesWritten();
+
+  /**
+   * @return int, the images which wait in the queues between the stages
+   */
+  int getQueueDepth();
+
+  /**
+   * @return int, the workers which process an image right now
+   */
+  int getActiveConsumers();
+
+  /**
+   * @return int, the cores of the machine
+   */
+  int getAvailableProcessors();
+
+  /**
+   * @return long, the used bytes of the heap
+   */
+  long getHeapUsed();
+
+  /**
+   * @return long, the maximum size of the heap
+   */
+  long getHeapMax();
+
+  /**
+   * @return long, the time all garbage collectors took since the start
+   */
+  long getGcMillis();
+
+  /**
+   * start counting from zero, the stage times too
+   */
+  void reset();
+}
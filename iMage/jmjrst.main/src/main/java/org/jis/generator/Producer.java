@@ -34,13 +34,18 @@ public class Producer implements Runnable {
   public final String              praefix;
   private Element[]                elements;
   private boolean                  isDone = false;
+  private int                      consumers = 1;
   private Main                     m;
+  private MemoryBudget             budget = MemoryBudget.fromOptions();
+  // progress of the workers, shown by the GUI at its own pace
+  final ProgressBus                progress;
 
   Producer(Main m, Element[] elements, String praefix) {
     this.queue = new LinkedBlockingQueue<Element>(Runtime.getRuntime().availableProcessors() + 1);
     this.elements = elements;
     this.m = m;
     this.praefix = praefix;
+    this.progress = new ProgressBus(m);
 
     // print info
     try
@@ -68,8 +73,21 @@ public class Producer implements Runnable {
         if (m.p_monitor.isCanceled()) break;
 
         Element elem = elements[i];
+
+        // wait until the decoded image fits into the heap
+        elem.cost = m.generator.estimateMemory(elem.file, elem.targets);
+        while (!budget.acquire(elem.cost, 100))
+        {
+          if (m.p_monitor.isCanceled()) break;
+        }
+        if (m.p_monitor.isCanceled()) break;
+
         queue.put(elem);
       }
+
+      // one end mark for every consumer, so no consumer waits forever
+      for (int i = 0; i < consumers; i++)
+        queue.put(Element.END);
     }
     catch (InterruptedException ex)
     {
@@ -78,11 +96,31 @@ public class Producer implements Runnable {
     isDone = true;
   }
 
+  /**
+   * @param consumers
+   *          int, the number of consumers which take from the queue
+   */
+  void setConsumers(int consumers)
+  {
+    this.consumers = consumers;
+  }
+
   int index = 0;
 
   public synchronized void incrementIndex()
   {
-    m.p_monitor.setProgress(++index);
+    progress.progress(++index);
+  }
+
+  /**
+   * @param elem
+   *          Element, a processed element, its bytes are returned to the
+   *          budget
+   */
+  public void release(Element elem)
+  {
+    budget.release(elem.cost);
+    elem.cost = 0;
   }
 
   public boolean isDone()
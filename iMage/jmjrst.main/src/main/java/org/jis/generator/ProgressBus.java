@@ -0,0 +1,258 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyledDocument;
+
+import org.jis.Main;
+import org.jis.options.Options;
+
+/**
+ * <p>
+ * Collects the progress of the workers of a job. Publishing never blocks a
+ * worker: the lines and counters are only queued, a Swing timer moves them
+ * into the output pane and the progress monitor a few times per second on the
+ * event dispatch thread.
+ * </p>
+ * <p>
+ * Without an output pane (headless or in tests) the lines are printed to
+ * System.out at once.
+ * </p>
+ */
+public class ProgressBus {
+  /** interval of the updates of the GUI */
+  static final int                          FRAME_MILLIS    = 100;
+  /** lines written to the output pane per update, older ones are counted */
+  static final int                          LINES_PER_FRAME = 200;
+
+  private final Main                        m;
+  private final ConcurrentLinkedQueue<Line> lines           = new ConcurrentLinkedQueue<Line>();
+  private final AtomicInteger               queued          = new AtomicInteger();
+  private final AtomicInteger               done            = new AtomicInteger();
+  private final AtomicInteger               failed          = new AtomicInteger();
+  private volatile int                      progress        = -1;
+  private volatile String                   note            = null;
+  private Timer                             timer;
+
+  /**
+   * @param m
+   *          Main, the main window
+   */
+  public ProgressBus(Main m) {
+    super();
+    this.m = m;
+  }
+
+  private boolean isGui()
+  {
+    return m != null && m.jOutputDoc != null;
+  }
+
+  /**
+   * <p>
+   * start the updates of the GUI
+   * </p>
+   */
+  public synchronized void start()
+  {
+    if (!isGui() || timer != null) return;
+    timer = new Timer(FRAME_MILLIS, new ActionListener()
+    {
+      public void actionPerformed(ActionEvent e)
+      {
+        drain();
+      }
+    });
+    timer.setCoalesce(true);
+    timer.start();
+  }
+
+  /**
+   * <p>
+   * stop the updates and write everything which is still queued. The method
+   * returns after the GUI shows the last lines.
+   * </p>
+   */
+  public void stop()
+  {
+    synchronized (this)
+    {
+      if (timer != null) timer.stop();
+      timer = null;
+    }
+    if (!isGui()) return;
+
+    Runnable flush = new Runnable()
+    {
+      public void run()
+      {
+        drain();
+      }
+    };
+    if (SwingUtilities.isEventDispatchThread()) flush.run();
+    else try
+    {
+      SwingUtilities.invokeAndWait(flush);
+    }
+    catch (Exception e)
+    {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * @param texts
+   *          String[], the parts of the line
+   * @param styles
+   *          AttributeSet[], the style of each part
+   */
+  public void log(String[] texts, AttributeSet[] styles)
+  {
+    if (!isGui())
+    {
+      StringBuilder sb = new StringBuilder();
+      for (String text : texts)
+        sb.append(text);
+      System.out.print(sb);
+      return;
+    }
+    lines.add(new Line(texts, styles));
+    queued.incrementAndGet();
+  }
+
+  /**
+   * @param text
+   *          String, the text
+   * @param style
+   *          AttributeSet, the style of the text
+   */
+  public void log(String text, AttributeSet style)
+  {
+    log(new String[] { text }, new AttributeSet[] { style });
+  }
+
+  /**
+   * <p>
+   * count a finished image
+   * </p>
+   * 
+   * @param error
+   *          boolean, true if the image could not be generated
+   */
+  public void imageDone(boolean error)
+  {
+    done.incrementAndGet();
+    if (error) failed.incrementAndGet();
+  }
+
+  /**
+   * @param value
+   *          int, the new value of the progress monitor
+   */
+  public void progress(int value)
+  {
+    progress = value;
+    if (!isGui() && m != null && m.p_monitor != null) m.p_monitor.setProgress(value);
+  }
+
+  /**
+   * @param text
+   *          String, the new note of the progress monitor
+   */
+  public void note(String text)
+  {
+    note = text;
+    if (!isGui() && m != null && m.p_monitor != null) m.p_monitor.setNote(text);
+  }
+
+  /**
+   * @return int, the finished images
+   */
+  public int done()
+  {
+    return done.get();
+  }
+
+  /**
+   * @return int, the images which could not be generated
+   */
+  public int failed()
+  {
+    return failed.get();
+  }
+
+  /**
+   * <p>
+   * move the queued lines into the output pane and update the progress
+   * monitor, runs on the event dispatch thread
+   * </p>
+   */
+  void drain()
+  {
+    StyledDocument doc = m.jOutputDoc;
+    try
+    {
+      // write only the newest lines, if the workers are faster than the GUI
+      int skipped = 0;
+      for (int skip = queued.get() - LINES_PER_FRAME; skipped < skip && lines.poll() != null; skipped++)
+        queued.decrementAndGet();
+      if (skipped > 0) doc.insertString(doc.getLength(), "  . . . (" + skipped + ")" + Options.ls, m.outputAtr);
+
+      for (Line line; (line = lines.poll()) != null;)
+      {
+        queued.decrementAndGet();
+        for (int i = 0; i < line.texts.length; i++)
+          doc.insertString(doc.getLength(), line.texts[i], line.styles[i]);
+      }
+      m.text.setCaretPosition(doc.getLength());
+    }
+    catch (Exception e)
+    {
+      e.printStackTrace();
+    }
+
+    if (m.p_monitor != null)
+    {
+      if (progress >= 0) m.p_monitor.setProgress(progress);
+      if (note != null)
+      {
+        int f = failed.get();
+        m.p_monitor.setNote(note + "  (" + done.get() + (f > 0 ? ", " + f + " !" : "") + ")");
+      }
+    }
+  }
+
+  /**
+   * a line of the output pane
+   */
+  private static class Line {
+    final String[]       texts;
+    final AttributeSet[] styles;
+
+    Line(String[] texts, AttributeSet[] styles) {
+      this.texts = texts;
+      this.styles = styles;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.metadata.IIOMetadata;
+
+/**
+ * <p>
+ * The state of one image on its way through the stages of the
+ * {@link ImagePipeline} or through {@link Generator#generateImages}. Every
+ * stage drops the data the next stages don't need anymore, so the heap holds
+ * only one representation of the image at a time.
+ * </p>
+ */
+class RenderTask {
+  // marks the end of the queue of a stage
+  static final RenderTask END = new RenderTask(null, null, new ImageTarget[ 0], "");
+
+  final Element                  element;
+  final File                     file;
+  final String                   praefix;
+  ImageTarget[]                  targets;
+  // hash of the source, set if the cache or the manifest is used
+  String                         sourceHash;
+
+  // encoded source image
+  byte[]                         source;
+  // decoded source image, its size and metadata, the raw segments of a JPEG
+  // or the metadata of ImageIO for other images
+  BufferedImage                  image;
+  int                            width;
+  int                            height;
+  JpegSegments                   segments;
+  IIOMetadata                    metadata;
+  // sizes of the scaled images and the order in which they are rendered
+  Dimension[]                    sizes;
+  int[]                          order;
+  BufferedImage[]                scaled;
+  // encoded scaled images
+  byte[][]                       encoded;
+  // encoded images of targets which were found in the cache
+  final Map<ImageTarget, byte[]> fetched = new LinkedHashMap<ImageTarget, byte[]>();
+
+  boolean                        failed = false;
+  // bytes of the source and of the written images
+  long                           read;
+  long                           written;
+  // creation and nanoseconds the stages worked on the task
+  final long                     created = System.nanoTime();
+  long                           work;
+  final GenerateImageEvent       event  = new GenerateImageEvent();
+
+  /**
+   * @param element
+   *          Element, the element from the producer or null
+   * @param file
+   *          File, the source image
+   * @param targets
+   *          ImageTarget[], the sizes to render
+   * @param praefix
+   *          String, praefix for the filenames of the scaled images
+   */
+  RenderTask(Element element, File file, ImageTarget[] targets, String praefix) {
+    this.element = element;
+    this.file = file;
+    this.targets = targets;
+    this.praefix = praefix;
+  }
+
+  /**
+   * @param i
+   *          int, index of a target
+   * @return File, the output file of the target
+   */
+  File output(int i)
+  {
+    return targets[i].file(file, praefix);
+  }
+}
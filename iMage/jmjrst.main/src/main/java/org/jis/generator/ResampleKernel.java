@@ -0,0 +1,106 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import org.jis.options.Options;
+
+/**
+ * <p>
+ * The filter kernels of the {@link Resampler}. Each kernel is a one
+ * dimensional function, the resampler applies it separately in x and y
+ * direction.
+ * </p>
+ */
+public enum ResampleKernel {
+  /** area average, nearest neighbour when enlarging */
+  BOX(0.5)
+  {
+    double weight(double x)
+    {
+      return (x > -0.5 && x <= 0.5) ? 1.0 : 0.0;
+    }
+  },
+
+  /** triangle filter */
+  BILINEAR(1.0)
+  {
+    double weight(double x)
+    {
+      x = Math.abs(x);
+      return x < 1.0 ? 1.0 - x : 0.0;
+    }
+  },
+
+  /** Catmull-Rom spline (a = -0.5) */
+  BICUBIC(2.0)
+  {
+    double weight(double x)
+    {
+      final double a = -0.5;
+      x = Math.abs(x);
+      if (x < 1.0) return ((a + 2.0) * x - (a + 3.0)) * x * x + 1.0;
+      if (x < 2.0) return ((a * x - 5.0 * a) * x + 8.0 * a) * x - 4.0 * a;
+      return 0.0;
+    }
+  },
+
+  /** windowed sinc with three lobes */
+  LANCZOS(3.0)
+  {
+    double weight(double x)
+    {
+      if (x == 0.0) return 1.0;
+      if (x <= -3.0 || x >= 3.0) return 0.0;
+      double px = Math.PI * x;
+      return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+    }
+  };
+
+  private final double support;
+
+  private ResampleKernel(double support) {
+    this.support = support;
+  }
+
+  /**
+   * @return the radius of the kernel in source pixels, when the image is not
+   *         reduced
+   */
+  double support()
+  {
+    return support;
+  }
+
+  abstract double weight(double x);
+
+  /**
+   * @param modus
+   *          int, one of the Options.MODUS_* constants
+   * @return the kernel used for this modus
+   */
+  public static ResampleKernel forModus(int modus)
+  {
+    switch (modus)
+    {
+    case Options.MODUS_SPEED:
+      return BILINEAR;
+    case Options.MODUS_QUALITY:
+      return LANCZOS;
+    default:
+      return BICUBIC;
+    }
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Separable image resampler working directly on the pixel arrays of the
+ * images. The image is first filtered in x direction into an intermediate RGB
+ * image and then in y direction into the result. Both passes can be split
+ * into bands of rows, which are filtered in parallel.
+ * </p>
+ */
+public class Resampler {
+  /** rows a band should have at least before the work is split */
+  private static final int     MIN_BAND_ROWS = 64;
+
+  private final ResampleKernel kernel;
+  private final int            threads;
+
+  /**
+   * @param kernel
+   *          ResampleKernel, the filter kernel
+   * @param threads
+   *          int, max. number of threads for one resize
+   */
+  public Resampler(ResampleKernel kernel, int threads) {
+    super();
+    this.kernel = kernel;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * <p>
+   * resize the image. A transparent image is composed onto a white background.
+   * </p>
+   * 
+   * @param image
+   *          BufferedImage, the input image
+   * @param width
+   *          int, width of the resized image
+   * @param height
+   *          int, height of the resized image
+   * @return BufferedImage, a new image of the type TYPE_INT_RGB
+   */
+  public BufferedImage resize(final BufferedImage image, final int width, final int height)
+  {
+    final int srcWidth = image.getWidth();
+    final int srcHeight = image.getHeight();
+
+    final Contributions cx = new Contributions(srcWidth, width, kernel);
+    final Contributions cy = new Contributions(srcHeight, height, kernel);
+
+    // x pass: every source row into the intermediate image
+    final int[] tmp = new int[ srcHeight * width];
+    runBands(srcHeight, new Band()
+    {
+      public void run(int from, int to)
+      {
+        int[] row = new int[ srcWidth];
+        for (int y = from; y < to; y++)
+        {
+          readRow(image, y, row);
+          filterRow(row, cx, tmp, y * width);
+        }
+      }
+    });
+
+    // y pass: the rows of the intermediate image into the result
+    BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final int[] dst = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+    runBands(height, new Band()
+    {
+      public void run(int from, int to)
+      {
+        float[] acc = new float[ width * 3];
+        for (int y = from; y < to; y++)
+          filterColumns(tmp, width, cy, y, acc, dst, y * width);
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * filter one row in x direction
+   */
+  private static void filterRow(int[] row, Contributions c, int[] out, int offset)
+  {
+    for (int x = 0; x < c.size; x++)
+    {
+      float r = 0, g = 0, b = 0;
+      int start = c.start[x];
+      int w = x * c.stride;
+      for (int k = 0; k < c.count[x]; k++)
+      {
+        int rgb = row[start + k];
+        float weight = c.weights[w + k];
+        r += weight * ((rgb >> 16) & 0xff);
+        g += weight * ((rgb >> 8) & 0xff);
+        b += weight * (rgb & 0xff);
+      }
+      out[offset + x] = (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+    }
+  }
+
+  /**
+   * filter one result row in y direction, the source rows are walked through
+   * sequentially to keep the memory access linear
+   */
+  private static void filterColumns(int[] tmp, int width, Contributions c, int y, float[] acc, int[] out, int offset)
+  {
+    Arrays.fill(acc, 0f);
+    int start = c.start[y];
+    int w = y * c.stride;
+    for (int k = 0; k < c.count[y]; k++)
+    {
+      float weight = c.weights[w + k];
+      int line = (start + k) * width;
+      for (int x = 0, a = 0; x < width; x++, a += 3)
+      {
+        int rgb = tmp[line + x];
+        acc[a] += weight * ((rgb >> 16) & 0xff);
+        acc[a + 1] += weight * ((rgb >> 8) & 0xff);
+        acc[a + 2] += weight * (rgb & 0xff);
+      }
+    }
+    for (int x = 0, a = 0; x < width; x++, a += 3)
+      out[offset + x] = (clamp(acc[a]) << 16) | (clamp(acc[a + 1]) << 8) | clamp(acc[a + 2]);
+  }
+
+  private static int clamp(float v)
+  {
+    int i = (int) (v + 0.5f);
+    return i < 0 ? 0 : (i > 255 ? 255 : i);
+  }
+
+  /**
+   * <p>
+   * read one row of the image as packed RGB. The common types of the JPEG
+   * reader are read directly from the data buffer, all other types through
+   * getRGB.
+   * </p>
+   */
+  static void readRow(BufferedImage image, int y, int[] row)
+  {
+    int width = image.getWidth();
+    Raster raster = image.getRaster();
+    boolean direct = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+
+    switch (direct ? image.getType() : BufferedImage.TYPE_CUSTOM)
+    {
+    case BufferedImage.TYPE_INT_RGB:
+    {
+      int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+      int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+      System.arraycopy(data, raster.getDataBuffer().getOffset() + y * stride, row, 0, width);
+      return;
+    }
+    case BufferedImage.TYPE_3BYTE_BGR:
+    {
+      byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+      int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+      int p = raster.getDataBuffer().getOffset() + y * stride;
+      for (int x = 0; x < width; x++, p += 3)
+        row[x] = ((data[p + 2] & 0xff) << 16) | ((data[p + 1] & 0xff) << 8) | (data[p] & 0xff);
+      return;
+    }
+    case BufferedImage.TYPE_BYTE_GRAY:
+    {
+      byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+      int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+      int p = raster.getDataBuffer().getOffset() + y * stride;
+      for (int x = 0; x < width; x++)
+      {
+        int v = data[p + x] & 0xff;
+        row[x] = (v << 16) | (v << 8) | v;
+      }
+      return;
+    }
+    default:
+      image.getRGB(0, y, width, 1, row, 0, width);
+      if (image.getColorModel().hasAlpha())
+      {
+        // compose onto white
+        for (int x = 0; x < width; x++)
+        {
+          int argb = row[x];
+          int a = argb >>> 24;
+          if (a == 255) continue;
+          int r = (((argb >> 16) & 0xff) * a + 255 * (255 - a)) / 255;
+          int g = (((argb >> 8) & 0xff) * a + 255 * (255 - a)) / 255;
+          int b = ((argb & 0xff) * a + 255 * (255 - a)) / 255;
+          row[x] = (r << 16) | (g << 8) | b;
+        }
+      }
+    }
+  }
+
+  private void runBands(int rows, Band band)
+  {
+    runBands(threads, rows, band);
+  }
+
+  /**
+   * split the rows into bands and run them, the calling thread takes the last
+   * band
+   */
+  static void runBands(int threads, int rows, final Band band)
+  {
+    int bands = Math.min(threads, rows / MIN_BAND_ROWS);
+    if (bands <= 1)
+    {
+      band.run(0, rows);
+      return;
+    }
+
+    int size = (rows + bands - 1) / bands;
+    ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int from = 0; from < rows - size; from += size)
+    {
+      final int f = from;
+      final int t = from + size;
+      futures.add(ForkJoinPool.commonPool().submit(new Runnable()
+      {
+        public void run()
+        {
+          band.run(f, t);
+        }
+      }));
+    }
+    band.run(futures.size() * size, rows);
+
+    try
+    {
+      for (Future<?> future : futures)
+        future.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    catch (ExecutionException e)
+    {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  interface Band {
+    void run(int from, int to);
+  }
+
+  /**
+   * <p>
+   * the source pixels and weights contributing to each pixel of one
+   * dimension of the result
+   * </p>
+   */
+  private static class Contributions {
+    final int     size;
+    final int     stride;
+    final int[]   start;
+    final int[]   count;
+    final float[] weights;
+
+    Contributions(int srcSize, int dstSize, ResampleKernel kernel) {
+      double scale = (double) dstSize / srcSize;
+      // widen the kernel when reducing, so every source pixel contributes
+      double filterScale = Math.max(1.0, 1.0 / scale);
+      double support = kernel.support() * filterScale;
+
+      size = dstSize;
+      stride = (int) Math.ceil(support) * 2 + 2;
+      start = new int[ dstSize];
+      count = new int[ dstSize];
+      weights = new float[ dstSize * stride];
+
+      for (int i = 0; i < dstSize; i++)
+      {
+        double center = (i + 0.5) / scale;
+        int left = Math.max(0, (int) Math.floor(center - support));
+        int right = Math.min(srcSize, (int) Math.ceil(center + support));
+        right = Math.min(right, left + stride);
+
+        double sum = 0;
+        for (int j = left; j < right; j++)
+        {
+          double weight = kernel.weight((j + 0.5 - center) / filterScale);
+          weights[i * stride + j - left] = (float) weight;
+          sum += weight;
+        }
+
+        if (sum == 0)
+        {
+          // nearest source pixel
+          left = Math.min(srcSize - 1, (int) center);
+          right = left + 1;
+          weights[i * stride] = 1f;
+          sum = 1;
+        }
+        for (int j = 0; j < right - left; j++)
+          weights[i * stride + j] /= sum;
+
+        start[i] = left;
+        count[i] = right - left;
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>
+ * A Flight Recorder event for the rotation of an image file by
+ * {@link Generator#rotate(java.io.File)}.
+ * </p>
+ */
+@Name("org.jis.Rotate")
+@Label("Rotate Image")
+@Category({ "jmjrst", "Generator" })
+@Description("Rotate an image file by 90 degrees")
+public class RotateEvent extends Event {
+  @Label("Source")
+  String source;
+
+  @Label("Method")
+  @Description("exif, lossless or pixels, empty if the rotation failed")
+  String method;
+
+  @Label("Degrees")
+  int    degrees;
+
+  @Label("Source Width")
+  int    sourceWidth;
+
+  @Label("Source Height")
+  int    sourceHeight;
+
+  @Label("Bytes Read")
+  @DataAmount
+  long   bytesRead;
+
+  @Label("Bytes Written")
+  @DataAmount
+  long   bytesWritten;
+}
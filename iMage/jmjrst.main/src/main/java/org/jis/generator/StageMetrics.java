@@ -0,0 +1,156 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * The latency histogram of one stage. The buckets grow exponentially with
+ * eight linear sub-buckets per power of two, from 1 microsecond up to hours.
+ * Recording is lock free, so the workers of a stage don't wait for each other.
+ * </p>
+ */
+public class StageMetrics implements StageMetricsMBean {
+  // eight exact buckets below 8 microseconds, eight per power of two above
+  private static final int       SUB_BUCKETS = 8;
+  private static final int       BUCKETS     = SUB_BUCKETS + (40 - 3) * SUB_BUCKETS;
+
+  private final String           name;
+  private final AtomicLongArray  buckets     = new AtomicLongArray(BUCKETS);
+  private final AtomicLong       count       = new AtomicLong();
+  private final AtomicLong       totalNanos  = new AtomicLong();
+  private final AtomicLong       maxNanos    = new AtomicLong();
+
+  StageMetrics(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return String, the name of the stage
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * <p>
+   * add the time of one image
+   * </p>
+   * 
+   * @param nanos
+   *          long, the time the stage took in nanoseconds
+   */
+  void record(long nanos)
+  {
+    if (nanos < 0) nanos = 0;
+    buckets.incrementAndGet(bucket(nanos / 1000));
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    for (long max; nanos > (max = maxNanos.get());)
+    {
+      if (maxNanos.compareAndSet(max, nanos)) break;
+    }
+  }
+
+  static int bucket(long micros)
+  {
+    if (micros < SUB_BUCKETS) return (int) micros;
+    int exp = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (int) (micros >>> (exp - 3)) & (SUB_BUCKETS - 1);
+    return Math.min(BUCKETS - 1, SUB_BUCKETS + (exp - 3) * SUB_BUCKETS + sub);
+  }
+
+  /**
+   * @return long, the smallest time in microseconds of the bucket
+   */
+  static long lowerBound(int bucket)
+  {
+    if (bucket < SUB_BUCKETS) return bucket;
+    int exp = (bucket - SUB_BUCKETS) / SUB_BUCKETS + 3;
+    int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + sub) << (exp - 3);
+  }
+
+  /**
+   * @param p
+   *          double, the quantile between 0 and 1
+   * @return double, the time in milliseconds the share p of the images stays
+   *         below, the middle of its bucket
+   */
+  double percentile(double p)
+  {
+    long[] counts = new long[ BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++)
+      total += counts[i] = buckets.get(i);
+    if (total == 0) return 0;
+
+    long rank = Math.max(1, (long) Math.ceil(p * total));
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      rank -= counts[i];
+      if (rank <= 0)
+      {
+        double micros = (lowerBound(i) + (i + 1 < BUCKETS ? lowerBound(i + 1) : lowerBound(i))) / 2.0;
+        return Math.min(micros / 1000, getMaxMillis());
+      }
+    }
+    return getMaxMillis();
+  }
+
+  public long getCount()
+  {
+    return count.get();
+  }
+
+  public double getTotalMillis()
+  {
+    return totalNanos.get() / 1e6;
+  }
+
+  public double getMeanMillis()
+  {
+    long n = count.get();
+    return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+  }
+
+  public double getP50Millis()
+  {
+    return percentile(0.5);
+  }
+
+  public double getP99Millis()
+  {
+    return percentile(0.99);
+  }
+
+  public double getMaxMillis()
+  {
+    return maxNanos.get() / 1e6;
+  }
+
+  public void reset()
+  {
+    for (int i = 0; i < BUCKETS; i++)
+      buckets.set(i, 0);
+    count.set(0);
+    totalNanos.set(0);
+    maxNanos.set(0);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+/**
+ * <p>
+ * The JMX view of one stage of the image pipeline. The times are in
+ * milliseconds and taken from a histogram with about 12% resolution.
+ * </p>
+ */
+public interface StageMetricsMBean {
+  /**
+   * @return long, the number of images the stage processed
+   */
+  long getCount();
+
+  /**
+   * @return double, the summed time of the stage
+   */
+  double getTotalMillis();
+
+  /**
+   * @return double, the mean time per image
+   */
+  double getMeanMillis();
+
+  /**
+   * @return double, the median time per image
+   */
+  double getP50Millis();
+
+  /**
+   * @return double, the time 99% of the images stay below
+   */
+  double getP99Millis();
+
+  /**
+   * @return double, the longest time of an image
+   */
+  double getMaxMillis();
+
+  /**
+   * start counting from zero
+   */
+  void reset();
+}
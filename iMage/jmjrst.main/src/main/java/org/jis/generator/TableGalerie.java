@@ -17,6 +17,7 @@ package org.jis.generator;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Vector;
 
@@ -39,6 +40,8 @@ public class TableGalerie {
   private File         directory;
   private Main         m;
   private Options      o;
+  // bytes written by the current phase
+  private long         written = 0;
 
   /**
    * @param main
@@ -97,12 +100,18 @@ public class TableGalerie {
     m.p_monitor.setMillisToPopup(1);
     m.p_monitor.setProgress(1);
 
-    Thread t = new Thread()
+    Runnable t = new Runnable()
     {
       public void run()
       {
         m.status.setStatusOn();
+        GalleryEvent event = new GalleryEvent("table", GalleryEvent.ASSETS, directory);
+        written = 0;
         createCSS();
+        event.finish(images.length, written);
+
+        event = new GalleryEvent("table", GalleryEvent.HTML, directory);
+        written = 0;
         StringBuilder sb = new StringBuilder();
         sb.append(getHeader(o.getGallerieTitle(), true));
 
@@ -157,7 +166,7 @@ public class TableGalerie {
 
           // generate small image
           out_s = new File(small, images[i].getName());
-          elements.add(new Element(i, images[i], 159, 119, small));
+          ImageTarget target_s = new ImageTarget(159, 119, small);
 
           try
           {
@@ -172,7 +181,7 @@ public class TableGalerie {
 
           // generate medium image
           out_m = new File(medium, images[i].getName());
-          elements.add(new Element(i, images[i], 450, 338, medium));
+          ImageTarget target_m = new ImageTarget(450, 338, medium);
 
           try
           {
@@ -187,7 +196,10 @@ public class TableGalerie {
 
           // generate big image
           out_b = new File(big, images[i].getName());
-          elements.add(new Element(i, images[i], o.getHmax(), o.getVmax(), big));
+          ImageTarget target_b = new ImageTarget(o.getHmax(), o.getVmax(), big);
+
+          // all sizes of the image are rendered from one decode
+          elements.add(new Element(i, images[i], target_s, target_m, target_b));
 
           if (i == 0) createPreview(i, medium, out_m.getName(), out_b.getName(), false, true);
           else if (i == (images.length - 1)) createPreview(i, medium, out_m.getName(), out_b.getName(), true, false);
@@ -265,8 +277,10 @@ public class TableGalerie {
               String index = "index.html";
               if (page > 1) index = "index" + page + ".html";
               FileOutputStream fos = new FileOutputStream(new File(directory, index));
-              fos.write(sb.toString().getBytes());
+              byte[] data = sb.toString().getBytes();
+              fos.write(data);
               fos.close();
+              written += data.length;
               if ((i + 1) == max)
               {
                 try
@@ -319,37 +333,41 @@ public class TableGalerie {
           System.out.println(ls + images.length + m.mes.getString("Generator.46") + ls);
         }
         
+        event.finish(images.length, written);
+
         Element[] els = new Element[elements.size()];
+        // only the images which are out of date are generated again
+        BuildManifest manifest = new BuildManifest(directory);
+        manifest.removeStale();
+
         Producer producer = new Producer(m,elements.toArray(els),"");
-        Thread producerThread = new Thread(producer);
-        int cpus = Runtime.getRuntime().availableProcessors();
-        Thread consumerThreads[] = new Thread[cpus];
-        for (int i = 0; i < cpus; i++)
+        ImagePipeline pipeline = new ImagePipeline(producer, m, null, manifest);
+
+        JobReport report = o.isJobReport() ? new JobReport("gallery") : null;
+        pipeline.setReport(report);
+
+        // a cancel of the progress monitor interrupts the running job
+        event = new GalleryEvent("table", GalleryEvent.IMAGES, directory);
+        new ImageJob(producer, pipeline).start().waitFor(m.p_monitor);
+        event.finish(images.length, 0);
+        if (report != null) try
         {
-          consumerThreads[i] = new Thread(new Consumer(producer,m,false,null)); 
+          report.write(directory);
         }
-
-        producerThread.start();
-        for (int i = 0; i < cpus; i++)
+        catch (IOException e)
         {
-          consumerThreads[i].start(); 
+          e.printStackTrace();
         }
 
-        try {
-          producerThread.join();
-          for (int i = 0; i < cpus; i++)
-          {
-            consumerThreads[i].join(); 
-          }
-        } catch (InterruptedException ignore) {}
-
 
         
+        manifest.save();
+
         m.status.setStatusOff();
         m.p_monitor.close();
       }
     };
-    t.start();
+    ImageJobExecutor.get().execute(t);
 
   }
 
@@ -390,8 +408,10 @@ public class TableGalerie {
     try
     {
       FileOutputStream fos = new FileOutputStream(new File(file, "image" + t + ".html"));
-      fos.write(sb.toString().getBytes());
+      byte[] data = sb.toString().getBytes();
+      fos.write(data);
       fos.close();
+      written += data.length;
     }
     catch (Exception e)
     {
@@ -480,8 +500,10 @@ public class TableGalerie {
     try
     {
       FileOutputStream fos = new FileOutputStream(new File(directory, "styles.css"));
-      fos.write(sb.toString().getBytes());
+      byte[] data = sb.toString().getBytes();
+      fos.write(data);
       fos.close();
+      written += data.length;
     }
     catch (Exception e)
     {
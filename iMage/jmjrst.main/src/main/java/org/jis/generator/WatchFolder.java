@@ -0,0 +1,409 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.generator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * Watches input directories and their subdirectories and generates every new
+ * or changed JPEG into the mirrored output directory. A file is taken only
+ * when it got no events and kept its size and modification time for a quiet
+ * period, so files which are still copied are not read half written.
+ * </p>
+ * <p>
+ * The images are generated on the {@link ImageJobExecutor}, not more than
+ * there are cores at the same time. The {@link BuildManifest} of the output
+ * directory skips images which are up to date, so the JPEGs which are already
+ * in the directories when the watch starts are generated only once. The
+ * progress is printed as JSON lines like the {@link BatchGenerator} does.
+ * </p>
+ */
+public class WatchFolder implements Runnable, Closeable {
+  private final BatchGenerator           batch;
+  private final Path[]                   roots;
+  private final Path                     output;
+  private final int                      width;
+  private final int                      height;
+  private final String                   praefix;
+  private final long                     quiet;
+  private final int                      threads  = Runtime.getRuntime().availableProcessors();
+  private final Semaphore                slots    = new Semaphore(threads);
+  private final BuildManifest            manifest;
+  private final AtomicBoolean            dirty    = new AtomicBoolean();
+  private final WatchService             watcher;
+  private final ScheduledExecutorService timer;
+  // the watched directory and its root of every key
+  private final Map<WatchKey, Path[]>    keys     = new HashMap<WatchKey, Path[]>();
+  // files with events, which are not quiet yet
+  private final Map<Path, Pending>       pending  = new HashMap<Path, Pending>();
+  private final Set<Path>                working  = new HashSet<Path>();
+  private volatile boolean               closed   = false;
+
+  /**
+   * @param generator
+   *          Generator, generates the single images
+   * @param inputs
+   *          File[], the watched directories
+   * @param output
+   *          File, the root of the output tree
+   * @param width
+   *          int, max. width of the images
+   * @param height
+   *          int, max. height of the images
+   * @param praefix
+   *          String, praefix for the filenames of the scaled images
+   * @param quiet
+   *          long, milliseconds a file must not change before it is taken
+   * @param out
+   *          PrintStream, receives the JSON lines, null for none
+   * @throws IOException
+   */
+  public WatchFolder(Generator generator, File[] inputs, File output, int width, int height, String praefix, long quiet, PrintStream out) throws IOException {
+    super();
+    this.batch = new BatchGenerator(generator, out, threads);
+    this.output = output.toPath().toAbsolutePath().normalize();
+    this.width = width;
+    this.height = height;
+    this.praefix = praefix;
+    this.quiet = Math.max(1, quiet);
+
+    output.mkdirs();
+    this.manifest = new BuildManifest(output);
+    this.watcher = FileSystems.getDefault().newWatchService();
+    this.roots = new Path[ inputs.length];
+    for (int i = 0; i < inputs.length; i++)
+    {
+      roots[i] = inputs[i].toPath().toAbsolutePath().normalize();
+      register(roots[i], roots[i]);
+    }
+
+    this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "jmjrst-watch");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * <p>
+   * watch until the watch is closed
+   * </p>
+   */
+  public void run()
+  {
+    synchronized (keys)
+    {
+      batch.print("{\"event\":\"watch\",\"dirs\":" + keys.size() + ",\"output\":" + BatchGenerator.quote(output.toString()) + "}");
+    }
+    // the images which are already there are quiet, unless they are written
+    for (Path root : roots)
+      scan(root, root, 0);
+    timer.scheduleWithFixedDelay(new Runnable()
+    {
+      public void run()
+      {
+        tick();
+      }
+    }, 0, Math.max(10, quiet / 4), TimeUnit.MILLISECONDS);
+
+    while (!closed)
+    {
+      WatchKey key;
+      try
+      {
+        key = watcher.take();
+      }
+      catch (InterruptedException e)
+      {
+        break;
+      }
+      catch (ClosedWatchServiceException e)
+      {
+        break;
+      }
+
+      Path[] watched;
+      synchronized (keys)
+      {
+        watched = keys.get(key);
+      }
+      if (watched == null) continue;
+      Path root = watched[0];
+
+      for (WatchEvent<?> event : key.pollEvents())
+      {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+        {
+          // events were lost, look at the whole tree again
+          scan(root, root, System.currentTimeMillis());
+          continue;
+        }
+        Path path = watched[1].resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+        {
+          // files may be in the directory before it is registered
+          register(root, path);
+          scan(root, path, System.currentTimeMillis());
+        }
+        else if (BatchGenerator.isJpeg(path.toFile())) touch(root, path, System.currentTimeMillis());
+      }
+
+      if (!key.reset())
+      {
+        synchronized (keys)
+        {
+          keys.remove(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * stop watching, wait for the images in work and save the manifest
+   * </p>
+   */
+  public void close() throws IOException
+  {
+    closed = true;
+    watcher.close();
+    timer.shutdown();
+    try
+    {
+      timer.awaitTermination(1, TimeUnit.MINUTES);
+      slots.acquire(threads);
+      slots.release(threads);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    manifest.save();
+  }
+
+  private void register(final Path root, Path dir)
+  {
+    try
+    {
+      Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+      {
+        @Override
+        public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException
+        {
+          // the output inside an input is not watched
+          if (!d.equals(root) && d.equals(output)) return FileVisitResult.SKIP_SUBTREE;
+          WatchKey key = d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+          synchronized (keys)
+          {
+            keys.put(key, new Path[] { root, d });
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e)
+        {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    catch (IOException e)
+    {
+      System.err.println("Can't watch " + dir + ": " + e.getMessage());
+    }
+  }
+
+  private void scan(Path root, Path dir, long time)
+  {
+    try
+    {
+      for (File file : BatchGenerator.collect(dir.toFile(), output.toFile()))
+        touch(root, file.toPath().toAbsolutePath().normalize(), time);
+    }
+    catch (IOException e)
+    {
+      System.err.println("Can't scan " + dir + ": " + e.getMessage());
+    }
+  }
+
+  private void touch(Path root, Path file, long time)
+  {
+    // an image generated into its own directory is no new input
+    boolean inPlace = output.resolve(root.relativize(file.getParent())).equals(file.getParent());
+    if (inPlace && file.getFileName().toString().startsWith(praefix)) return;
+
+    synchronized (pending)
+    {
+      Pending p = pending.get(file);
+      if (p == null)
+      {
+        p = new Pending(root);
+        pending.put(file, p);
+      }
+      // with an event the file is observed once more, a file of the first
+      // scan is quiet when it was not modified for the quiet period
+      if (time > 0)
+      {
+        p.event = time;
+        p.size = -1;
+      }
+      else
+      {
+        p.size = file.toFile().length();
+        p.modified = file.toFile().lastModified();
+        p.event = p.modified;
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * take the files which are quiet and start their images
+   * </p>
+   */
+  private void tick()
+  {
+    long now = System.currentTimeMillis();
+    ArrayList<Path> ready = new ArrayList<Path>();
+    ArrayList<Path> readyRoots = new ArrayList<Path>();
+    synchronized (pending)
+    {
+      for (Iterator<Map.Entry<Path, Pending>> i = pending.entrySet().iterator(); i.hasNext();)
+      {
+        Map.Entry<Path, Pending> e = i.next();
+        Pending p = e.getValue();
+        File file = e.getKey().toFile();
+        if (now - p.event < quiet) continue;
+        if (!file.isFile())
+        {
+          i.remove();
+          continue;
+        }
+
+        long size = file.length();
+        long modified = file.lastModified();
+        synchronized (working)
+        {
+          if (size > 0 && size == p.size && modified == p.modified && !working.contains(e.getKey()))
+          {
+            working.add(e.getKey());
+            ready.add(e.getKey());
+            readyRoots.add(p.root);
+            i.remove();
+            continue;
+          }
+        }
+        // still written, wait for another quiet period
+        p.size = size;
+        p.modified = modified;
+        p.event = now;
+      }
+    }
+
+    for (int i = 0; i < ready.size() && !closed; i++)
+      generate(readyRoots.get(i), ready.get(i));
+    if (dirty.getAndSet(false)) manifest.save();
+  }
+
+  private void generate(Path root, final Path path)
+  {
+    String relative = root.relativize(path).toString().replace(File.separatorChar, '/');
+    File dir = output.resolve(root.relativize(path)).getParent().toFile();
+    ImageTarget target = new ImageTarget(width, height, dir);
+    final String params = BuildManifest.params(target, praefix);
+    if (manifest.isUpToDate(path.toFile(), target.file(path.toFile(), praefix), params))
+    {
+      done(path);
+      batch.print("{\"event\":\"skipped\",\"file\":" + BatchGenerator.quote(relative) + "}");
+      return;
+    }
+
+    try
+    {
+      batch.submit(new BatchGenerator.Image(path.toFile(), dir, relative)
+      {
+        void written(File out) throws IOException
+        {
+          manifest.record(file, out, params);
+          dirty.set(true);
+        }
+
+        void done(boolean ok)
+        {
+          WatchFolder.this.done(path);
+        }
+      }, slots, width, height, praefix);
+    }
+    catch (InterruptedException e)
+    {
+      done(path);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void done(Path file)
+  {
+    synchronized (working)
+    {
+      working.remove(file);
+    }
+  }
+
+  /**
+   * a file with events and its last observed state
+   */
+  private static class Pending {
+    final Path root;
+    long       event;
+    long       size     = -1;
+    long       modified = -1;
+
+    Pending(Path root) {
+      this.root = root;
+    }
+  }
+}
@@ -40,6 +40,8 @@ public class Options implements Serializable {
   public static final int      MODUS_QUALITY       = 2;
   public static final int      MODUS_DEFAULT       = 1;
   public static final int      MODUS_SPEED         = 0;
+  public static final int      ROTATE_PIXELS       = 0;
+  public static final int      ROTATE_EXIF         = 1;
 
   private final String         uh                  = System.getProperty("user.home");
   private File                 f                   = new File("options.properties");
@@ -71,6 +73,21 @@ public class Options implements Serializable {
   private boolean              textbox             = false;
   private boolean              antialiasing        = true;
   private boolean              copyMetadata        = true;
+  private int                  outputBufferSize    = 64 * 1024;                                         // Bytes
+  private boolean              cache               = false;
+  private String               cacheDir            = new File(uh, ".jmjrst" + File.separator + "cache").getPath();
+  private int                  cacheSize           = 512;                                               // MB
+  private int                  memoryBudget        = 0;                                                 // MB, 0 = 60% of the heap
+  private int                  logLines            = 5000;
+  private boolean              logFile             = false;
+  private String               logDir              = new File(uh, ".jmjrst" + File.separator + "log").getPath();
+  private int                  logFileSize         = 10;                                                // MB
+  private int                  logFiles            = 5;
+  private int                  rotateMode          = ROTATE_PIXELS;
+  private int                  watchQuiet          = 2000;                                              // ms
+  private boolean              jobReport           = true;
+  private boolean              stripGps            = false;
+  private boolean              stripThumbnail      = false;
 
   private Options() {
     super();
@@ -113,6 +130,23 @@ public class Options implements Serializable {
       {
         saveOptions();
       }
+
+      // options of later versions, the defaults are kept if they are missing
+      if (p.getProperty("outputBufferSize") != null) outputBufferSize = Integer.parseInt(p.getProperty("outputBufferSize"));
+      if (p.getProperty("cache") != null) cache = Boolean.parseBoolean(p.getProperty("cache"));
+      if (p.getProperty("cacheDir") != null) cacheDir = p.getProperty("cacheDir");
+      if (p.getProperty("cacheSize") != null) cacheSize = Integer.parseInt(p.getProperty("cacheSize"));
+      if (p.getProperty("memoryBudget") != null) memoryBudget = Integer.parseInt(p.getProperty("memoryBudget"));
+      if (p.getProperty("logLines") != null) logLines = Integer.parseInt(p.getProperty("logLines"));
+      if (p.getProperty("logFile") != null) logFile = Boolean.parseBoolean(p.getProperty("logFile"));
+      if (p.getProperty("logDir") != null) logDir = p.getProperty("logDir");
+      if (p.getProperty("logFileSize") != null) logFileSize = Integer.parseInt(p.getProperty("logFileSize"));
+      if (p.getProperty("logFiles") != null) logFiles = Integer.parseInt(p.getProperty("logFiles"));
+      if (p.getProperty("rotateMode") != null) rotateMode = Integer.parseInt(p.getProperty("rotateMode"));
+      if (p.getProperty("watchQuiet") != null) watchQuiet = Integer.parseInt(p.getProperty("watchQuiet"));
+      if (p.getProperty("jobReport") != null) jobReport = Boolean.parseBoolean(p.getProperty("jobReport"));
+      if (p.getProperty("stripGps") != null) stripGps = Boolean.parseBoolean(p.getProperty("stripGps"));
+      if (p.getProperty("stripThumbnail") != null) stripThumbnail = Boolean.parseBoolean(p.getProperty("stripThumbnail"));
     }
     catch (Exception e)
     {
@@ -173,6 +207,21 @@ public class Options implements Serializable {
       p.setProperty("copyright_r", "" + copyright_r);
       p.setProperty("copyright_g", "" + copyright_g);
       p.setProperty("copyright_b", "" + copyright_b);
+      p.setProperty("outputBufferSize", "" + outputBufferSize);
+      p.setProperty("cache", "" + cache);
+      p.setProperty("cacheDir", "" + cacheDir);
+      p.setProperty("cacheSize", "" + cacheSize);
+      p.setProperty("memoryBudget", "" + memoryBudget);
+      p.setProperty("logLines", "" + logLines);
+      p.setProperty("logFile", "" + logFile);
+      p.setProperty("logDir", "" + logDir);
+      p.setProperty("logFileSize", "" + logFileSize);
+      p.setProperty("logFiles", "" + logFiles);
+      p.setProperty("rotateMode", "" + rotateMode);
+      p.setProperty("watchQuiet", "" + watchQuiet);
+      p.setProperty("jobReport", "" + jobReport);
+      p.setProperty("stripGps", "" + stripGps);
+      p.setProperty("stripThumbnail", "" + stripThumbnail);
 
       p.storeToXML(new FileOutputStream(f), new Date(System.currentTimeMillis()).toString());
     }
@@ -467,4 +516,189 @@ public class Options implements Serializable {
     this.copyMetadata = copyMetadata;
   }
 
+  public int getOutputBufferSize()
+  {
+    return outputBufferSize;
+  }
+
+  public void setOutputBufferSize(int outputBufferSize)
+  {
+    this.outputBufferSize = outputBufferSize;
+    saveOptions();
+  }
+
+  public boolean isCache()
+  {
+    return cache;
+  }
+
+  public void setCache(boolean cache)
+  {
+    this.cache = cache;
+    saveOptions();
+  }
+
+  public String getCacheDir()
+  {
+    return cacheDir;
+  }
+
+  public void setCacheDir(String cacheDir)
+  {
+    this.cacheDir = cacheDir;
+    saveOptions();
+  }
+
+  public int getCacheSize()
+  {
+    return cacheSize;
+  }
+
+  public void setCacheSize(int cacheSize)
+  {
+    this.cacheSize = cacheSize;
+    saveOptions();
+  }
+
+  public int getMemoryBudget()
+  {
+    return memoryBudget;
+  }
+
+  public void setMemoryBudget(int memoryBudget)
+  {
+    this.memoryBudget = memoryBudget;
+    saveOptions();
+  }
+
+  public int getLogLines()
+  {
+    return logLines;
+  }
+
+  public void setLogLines(int logLines)
+  {
+    this.logLines = logLines;
+    saveOptions();
+  }
+
+  public boolean isLogFile()
+  {
+    return logFile;
+  }
+
+  public void setLogFile(boolean logFile)
+  {
+    this.logFile = logFile;
+    saveOptions();
+  }
+
+  public String getLogDir()
+  {
+    return logDir;
+  }
+
+  public void setLogDir(String logDir)
+  {
+    this.logDir = logDir;
+    saveOptions();
+  }
+
+  public int getLogFileSize()
+  {
+    return logFileSize;
+  }
+
+  public void setLogFileSize(int logFileSize)
+  {
+    this.logFileSize = logFileSize;
+    saveOptions();
+  }
+
+  public int getLogFiles()
+  {
+    return logFiles;
+  }
+
+  public void setLogFiles(int logFiles)
+  {
+    this.logFiles = logFiles;
+    saveOptions();
+  }
+
+  public int getRotateMode()
+  {
+    return rotateMode;
+  }
+
+  /**
+   * @param rotateMode
+   *          int, {@link #ROTATE_PIXELS} rewrites the image,
+   *          {@link #ROTATE_EXIF} only changes the EXIF orientation
+   */
+  public void setRotateMode(int rotateMode)
+  {
+    this.rotateMode = rotateMode;
+    saveOptions();
+  }
+
+  /**
+   * @return int, milliseconds a watched file must not change before it is
+   *         generated
+   */
+  public int getWatchQuiet()
+  {
+    return watchQuiet;
+  }
+
+  public void setWatchQuiet(int watchQuiet)
+  {
+    this.watchQuiet = watchQuiet;
+    saveOptions();
+  }
+
+  /**
+   * @return boolean, true if a performance report is written into the output
+   *         directory of a job
+   */
+  public boolean isJobReport()
+  {
+    return jobReport;
+  }
+
+  public void setJobReport(boolean jobReport)
+  {
+    this.jobReport = jobReport;
+    saveOptions();
+  }
+
+  /**
+   * @return boolean, true if the GPS data is removed from the copied metadata
+   */
+  public boolean isStripGps()
+  {
+    return stripGps;
+  }
+
+  public void setStripGps(boolean stripGps)
+  {
+    this.stripGps = stripGps;
+    saveOptions();
+  }
+
+  /**
+   * @return boolean, true if the EXIF thumbnail is removed from the copied
+   *         metadata
+   */
+  public boolean isStripThumbnail()
+  {
+    return stripThumbnail;
+  }
+
+  public void setStripThumbnail(boolean stripThumbnail)
+  {
+    this.stripThumbnail = stripThumbnail;
+    saveOptions();
+  }
+
 }
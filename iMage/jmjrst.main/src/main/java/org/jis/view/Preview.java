@@ -24,11 +24,15 @@ import java.net.URL;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
 import org.jis.Main;
 import org.jis.generator.Generator;
+import org.jis.generator.ImageJobExecutor;
+import org.jis.options.Options;
 
 public class Preview extends JPanel {
   private static final long serialVersionUID = 5219232341968203639L;
@@ -61,6 +65,55 @@ public class Preview extends JPanel {
     validate();
   }
 
+  /**
+   * <p>
+   * rotate the preview. In the EXIF rotation mode the file is rotated as well,
+   * so the generated images are rotated. {@link Generator#rotateFile} turns the
+   * pixels of a file without orientation tag, which takes too long for the
+   * event thread, so the file is rotated on the {@link ImageJobExecutor} and
+   * the preview follows only if the file was rotated.
+   * </p>
+   * 
+   * @param degrees
+   *          int, clockwise, 90 or 270
+   */
+  private void rotate(final int degrees)
+  {
+    final Thumbnail t = thumb;
+    if (Options.getInstance().getRotateMode() != Options.ROTATE_EXIF || t.getFile() == null)
+    {
+      rotateThumb(t, degrees);
+      return;
+    }
+
+    rotate_links.setEnabled(false);
+    rotate_rechts.setEnabled(false);
+    ImageJobExecutor.get().execute(new Runnable()
+    {
+      public void run()
+      {
+        final boolean rotated = main.generator.rotateFile(t.getFile(), degrees);
+        SwingUtilities.invokeLater(new Runnable()
+        {
+          public void run()
+          {
+            rotate_links.setEnabled(true);
+            rotate_rechts.setEnabled(true);
+            if (rotated) rotateThumb(t, degrees);
+            else JOptionPane.showMessageDialog(main, main.mes.getString("Preview.2") + " " + t.getFile().getName(),
+                main.mes.getString("Preview.3"), JOptionPane.ERROR_MESSAGE);
+          }
+        });
+      }
+    });
+  }
+
+  private void rotateThumb(Thumbnail t, int degrees)
+  {
+    t.setImage(main.generator.rotateImage(t.getImage(), degrees == 90 ? Generator.ROTATE_90 : Generator.ROTATE_270));
+    t.repaint();
+  }
+
   public Preview(Main m) {
     super();
     setPreferredSize(new Dimension(220, 250));
@@ -87,8 +140,7 @@ public class Preview extends JPanel {
     {
       public void actionPerformed(ActionEvent arg0)
       {
-        thumb.setImage(main.generator.rotateImage(thumb.getImage(), Generator.ROTATE_270));
-        thumb.repaint();
+        rotate(270);
       }
     });
 
@@ -101,8 +153,7 @@ public class Preview extends JPanel {
     {
       public void actionPerformed(ActionEvent arg0)
       {
-        thumb.setImage(main.generator.rotateImage(thumb.getImage(), Generator.ROTATE_90));
-        thumb.repaint();
+        rotate(90);
       }
     });
    setLayout(new BorderLayout());
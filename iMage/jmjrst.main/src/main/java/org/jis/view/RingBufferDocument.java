@@ -0,0 +1,76 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.view;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+
+/**
+ * <p>
+ * The document of the output pane. It keeps only the last lines, so a long
+ * batch doesn't fill the heap with styled text. Everything which is inserted
+ * can be copied to a {@link RotatingLog}.
+ * </p>
+ */
+public class RingBufferDocument extends DefaultStyledDocument {
+  private static final long serialVersionUID = -4418064571364335862L;
+
+  private final int         maxLines;
+  private final RotatingLog log;
+
+  /**
+   * @param maxLines
+   *          int, the number of lines which are kept
+   * @param log
+   *          RotatingLog, the log for all inserted text or null
+   */
+  public RingBufferDocument(int maxLines, RotatingLog log) {
+    super();
+    this.maxLines = Math.max(1, maxLines);
+    this.log = log;
+  }
+
+  @Override
+  public void insertString(int offs, String str, AttributeSet a) throws BadLocationException
+  {
+    super.insertString(offs, str, a);
+    if (log != null && str != null) log.write(str);
+    trim();
+  }
+
+  /**
+   * <p>
+   * remove the oldest lines. Up to a tenth more lines than the maximum are
+   * kept, so the text is moved once for many lines and not for every insert.
+   * </p>
+   */
+  private void trim() throws BadLocationException
+  {
+    Element root = getDefaultRootElement();
+    int excess = root.getElementCount() - maxLines;
+    if (excess > maxLines / 10) remove(0, root.getElement(excess - 1).getEndOffset());
+  }
+
+  /**
+   * @return int, the number of lines which are kept
+   */
+  public int getMaxLines()
+  {
+    return maxLines;
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2007 - 2009 Johannes Geppert 
+ * 
+ * Licensed under the GPL, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * 
+ * You may obtain a copy of the License at
+ * http://www.fsf.org/licensing/licenses/gpl.txt 
+ * 
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on 
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the 
+ * specific language governing permissions and limitations under the License.
+ */
+package org.jis.view;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A log file which is renamed to name.1 when it reaches its maximal size, the
+ * older files are shifted to name.2, name.3 ... and the oldest one is deleted.
+ * </p>
+ * <p>
+ * The text is buffered and written to the disk once a second, on rotation and
+ * on close, so appending is cheap on the event dispatch thread.
+ * </p>
+ */
+public class RotatingLog {
+  private static final long        FLUSH_MILLIS = 1000;
+
+  private final File               dir;
+  private final String             name;
+  private final long               maxBytes;
+  private final int                files;
+  private Writer                   writer       = null;
+  private long                     size         = 0;
+  private boolean                  failed       = false;
+  private boolean                  dirty        = false;
+  private ScheduledExecutorService timer        = null;
+
+  /**
+   * @param dir
+   *          File, the directory of the log files
+   * @param name
+   *          String, the name of the current log file
+   * @param maxBytes
+   *          long, the size at which the file is rotated
+   * @param files
+   *          int, the number of old files which are kept
+   */
+  public RotatingLog(File dir, String name, long maxBytes, int files) {
+    super();
+    this.dir = dir;
+    this.name = name;
+    this.maxBytes = Math.max(1024, maxBytes);
+    this.files = Math.max(0, files);
+  }
+
+  /**
+   * @param text
+   *          String, the text which is appended to the log
+   */
+  public synchronized void write(String text)
+  {
+    if (failed) return;
+    try
+    {
+      byte[] bytes = text.getBytes(Charset.forName("UTF-8"));
+      if (writer == null) open();
+      if (size > 0 && size + bytes.length > maxBytes)
+      {
+        rotate();
+        open();
+      }
+      writer.write(text);
+      size += bytes.length;
+      dirty = true;
+    }
+    catch (IOException e)
+    {
+      fail(e);
+    }
+  }
+
+  /**
+   * <p>
+   * write the buffered text to the disk
+   * </p>
+   */
+  public synchronized void flush()
+  {
+    if (!dirty || writer == null) return;
+    try
+    {
+      writer.flush();
+      dirty = false;
+    }
+    catch (IOException e)
+    {
+      fail(e);
+    }
+  }
+
+  /**
+   * <p>
+   * close the current log file
+   * </p>
+   */
+  public synchronized void close()
+  {
+    closeWriter();
+    if (timer != null) timer.shutdown();
+    timer = null;
+  }
+
+  /**
+   * @return File, the current log file
+   */
+  public File getFile()
+  {
+    return new File(dir, name);
+  }
+
+  private void fail(IOException e)
+  {
+    // the GUI works without the log
+    System.err.println(e.getMessage());
+    failed = true;
+  }
+
+  private void closeWriter()
+  {
+    try
+    {
+      if (writer != null) writer.close();
+    }
+    catch (IOException e)
+    {
+      System.err.println(e.getMessage());
+    }
+    writer = null;
+    dirty = false;
+  }
+
+  private void open() throws IOException
+  {
+    dir.mkdirs();
+    File f = getFile();
+    size = f.length();
+    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f, true), Charset.forName("UTF-8")));
+    if (timer == null)
+    {
+      timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+      {
+        public Thread newThread(Runnable r)
+        {
+          Thread t = new Thread(r, "jmjrst-log");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+      timer.scheduleWithFixedDelay(new Runnable()
+      {
+        public void run()
+        {
+          flush();
+        }
+      }, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void rotate()
+  {
+    closeWriter();
+    new File(dir, name + "." + files).delete();
+    for (int i = files - 1; i >= 1; i--)
+      new File(dir, name + "." + i).renameTo(new File(dir, name + "." + (i + 1)));
+    if (files > 0) getFile().renameTo(new File(dir, name + ".1"));
+    else getFile().delete();
+    size = 0;
+  }
+}
@@ -32,6 +32,8 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
 
+import org.jis.generator.ExifOrientation;
+
 public class Thumbnail extends JPanel {
   private static final long serialVersionUID = 8236547612309540341L;
 
@@ -46,7 +48,7 @@ public class Thumbnail extends JPanel {
     this.maxHeight = maxHeight;
     if (filename == null) throw new IllegalArgumentException("Argument filename is null.");
     file = new File(filename);
-    this.previewImage = ImageIO.read(file);
+    this.previewImage = ExifOrientation.apply(ImageIO.read(file), ExifOrientation.read(file));
     initialize();
   }
   
@@ -54,7 +56,8 @@ public class Thumbnail extends JPanel {
     super();
     this.maxWidth = maxWidth;
     this.maxHeight = maxHeight;
-    this.previewImage = ImageIO.read(file);
+    this.file = file;
+    this.previewImage = ExifOrientation.apply(ImageIO.read(file), ExifOrientation.read(file));
     initialize();
   }
 
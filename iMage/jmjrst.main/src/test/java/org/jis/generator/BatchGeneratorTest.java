@@ -0,0 +1,111 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BatchGenerator}.
+ */
+public class BatchGeneratorTest {
+  private static final File TEST_DIR = new File("target/testOut/BatchGeneratorTest");
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+
+  private File input;
+  private File output;
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * An input tree with two levels of subdirectories.
+   */
+  @Before
+  public void setUp() throws IOException {
+    delete(TEST_DIR);
+    input = new File(TEST_DIR, "in");
+    output = new File(TEST_DIR, "out");
+    new File(input, "a/b").mkdirs();
+    output.mkdirs();
+    for (String name : new String[] { "one.jpg", "a/two.JPG", "a/b/three.jpeg" }) {
+      Files.copy(IMAGE_FILE.toPath(), new File(input, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    Files.write(new File(input, "a/notes.txt").toPath(), "no image".getBytes("UTF-8"));
+  }
+
+  /**
+   * The tree is mirrored and every image is reported as a JSON line.
+   */
+  @Test
+  public void testTree() throws Exception {
+    ByteArrayOutputStream lines = new ByteArrayOutputStream();
+    int failed = new BatchGenerator(new Generator(null, 0), new PrintStream(lines, true, "UTF-8"), 4).run(input,
+        output, 100, 100, "t_");
+    assertEquals(0, failed);
+
+    assertTrue(new File(output, "t_one.jpg").isFile());
+    assertTrue(new File(output, "a/t_two.JPG").isFile());
+    assertTrue(new File(output, "a/b/t_three.jpeg").isFile());
+
+    String[] json = lines.toString("UTF-8").trim().split("\\r?\\n");
+    assertEquals(5, json.length);
+    assertTrue(json[0].startsWith("{\"event\":\"start\",\"files\":3,"));
+    for (int i = 1; i <= 3; i++) {
+      assertTrue(json[i], json[i].startsWith("{\"event\":\"image\","));
+      assertTrue(json[i], json[i].contains("\"status\":\"ok\""));
+    }
+    assertTrue(json[4].startsWith("{\"event\":\"done\",\"files\":3,\"failed\":0,"));
+  }
+
+  /**
+   * A broken image is counted and reported, the others are generated.
+   */
+  @Test
+  public void testBrokenImage() throws Exception {
+    Files.write(new File(input, "a/broken.jpg").toPath(), new byte[] { 1, 2, 3 });
+    ByteArrayOutputStream lines = new ByteArrayOutputStream();
+    int failed = new BatchGenerator(new Generator(null, 0), new PrintStream(lines, true, "UTF-8"), 2).run(input,
+        output, 100, 100, "t_");
+    assertEquals(1, failed);
+    assertTrue(lines.toString("UTF-8").contains("\"file\":\"a/broken.jpg\",\"status\":\"failed\""));
+    assertTrue(new File(output, "a/b/t_three.jpeg").isFile());
+  }
+
+  /**
+   * An output directory inside the input tree is not searched.
+   */
+  @Test
+  public void testOutputInsideInput() throws IOException {
+    File inner = new File(input, "out");
+    inner.mkdirs();
+    Files.copy(IMAGE_FILE.toPath(), new File(inner, "t_one.jpg").toPath());
+    List<File> files = BatchGenerator.collect(input, inner);
+    assertEquals(3, files.size());
+    assertEquals(4, BatchGenerator.collect(input, input).size());
+  }
+
+  /**
+   * Special characters of a file name are escaped.
+   */
+  @Test
+  public void testQuote() {
+    assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", BatchGenerator.quote("a\"b\\c\n\u0001"));
+  }
+}
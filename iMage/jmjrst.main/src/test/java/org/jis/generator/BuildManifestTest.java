@@ -0,0 +1,158 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BuildManifest}.
+ */
+public class BuildManifestTest {
+  private static final File TEST_DIR = new File("target/testOut/BuildManifestTest");
+
+  private File source;
+  private File output;
+
+  /**
+   * Create a source and an output file in an empty test directory.
+   * 
+   * @throws IOException
+   *           if the files can't be written
+   */
+  @Before
+  public void setUp() throws IOException {
+    TEST_DIR.mkdirs();
+    for (File f : TEST_DIR.listFiles()) {
+      f.delete();
+    }
+    source = new File(TEST_DIR, "source.jpg");
+    output = new File(TEST_DIR, "t_source.jpg");
+    Files.write(source.toPath(), new byte[] { 1, 2, 3 });
+    Files.write(output.toPath(), new byte[] { 4, 5 });
+  }
+
+  /**
+   * An image is up to date after it was recorded and the manifest survives a reload.
+   * 
+   * @throws IOException
+   *           if the source can't be read
+   */
+  @Test
+  public void testRecordAndReload() throws IOException {
+    BuildManifest manifest = new BuildManifest(TEST_DIR);
+    assertFalse(manifest.isUpToDate(source, output, "p"));
+    manifest.record(source, output, "p");
+    assertTrue(manifest.isUpToDate(source, output, "p"));
+    assertFalse(manifest.isUpToDate(source, output, "other"));
+    manifest.save();
+
+    assertTrue(BuildManifest.exists(TEST_DIR));
+    assertTrue(new BuildManifest(TEST_DIR).isUpToDate(source, output, "p"));
+  }
+
+  /**
+   * A touched source with the same content is still up to date, a changed one is not.
+   * 
+   * @throws IOException
+   *           if the source can't be written
+   */
+  @Test
+  public void testChangedSource() throws IOException {
+    BuildManifest manifest = new BuildManifest(TEST_DIR);
+    manifest.record(source, output, "p");
+
+    source.setLastModified(source.lastModified() - 10000);
+    assertTrue(manifest.isUpToDate(source, output, "p"));
+
+    Files.write(source.toPath(), new byte[] { 1, 2, 4 });
+    source.setLastModified(source.lastModified() - 20000);
+    assertFalse(manifest.isUpToDate(source, output, "p"));
+  }
+
+  /**
+   * A known hash is recorded instead of hashing the source again.
+   * 
+   * @throws IOException
+   *           if the source can't be read
+   */
+  @Test
+  public void testRecordWithHash() throws IOException {
+    BuildManifest manifest = new BuildManifest(TEST_DIR);
+    manifest.record(source, output, "p", ContentHash.of(new byte[] { 1, 2, 3 }));
+    source.setLastModified(source.lastModified() - 10000);
+    assertTrue(manifest.isUpToDate(source, output, "p"));
+
+    // the recorded hash decides for a touched source
+    manifest.record(source, output, "p", "other");
+    source.setLastModified(source.lastModified() - 10000);
+    assertFalse(manifest.isUpToDate(source, output, "p"));
+  }
+
+  /**
+   * The output of a deleted source is removed.
+   * 
+   * @throws IOException
+   *           if the source can't be read
+   */
+  @Test
+  public void testRemoveStale() throws IOException {
+    BuildManifest manifest = new BuildManifest(TEST_DIR);
+    manifest.record(source, output, "p");
+    source.delete();
+
+    assertEquals(1, manifest.removeStale());
+    assertFalse(output.exists());
+  }
+
+  /**
+   * Tabs in the source path and in the parameters, like in a copyright text,
+   * don't break the entry.
+   * 
+   * @throws IOException
+   *           if the source can't be written
+   */
+  @Test
+  public void testTabs() throws IOException {
+    File tabbed = new File(TEST_DIR, "a\tsource.jpg");
+    Files.write(tabbed.toPath(), new byte[] { 1, 2, 3 });
+    BuildManifest manifest = new BuildManifest(TEST_DIR);
+    manifest.record(tabbed, output, "text=(c)\tme");
+    manifest.save();
+
+    manifest = new BuildManifest(TEST_DIR);
+    assertTrue(manifest.isUpToDate(tabbed, output, "text=(c)\tme"));
+    assertFalse(manifest.isUpToDate(tabbed, output, "text=(c) me"));
+    assertEquals(0, manifest.removeStale());
+    assertTrue(output.exists());
+  }
+
+  /**
+   * An entry which can't be read is dropped, but its image is not deleted.
+   * 
+   * @throws IOException
+   *           if the manifest can't be written
+   */
+  @Test
+  public void testUnreadableEntry() throws IOException {
+    Properties entries = new Properties();
+    entries.setProperty(output.getName(), source.getAbsolutePath() + "\t3\tx");
+    try (OutputStream out = new FileOutputStream(new File(TEST_DIR, BuildManifest.FILE_NAME))) {
+      entries.storeToXML(out, null);
+    }
+
+    BuildManifest manifest = new BuildManifest(TEST_DIR);
+    assertFalse(manifest.isUpToDate(source, output, "p"));
+    assertEquals(0, manifest.removeStale());
+    assertTrue(output.exists());
+  }
+}
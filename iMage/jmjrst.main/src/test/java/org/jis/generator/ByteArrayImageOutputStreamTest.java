@@ -0,0 +1,85 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ByteArrayImageOutputStream}.
+ */
+public class ByteArrayImageOutputStreamTest {
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+
+  /**
+   * Writes beyond the initial array and a seek back end up in the array.
+   * 
+   * @throws IOException
+   *           never
+   */
+  @Test
+  public void testWriteAndSeek() throws IOException {
+    byte[] big = new byte[1500];
+    for (int i = 0; i < big.length; i++) {
+      big[i] = (byte) i;
+    }
+
+    ByteArrayImageOutputStream ios = new ByteArrayImageOutputStream(16);
+    ios.write(1);
+    ios.write(big);
+    ios.writeShort(0x0203);
+    assertEquals(1503, ios.length());
+    ios.seek(0);
+    ios.write(9);
+    assertEquals(1, ios.getStreamPosition());
+    assertEquals(big[0], (byte) ios.read());
+    ios.close();
+
+    byte[] expected = new byte[1503];
+    expected[0] = 9;
+    System.arraycopy(big, 0, expected, 1, big.length);
+    expected[1501] = 2;
+    expected[1502] = 3;
+    assertEquals(1503, ios.size());
+    assertArrayEquals(expected, ios.toByteArray());
+  }
+
+  /**
+   * An array of the written size is taken without a copy.
+   * 
+   * @throws IOException
+   *           never
+   */
+  @Test
+  public void testExactSize() throws IOException {
+    ByteArrayImageOutputStream ios = new ByteArrayImageOutputStream(16);
+    ios.write(new byte[16]);
+    assertSame(ios.buffer(), ios.toByteArray());
+  }
+
+  /**
+   * A JPEG written by ImageIO is read back.
+   * 
+   * @throws IOException
+   *           if the image can't be read
+   */
+  @Test
+  public void testJpeg() throws IOException {
+    BufferedImage image = ImageIO.read(IMAGE_FILE);
+    ByteArrayImageOutputStream ios = new ByteArrayImageOutputStream(1024);
+    ImageIO.write(image, "jpg", ios);
+    ios.close();
+
+    BufferedImage read = ImageIO.read(new ByteArrayInputStream(ios.toByteArray()));
+    assertEquals(image.getWidth(), read.getWidth());
+    assertEquals(image.getHeight(), read.getHeight());
+  }
+}
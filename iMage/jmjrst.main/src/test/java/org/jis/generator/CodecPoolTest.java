@@ -0,0 +1,145 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CodecPool}.
+ */
+public class CodecPoolTest {
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+
+  /**
+   * A released reader is handed out again on the same thread, without the
+   * input of the previous image.
+   *
+   * @throws IOException
+   *           if the test image can't be read
+   */
+  @Test
+  public void testReaderReuse() throws IOException {
+    CodecPool pool = CodecPool.get();
+    assertSame(pool, CodecPool.get());
+
+    ImageInputStream first = ImageIO.createImageInputStream(IMAGE_FILE);
+    ImageReader reader = pool.reader(first);
+    assertEquals(ImageIO.read(IMAGE_FILE).getWidth(), reader.getWidth(0));
+    pool.release(reader);
+    first.close();
+    assertNull(reader.getInput());
+
+    BufferedImage small = new BufferedImage(24, 16, BufferedImage.TYPE_INT_RGB);
+    ImageInputStream second = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg(small)));
+    ImageReader again = pool.reader(second);
+    try {
+      assertSame(reader, again);
+      assertSame(second, again.getInput());
+      assertEquals(24, again.getWidth(0));
+      assertEquals(16, again.read(0).getHeight());
+    } finally {
+      pool.release(again);
+      second.close();
+    }
+  }
+
+  /**
+   * The writer and the write parameter are the same on one thread, the
+   * output and the settings of the previous image are gone.
+   *
+   * @throws IOException
+   *           if the test image can't be encoded
+   */
+  @Test
+  public void testWriterReuse() throws IOException {
+    CodecPool pool = CodecPool.get();
+    ImageWriter writer = pool.writer();
+    JPEGImageWriteParam param = pool.writeParam(0.3f);
+
+    BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+    ByteArrayImageOutputStream out = new ByteArrayImageOutputStream(1024);
+    writer.setOutput(out);
+    param.setSourceRegion(new Rectangle(0, 0, 8, 8));
+    param.setSourceSubsampling(2, 2, 0, 0);
+    param.setDestinationOffset(new Point(4, 4));
+    param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+    param.setOptimizeHuffmanTables(false);
+    writer.write(null, new IIOImage(image, null, null), param);
+    pool.release(writer);
+    out.close();
+    assertNull(writer.getOutput());
+
+    assertSame(writer, pool.writer());
+    JPEGImageWriteParam again = pool.writeParam(0.9f);
+    assertSame(param, again);
+    assertEquals(0.9f, again.getCompressionQuality(), 0f);
+    assertEquals(ImageWriteParam.MODE_EXPLICIT, again.getCompressionMode());
+    assertNull(again.getSourceRegion());
+    assertEquals(1, again.getSourceXSubsampling());
+    assertEquals(1, again.getSourceYSubsampling());
+    assertEquals(new Point(), again.getDestinationOffset());
+    assertEquals(ImageWriteParam.MODE_COPY_FROM_METADATA, again.getProgressiveMode());
+    assertEquals(true, again.getOptimizeHuffmanTables());
+
+    BufferedImage read = ImageIO.read(new ByteArrayInputStream(jpeg(image)));
+    assertEquals(32, read.getWidth());
+    assertEquals(32, read.getHeight());
+  }
+
+  /**
+   * Every thread has its own pool and codecs.
+   *
+   * @throws InterruptedException
+   *           if the test is interrupted
+   */
+  @Test
+  public void testPerThread() throws InterruptedException {
+    final AtomicReference<CodecPool> other = new AtomicReference<CodecPool>();
+    final AtomicReference<ImageWriter> writer = new AtomicReference<ImageWriter>();
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        other.set(CodecPool.get());
+        writer.set(other.get().writer());
+      }
+    };
+    t.start();
+    t.join();
+
+    assertNotSame(CodecPool.get(), other.get());
+    assertNotSame(CodecPool.get().writer(), writer.get());
+  }
+
+  private static byte[] jpeg(BufferedImage image) throws IOException {
+    CodecPool pool = CodecPool.get();
+    ImageWriter writer = pool.writer();
+    ByteArrayImageOutputStream out = new ByteArrayImageOutputStream(1024);
+    try {
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(image, null, null), pool.writeParam(0.8f));
+    } finally {
+      pool.release(writer);
+      out.close();
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,94 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CopyrightStamp}.
+ */
+public class CopyrightStampTest {
+
+  private static BufferedImage background() {
+    BufferedImage image = new BufferedImage(400, 120, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.setRGB(x, y, (x % 256) << 16 | (y * 2) << 8 | 0x40);
+      }
+    }
+    return image;
+  }
+
+  private static int maxDifference(BufferedImage a, BufferedImage b) {
+    int max = 0;
+    for (int y = 0; y < a.getHeight(); y++) {
+      for (int x = 0; x < a.getWidth(); x++) {
+        int p = a.getRGB(x, y);
+        int q = b.getRGB(x, y);
+        for (int shift = 0; shift < 24; shift += 8) {
+          max = Math.max(max, Math.abs((p >> shift & 0xff) - (q >> shift & 0xff)));
+        }
+      }
+    }
+    return max;
+  }
+
+  private static void compare(Object antialiasing, int tolerance) {
+    String text = "(c) jmjrst 2026";
+    Color color = new Color(255, 200, 0);
+
+    BufferedImage direct = background();
+    Graphics2D g = direct.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+    g.setColor(color);
+    g.setFont(new Font("Helvetica", Font.BOLD, 24));
+    g.drawString(text, 24, 70);
+    g.dispose();
+
+    BufferedImage stamped = background();
+    g = stamped.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+    CopyrightStamp.get(text, 24, color, g.getRenderingHints()).draw(g, 24, 70);
+    g.dispose();
+
+    assertTrue(maxDifference(direct, background()) > 100);
+    assertTrue(maxDifference(direct, stamped) <= tolerance);
+  }
+
+  /**
+   * Without antialiasing the stamp sets the same pixels as the text.
+   */
+  @Test
+  public void testSameAsText() {
+    compare(RenderingHints.VALUE_ANTIALIAS_OFF, 0);
+  }
+
+  /**
+   * With antialiasing the edges differ only by the rounding of the blend.
+   */
+  @Test
+  public void testSameAsAntialiasedText() {
+    compare(RenderingHints.VALUE_ANTIALIAS_ON, 2);
+  }
+
+  /**
+   * A stamp is rendered once for a text, size, colour and hints.
+   */
+  @Test
+  public void testCached() {
+    RenderingHints hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    CopyrightStamp stamp = CopyrightStamp.get("text", 12, Color.WHITE, hints);
+    assertSame(stamp, CopyrightStamp.get("text", 12, new Color(255, 255, 255), (RenderingHints) hints.clone()));
+    assertTrue(stamp != CopyrightStamp.get("text", 13, Color.WHITE, hints));
+    assertTrue(stamp != CopyrightStamp.get("text", 12, Color.BLACK, hints));
+    assertEquals(stamp, CopyrightStamp.get("text", 12, Color.WHITE, hints));
+  }
+}
@@ -0,0 +1,93 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DerivedImageCache}.
+ */
+public class DerivedImageCacheTest {
+  private static final File TEST_DIR = new File("target/testOut/DerivedImageCacheTest");
+  private static final File CACHE_DIR = new File(TEST_DIR, "cache");
+
+  /**
+   * Start with an empty cache.
+   */
+  @Before
+  public void setUp() {
+    delete(TEST_DIR);
+    TEST_DIR.mkdirs();
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+  private static File file(String name, int size) throws IOException {
+    File file = new File(TEST_DIR, name);
+    Files.write(file.toPath(), new byte[size]);
+    return file;
+  }
+
+  /**
+   * A stored image is copied on a hit, an unknown key is a miss.
+   * 
+   * @throws IOException
+   *           if the test files can't be written
+   */
+  @Test
+  public void testStoreAndFetch() throws IOException {
+    DerivedImageCache cache = new DerivedImageCache(CACHE_DIR, 1000);
+    File generated = file("generated.jpg", 100);
+    String key = DerivedImageCache.key("abc", new ImageTarget(100, 100, TEST_DIR));
+    cache.store(key, generated);
+
+    File dest = new File(TEST_DIR, "dest.jpg");
+    assertTrue(cache.fetch(key, dest));
+    assertArrayEquals(Files.readAllBytes(generated.toPath()), Files.readAllBytes(dest.toPath()));
+    assertFalse(cache.fetch(DerivedImageCache.key("abd", new ImageTarget(100, 100, TEST_DIR)), dest));
+
+    // the cache is found again after a restart
+    assertTrue(new DerivedImageCache(CACHE_DIR, 1000).fetch(key, dest));
+  }
+
+  /**
+   * The least recently used image is evicted first.
+   * 
+   * @throws IOException
+   *           if the test files can't be written
+   */
+  @Test
+  public void testEviction() throws IOException {
+    DerivedImageCache cache = new DerivedImageCache(CACHE_DIR, 250);
+    String a = ContentHash.of("a");
+    String b = ContentHash.of("b");
+    String c = ContentHash.of("c");
+    File dest = new File(TEST_DIR, "dest.jpg");
+
+    cache.store(a, file("a.jpg", 100));
+    cache.store(b, file("b.jpg", 100));
+    assertTrue(cache.fetch(a, dest));
+    cache.store(c, file("c.jpg", 100));
+
+    assertEquals(200, cache.size());
+    assertTrue(cache.fetch(a, dest));
+    assertFalse(cache.fetch(b, dest));
+    assertTrue(cache.fetch(c, dest));
+  }
+}
@@ -0,0 +1,161 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.jis.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ExifOrientation}.
+ */
+public class ExifOrientationTest {
+  private static final File TEST_DIR = new File("target/testOut/ExifOrientationTest");
+
+  private File file;
+
+  /**
+   * Write a landscape JPEG of 64x32 pixels with a big endian EXIF orientation
+   * tag. The left half is red, the right half blue.
+   */
+  @Before
+  public void setUp() throws IOException {
+    TEST_DIR.mkdirs();
+    BufferedImage image = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < 32; y++) {
+      for (int x = 0; x < 64; x++) {
+        image.setRGB(x, y, x < 32 ? 0xff0000 : 0x0000ff);
+      }
+    }
+    ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpg", jpeg);
+    byte[] data = jpeg.toByteArray();
+
+    byte[] tiff = { 'M', 'M', 0, 42, 0, 0, 0, 8, // header
+        0, 1, // one entry
+        0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 1, 0, 0, // orientation 1
+        0, 0, 0, 0 }; // no next IFD
+    // after SOI and the JFIF segment
+    int app0 = 4 + ((data[4] & 0xff) << 8 | (data[5] & 0xff));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(data, 0, app0);
+    out.write(0xFF);
+    out.write(0xE1);
+    out.write(0);
+    out.write(2 + 6 + tiff.length);
+    out.write(new byte[] { 'E', 'x', 'i', 'f', 0, 0 });
+    out.write(tiff);
+    out.write(data, app0, data.length - app0);
+    file = new File(TEST_DIR, "exif.jpg");
+    Files.write(file.toPath(), out.toByteArray());
+  }
+
+  /**
+   * A quarter turn moves through the four orientations and back.
+   */
+  @Test
+  public void testRotateOrientation() {
+    assertEquals(6, ExifOrientation.rotate(1, 90));
+    assertEquals(8, ExifOrientation.rotate(1, 270));
+    assertEquals(3, ExifOrientation.rotate(6, 90));
+    assertEquals(7, ExifOrientation.rotate(2, 90));
+    for (int o = 1; o <= 8; o++) {
+      assertEquals(o, ExifOrientation.rotate(o, 360));
+      assertEquals(o, ExifOrientation.rotate(ExifOrientation.rotate(o, 90), -90));
+    }
+  }
+
+  /**
+   * Only the two bytes of the tag change.
+   */
+  @Test
+  public void testRotateFile() throws IOException {
+    byte[] before = Files.readAllBytes(file.toPath());
+    assertEquals(1, ExifOrientation.read(file));
+    assertEquals(true, ExifOrientation.rotate(file, 90));
+    assertEquals(6, ExifOrientation.read(file));
+
+    byte[] after = Files.readAllBytes(file.toPath());
+    assertEquals(before.length, after.length);
+    int changed = 0;
+    for (int i = 0; i < before.length; i++) {
+      if (before[i] != after[i]) {
+        changed++;
+      }
+    }
+    assertEquals(1, changed);
+  }
+
+  /**
+   * A file without EXIF data is left to the caller.
+   */
+  @Test
+  public void testNoTag() throws IOException {
+    File plain = new File(TEST_DIR, "plain.jpg");
+    ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "jpg", plain);
+    assertEquals(0, ExifOrientation.read(plain));
+    assertEquals(false, ExifOrientation.rotate(plain, 90));
+  }
+
+  /**
+   * In the EXIF mode a file with a tag gets a new orientation, the pixels of a
+   * file without one are turned.
+   */
+  @Test
+  public void testRotateFileExifMode() throws IOException {
+    int mode = Options.getInstance().getRotateMode();
+    Options.getInstance().setRotateMode(Options.ROTATE_EXIF);
+    try {
+      Generator generator = new Generator(null, 0);
+      assertEquals(true, generator.rotateFile(file, 90));
+      assertEquals(6, ExifOrientation.read(file));
+      assertEquals(64, ImageIO.read(file).getWidth());
+
+      BufferedImage image = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+      for (int y = 0; y < 32; y++) {
+        for (int x = 0; x < 64; x++) {
+          image.setRGB(x, y, x < 32 ? 0xff0000 : 0x0000ff);
+        }
+      }
+      File plain = new File(TEST_DIR, "plain.jpg");
+      ImageIO.write(image, "jpg", plain);
+      assertEquals(true, generator.rotateFile(plain, 270));
+      BufferedImage rotated = ImageIO.read(plain);
+      assertEquals(32, rotated.getWidth());
+      assertEquals(64, rotated.getHeight());
+      // the left half is at the bottom now
+      assertEquals(true, (rotated.getRGB(16, 56) >> 16 & 0xff) > 200);
+      assertEquals(true, (rotated.getRGB(16, 8) & 0xff) > 200);
+    } finally {
+      Options.getInstance().setRotateMode(mode);
+    }
+  }
+
+  /**
+   * The generated image is turned upright and its orientation is reset.
+   */
+  @Test
+  public void testGenerateImage() throws IOException {
+    Options.getInstance().setCopyMetadata(true);
+    ExifOrientation.rotate(file, 90);
+    File outDir = new File(TEST_DIR, "out");
+    outDir.mkdirs();
+    File out = new Generator(null, 0).generateImage(file, outDir, false, 64, 64, "");
+
+    BufferedImage image = ImageIO.read(out);
+    assertEquals(32, image.getWidth());
+    assertEquals(64, image.getHeight());
+    // the left half is on top now
+    assertEquals(true, (image.getRGB(16, 8) >> 16 & 0xff) > 200);
+    assertEquals(true, (image.getRGB(16, 56) & 0xff) > 200);
+    assertEquals(1, ExifOrientation.read(out));
+  }
+}
@@ -0,0 +1,57 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FileChannelImageOutputStream}.
+ */
+public class FileChannelImageOutputStreamTest {
+  private static final File TEST_DIR = new File("target/testOut/FileChannelImageOutputStreamTest");
+
+  @BeforeClass
+  public static void beforeClass() {
+    TEST_DIR.mkdirs();
+  }
+
+  /**
+   * Writes bigger and smaller than the buffer and a seek back end up in the file.
+   * 
+   * @throws IOException
+   *           if the file can't be written
+   */
+  @Test
+  public void testWriteAndSeek() throws IOException {
+    File file = new File(TEST_DIR, "stream.bin");
+    byte[] big = new byte[1500];
+    for (int i = 0; i < big.length; i++) {
+      big[i] = (byte) i;
+    }
+
+    try (FileChannelImageOutputStream ios = new FileChannelImageOutputStream(file, 512)) {
+      ios.write(1);
+      ios.write(big);
+      ios.writeShort(0x0203);
+      assertEquals(1503, ios.length());
+      ios.seek(0);
+      ios.write(9);
+      assertEquals(1, ios.getStreamPosition());
+      assertEquals(big[0], (byte) ios.read());
+    }
+
+    byte[] expected = new byte[1503];
+    expected[0] = 9;
+    System.arraycopy(big, 0, expected, 1, big.length);
+    expected[1501] = 2;
+    expected[1502] = 3;
+    assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+    file.delete();
+  }
+}
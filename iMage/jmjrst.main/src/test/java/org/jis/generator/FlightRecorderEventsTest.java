@@ -0,0 +1,156 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+import org.jis.Main;
+import org.jis.Messages;
+import org.jis.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests for the Flight Recorder events of the {@link Generator}.
+ */
+public class FlightRecorderEventsTest {
+  private static final File TEST_DIR = new File("target/testOut/FlightRecorderEventsTest");
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+
+  /**
+   * Create an empty output directory.
+   */
+  @Before
+  public void setUp() {
+    Options.getInstance().setCopyright(false);
+    Options.getInstance().setCache(false);
+    TEST_DIR.mkdirs();
+    for (File f : TEST_DIR.listFiles()) {
+      f.delete();
+    }
+  }
+
+  private static List<RecordedEvent> record(String name, Runnable work) throws IOException {
+    File dump = new File(TEST_DIR, "events.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(name).withoutThreshold();
+      recording.start();
+      work.run();
+      recording.stop();
+      recording.dump(dump.toPath());
+    }
+    List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+      if (event.getEventType().getName().equals(name)) {
+        events.add(event);
+      }
+    }
+    return events;
+  }
+
+  /**
+   * A generated image is recorded with the sizes and bytes of source and
+   * target.
+   * 
+   * @throws IOException
+   *           if the recording can't be read
+   */
+  @Test
+  public void testGenerateImage() throws IOException {
+    final File out = new File(TEST_DIR, "e_picture.jpg");
+    List<RecordedEvent> events = record("org.jis.GenerateImage", new Runnable() {
+      @Override
+      public void run() {
+        try {
+          new Generator(null, 0.8f).generateImage(IMAGE_FILE, TEST_DIR, false, 100, 100, "e_");
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+
+    assertEquals(1, events.size());
+    RecordedEvent event = events.get(0);
+    assertEquals(IMAGE_FILE.getPath(), event.getString("source"));
+    assertEquals(384, event.getInt("sourceWidth"));
+    assertEquals(390, event.getInt("sourceHeight"));
+    assertEquals(100, Math.max(event.getInt("targetWidth"), event.getInt("targetHeight")));
+    assertEquals(IMAGE_FILE.length(), event.getLong("bytesRead"));
+    assertEquals(out.length(), event.getLong("bytesWritten"));
+    assertFalse(event.getBoolean("failed"));
+  }
+
+  /**
+   * A ZIP file is recorded with its entries and bytes.
+   * 
+   * @throws IOException
+   *           if the image can't be copied or the recording can't be read
+   */
+  @Test
+  public void testCreateZip() throws IOException {
+    final File zip = new File(TEST_DIR, "images.zip");
+    final Vector<File> selected = new Vector<File>();
+    for (int i = 0; i < 2; i++) {
+      File f = new File(TEST_DIR, "zip" + i + ".jpg");
+      Files.copy(IMAGE_FILE.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      selected.add(f);
+    }
+    List<RecordedEvent> events = record("org.jis.CreateZip", new Runnable() {
+      @Override
+      public void run() {
+        new Generator(null, 0.8f).createZip(zip, selected);
+      }
+    });
+
+    assertEquals(1, events.size());
+    assertEquals(2, events.get(0).getInt("entries"));
+    assertEquals(2 * IMAGE_FILE.length(), events.get(0).getLong("bytesRead"));
+    assertEquals(zip.length(), events.get(0).getLong("bytesWritten"));
+  }
+
+  /**
+   * The ZIP file of a job is recorded with its entries and bytes.
+   * 
+   * @throws IOException
+   *           if the image can't be copied or the recording can't be read
+   */
+  @Test
+  public void testZipJob() throws IOException {
+    final Main main = Mockito.mock(Main.class);
+    main.mes = new Messages(Options.getInstance().getLocal());
+    main.p_monitor = new ImagePipelineTest.Monitor();
+    main.generator = new Generator(main, 100);
+    final File zip = new File(TEST_DIR, "job.zip");
+    final Element[] elements = new Element[2];
+    for (int i = 0; i < elements.length; i++) {
+      File f = new File(TEST_DIR, "job" + i + ".jpg");
+      Files.copy(IMAGE_FILE.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      elements[i] = new Element(i, f, new ImageTarget(50, 50, TEST_DIR), new ImageTarget(80, 80, TEST_DIR));
+    }
+    List<RecordedEvent> events = record("org.jis.CreateZip", new Runnable() {
+      @Override
+      public void run() {
+        Producer producer = new Producer(main, elements, "z_");
+        new ImageJob(producer, new ImagePipeline(producer, main, zip, null)).start().waitFor(main.p_monitor);
+      }
+    });
+
+    assertEquals(1, events.size());
+    assertEquals(zip.getPath(), events.get(0).getString("file"));
+    assertEquals(4, events.get(0).getInt("entries"));
+    assertEquals(2 * IMAGE_FILE.length(), events.get(0).getLong("bytesRead"));
+    assertEquals(zip.length(), events.get(0).getLong("bytesWritten"));
+  }
+}
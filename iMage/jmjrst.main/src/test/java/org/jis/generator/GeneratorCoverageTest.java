@@ -229,6 +229,43 @@ public class GeneratorCoverageTest {
     }
   }
 
+  /**
+   * Test {@link Generator#generateImages(File, ImageTarget[], boolean, String)} with two sizes
+   * rendered from one decode.
+   */
+  @Test
+  public void testGenerateImages_MultipleTargets() {
+    Options.getInstance().setModus(Options.MODUS_DEFAULT);
+    Options.getInstance().setCopyMetadata(false);
+    Options.getInstance().setCopyright(false);
+    File small = new File(TEST_DIR, "small");
+    File big = new File(TEST_DIR, "big");
+    small.mkdirs();
+    big.mkdirs();
+    File imageFileLandscape = new File(TEST_DIR, "multiple.png");
+    try {
+      ImageIO.write(testImage, "png", imageFileLandscape);
+      File[] out = generator.generateImages(imageFileLandscape,
+          new ImageTarget[] { new ImageTarget(imageWidth / 4, imageHeight / 4, small),
+              new ImageTarget(imageWidth / 2, imageHeight / 2, big) },
+          false, "scaled-");
+
+      assertEquals(new File(small, "scaled-multiple.png"), out[0]);
+      assertEquals(new File(big, "scaled-multiple.png"), out[1]);
+
+      BufferedImage loadedSmall = ImageIO.read(out[0]);
+      BufferedImage loadedBig = ImageIO.read(out[1]);
+      assertEquals(imageHeight / 4, loadedSmall.getHeight());
+      assertEquals(imageHeight / 2, loadedBig.getHeight());
+
+      imageFileLandscape.delete();
+      out[0].delete();
+      out[1].delete();
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
   /**
    * Test {@link Generator#rotate(File)} with a simple copy of an image.
    */
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -204,6 +205,17 @@ public class GeneratorTest {
     }
   }
 
+  /**
+   * A thumbnail of a big image is decoded with subsampling, a full size image is not.
+   */
+  @Test
+  public void testSubsampling() {
+    assertEquals(16, generator.subsampling(6000, 4000, new Dimension[] { new Dimension(159, 119) }));
+    assertEquals(1, generator.subsampling(6000, 4000,
+        new Dimension[] { new Dimension(159, 119), new Dimension(6000, 4000) }));
+    assertEquals(1, generator.subsampling(100, 100, new Dimension[] { new Dimension(200, 200) }));
+  }
+
   /**
    * Check if two images are identical - pixel wise.
    * 
@@ -0,0 +1,173 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.imageio.ImageIO;
+import javax.swing.ProgressMonitor;
+
+import org.jis.Main;
+import org.jis.Messages;
+import org.jis.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for {@link ImagePipeline} and {@link ImageJob}.
+ */
+public class ImagePipelineTest {
+  private static final File TEST_DIR = new File("target/testOut/ImagePipelineTest");
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+
+  private Main main;
+  private File small;
+  private File big;
+
+  /**
+   * Create a main window mock and empty output directories.
+   * 
+   * @throws IOException
+   *           if the test image can't be copied
+   */
+  @Before
+  public void setUp() throws IOException {
+    Options.getInstance().setModus(Options.MODUS_DEFAULT);
+    Options.getInstance().setCopyMetadata(false);
+    Options.getInstance().setCopyright(false);
+
+    main = Mockito.mock(Main.class);
+    main.mes = new Messages(Options.getInstance().getLocal());
+    main.p_monitor = new Monitor();
+    main.generator = new Generator(main, 100);
+
+    small = new File(TEST_DIR, "small");
+    big = new File(TEST_DIR, "big");
+    for (File dir : new File[] { TEST_DIR, small, big }) {
+      dir.mkdirs();
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+    }
+    for (int i = 0; i < 5; i++) {
+      Files.copy(IMAGE_FILE.toPath(), new File(TEST_DIR, "picture" + i + ".jpg").toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * A progress monitor which never pops up.
+   */
+  static class Monitor extends ProgressMonitor {
+    private volatile boolean canceled = false;
+
+    Monitor() {
+      super(null, "", "", 0, 5);
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public void setProgress(int nv) {
+    }
+
+    @Override
+    public void setNote(String note) {
+    }
+  }
+
+  private Element[] elements() {
+    Element[] elements = new Element[5];
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = new Element(i, new File(TEST_DIR, "picture" + i + ".jpg"), new ImageTarget(96, 96, small),
+          new ImageTarget(192, 192, big));
+    }
+    return elements;
+  }
+
+  /**
+   * All sizes of all images pass the stages and are written.
+   */
+  @Test
+  public void testAllImagesWritten() throws IOException {
+    Producer producer = new Producer(main, elements(), "t_");
+    ImageJob job = new ImageJob(producer, new ImagePipeline(producer, main, null, null));
+
+    assertTrue(job.start().waitFor(main.p_monitor));
+    assertTrue(job.isDone());
+    assertFalse(job.isCancelled());
+
+    for (int i = 0; i < 5; i++) {
+      BufferedImage s = ImageIO.read(new File(small, "t_picture" + i + ".jpg"));
+      BufferedImage b = ImageIO.read(new File(big, "t_picture" + i + ".jpg"));
+      assertEquals(96, s.getHeight());
+      assertEquals(192, b.getHeight());
+    }
+  }
+
+  /**
+   * For a ZIP file all sizes are streamed into STORED entries, nothing is
+   * written to the output directories.
+   */
+  @Test
+  public void testZip() throws IOException {
+    File zipFile = new File(TEST_DIR, "images.zip");
+    Producer producer = new Producer(main, elements(), "t_");
+    ImageJob job = new ImageJob(producer, new ImagePipeline(producer, main, zipFile, null));
+    assertTrue(job.start().waitFor(main.p_monitor));
+
+    assertEquals(0, small.listFiles().length);
+    assertEquals(0, big.listFiles().length);
+
+    int entries = 0;
+    try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile))) {
+      for (ZipEntry ze; (ze = zis.getNextEntry()) != null; entries++) {
+        assertEquals(ZipEntry.STORED, ze.getMethod());
+        BufferedImage image = ImageIO.read(zis);
+        assertEquals(ze.getName().startsWith("small/") ? 96 : 192, image.getHeight());
+      }
+    }
+    assertEquals(10, entries);
+  }
+
+  /**
+   * A cancel of the progress monitor ends the job without generating the
+   * images.
+   */
+  @Test
+  public void testMonitorCancel() {
+    ((Monitor) main.p_monitor).canceled = true;
+    Producer producer = new Producer(main, elements(), "t_");
+    ImageJob job = new ImageJob(producer, new ImagePipeline(producer, main, null, null));
+
+    assertFalse(job.start().waitFor(main.p_monitor));
+    assertTrue(job.isDone());
+    assertEquals(0, small.listFiles().length);
+  }
+
+  /**
+   * A cancelled job interrupts its workers and ends.
+   */
+  @Test
+  public void testCancel() {
+    Producer producer = new Producer(main, elements(), "t_");
+    ImageJob job = new ImageJob(producer, new ImagePipeline(producer, main, null, null));
+
+    job.start().cancel(true);
+    assertFalse(job.waitFor(null));
+    assertTrue(job.isDone());
+    assertTrue(job.isCancelled());
+  }
+}
@@ -0,0 +1,119 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import javax.swing.ProgressMonitor;
+
+import org.jis.Main;
+import org.jis.Messages;
+import org.jis.options.Options;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for {@link JobReport}.
+ */
+public class JobReportTest {
+  private static final File TEST_DIR = new File("target/testOut/JobReportTest");
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+
+  /**
+   * Create an empty output directory.
+   */
+  @Before
+  public void setUp() {
+    Options.getInstance().setCopyright(false);
+    Options.getInstance().setCache(false);
+    TEST_DIR.mkdirs();
+    for (File f : TEST_DIR.listFiles()) {
+      f.delete();
+    }
+  }
+
+  /**
+   * The slowest images are sorted by their time and limited, the CSV has a
+   * line for every image and quotes file names with commas.
+   */
+  @Test
+  public void testSlowestAndCsv() {
+    JobReport report = new JobReport("test");
+    for (int i = 0; i < 15; i++) {
+      report.add("image" + i + ".jpg", i * 1000000L, i * 2000000L, 100, 10, false);
+    }
+    report.add("a,b.jpg", 0, 0, 1, 0, true);
+    report.finish();
+
+    String json = report.toJson();
+    assertTrue(json.contains("\"imageCount\": 16"));
+    assertTrue(json.contains("\"failed\": 1"));
+    assertTrue(json.contains("\"bytesRead\": 1501"));
+    assertTrue(json.contains("\"bytesWritten\": 150"));
+    String slowest = json.substring(json.indexOf("\"slowest\""), json.indexOf("\"images\""));
+    assertTrue(slowest.indexOf("image14.jpg") < slowest.indexOf("image13.jpg"));
+    assertTrue(slowest.contains("image5.jpg"));
+    assertTrue(!slowest.contains("image4.jpg"));
+
+    String[] lines = report.toCsv().split("\n");
+    assertEquals(17, lines.length);
+    assertEquals("image3.jpg,3.000,6.000,100,10,false", lines[4]);
+    assertEquals("\"a,b.jpg\",0.000,0.000,1,0,true", lines[16]);
+  }
+
+  /**
+   * A pipeline adds every image to its report, which is written into the
+   * output directory.
+   * 
+   * @throws IOException
+   *           if the images can't be copied or the report can't be read
+   */
+  @Test
+  public void testPipelineReport() throws IOException {
+    Main main = Mockito.mock(Main.class);
+    main.mes = new Messages(Options.getInstance().getLocal());
+    main.p_monitor = new ProgressMonitor(null, "", "", 0, 3) {
+      @Override
+      public void setProgress(int nv) {
+      }
+
+      @Override
+      public void setNote(String note) {
+      }
+    };
+    main.generator = new Generator(main, 100);
+
+    Element[] elements = new Element[3];
+    for (int i = 0; i < elements.length; i++) {
+      File f = new File(TEST_DIR, "source" + i + ".jpg");
+      Files.copy(IMAGE_FILE.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      elements[i] = new Element(i, f, new ImageTarget(50, 50, TEST_DIR));
+    }
+
+    Producer producer = new Producer(main, elements, "r_");
+    ImagePipeline pipeline = new ImagePipeline(producer, main, null, null);
+    JobReport report = new JobReport("generate");
+    pipeline.setReport(report);
+    assertTrue(new ImageJob(producer, pipeline).start().waitFor(main.p_monitor));
+    report.write(TEST_DIR);
+
+    List<String> csv = Files.readAllLines(new File(TEST_DIR, JobReport.CSV).toPath(), StandardCharsets.UTF_8);
+    assertEquals(4, csv.size());
+    for (String line : csv.subList(1, csv.size())) {
+      String[] cells = line.split(",");
+      assertEquals(IMAGE_FILE.length(), Long.parseLong(cells[3]));
+      assertTrue(Long.parseLong(cells[4]) > 0);
+      assertEquals("false", cells[5]);
+    }
+    String json = new String(Files.readAllBytes(new File(TEST_DIR, JobReport.JSON).toPath()), StandardCharsets.UTF_8);
+    assertTrue(json.contains("\"imageCount\": 3"));
+    assertTrue(json.contains("\"bytesRead\": " + 3 * IMAGE_FILE.length()));
+  }
+}
@@ -0,0 +1,254 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.jis.options.Options;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JpegSegments}.
+ */
+public class JpegSegmentsTest {
+  private static final File TEST_DIR = new File("target/testOut/JpegSegmentsTest");
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+  private static final String XMP = "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta exif:GPSLatitude=\"49,0N\"/>";
+
+  private File source;
+
+  /**
+   * Write the test picture with an EXIF segment with orientation, dimensions,
+   * GPS data and a thumbnail, and a XMP segment with GPS data.
+   * 
+   * @throws IOException
+   *           if the picture can't be written
+   */
+  @Before
+  public void setUp() throws IOException {
+    Options.getInstance().setCopyMetadata(true);
+    Options.getInstance().setCopyright(false);
+    Options.getInstance().setCache(false);
+    TEST_DIR.mkdirs();
+
+    ByteBuffer tiff = ByteBuffer.allocate(252);
+    tiff.put(new byte[] { 'M', 'M', 0, 42 }).putInt(8);
+    // IFD0 at 8: orientation, EXIF and GPS IFD, the thumbnail IFD follows
+    tiff.putShort((short) 3);
+    entry(tiff, 0x0112, 3, 1, 6 << 16);
+    entry(tiff, 0x8769, 4, 1, 50);
+    entry(tiff, 0x8825, 4, 1, 80);
+    tiff.putInt(122);
+    // EXIF IFD at 50: the dimensions of the source
+    tiff.putShort((short) 2);
+    entry(tiff, 0xA002, 4, 1, 384);
+    entry(tiff, 0xA003, 4, 1, 390);
+    tiff.putInt(0);
+    // GPS IFD at 80: the latitude as three rationals at 98
+    tiff.putShort((short) 1);
+    entry(tiff, 0x0002, 5, 3, 98);
+    tiff.putInt(0);
+    for (int i = 0; i < 6; i++) {
+      tiff.putInt(i + 1);
+    }
+    // IFD1 at 122: a thumbnail of 100 bytes at 152
+    tiff.putShort((short) 2);
+    entry(tiff, 0x0201, 4, 1, 152);
+    entry(tiff, 0x0202, 4, 1, 100);
+    tiff.putInt(0);
+    while (tiff.hasRemaining()) {
+      tiff.put((byte) 0xAB);
+    }
+
+    ByteArrayOutputStream exif = new ByteArrayOutputStream();
+    exif.write(new byte[] { 'E', 'x', 'i', 'f', 0, 0 });
+    exif.write(tiff.array());
+
+    byte[] data = Files.readAllBytes(IMAGE_FILE.toPath());
+    // after SOI and the JFIF segment, replacing the EXIF segment of the picture
+    int app0 = 4 + ((data[4] & 0xff) << 8 | (data[5] & 0xff));
+    int app1 = app0 + 2 + ((data[app0 + 2] & 0xff) << 8 | (data[app0 + 3] & 0xff));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(data, 0, app0);
+    segment(out, 0xE1, exif.toByteArray());
+    segment(out, 0xE1, XMP.getBytes(StandardCharsets.ISO_8859_1));
+    out.write(data, app1, data.length - app1);
+    source = new File(TEST_DIR, "source.jpg");
+    Files.write(source.toPath(), out.toByteArray());
+  }
+
+  /**
+   * Reset the options.
+   */
+  @After
+  public void tearDown() {
+    Options.getInstance().setStripGps(false);
+    Options.getInstance().setStripThumbnail(false);
+  }
+
+  private static void entry(ByteBuffer tiff, int tag, int type, int count, int value) {
+    tiff.putShort((short) tag).putShort((short) type).putInt(count).putInt(value);
+  }
+
+  private static void segment(ByteArrayOutputStream out, int marker, byte[] data) throws IOException {
+    out.write(0xFF);
+    out.write(marker);
+    out.write((data.length + 2) >> 8);
+    out.write(data.length + 2);
+    out.write(data);
+  }
+
+  /**
+   * @return the APP1 segments of the JPEG without marker and length
+   */
+  private static List<byte[]> app1(File file) throws IOException {
+    byte[] data = Files.readAllBytes(file.toPath());
+    List<byte[]> segments = new ArrayList<byte[]>();
+    for (int p = 2; (data[p + 1] & 0xff) != 0xDA;) {
+      int len = (data[p + 2] & 0xff) << 8 | (data[p + 3] & 0xff);
+      if ((data[p + 1] & 0xff) == 0xE1) {
+        segments.add(Arrays.copyOfRange(data, p + 4, p + 2 + len));
+      }
+      p += 2 + len;
+    }
+    return segments;
+  }
+
+  private static byte[] exif(List<byte[]> segments) {
+    for (byte[] s : segments) {
+      if (s[0] == 'E' && s[1] == 'x') {
+        return s;
+      }
+    }
+    return null;
+  }
+
+  private static int u16(byte[] exif, int p) {
+    return ByteBuffer.wrap(exif, 6 + p, 2).getShort() & 0xffff;
+  }
+
+  private static int u32(byte[] exif, int p) {
+    return ByteBuffer.wrap(exif, 6 + p, 4).getInt();
+  }
+
+  private File generate() throws IOException {
+    return new Generator(null, 0.8f).generateImage(source, TEST_DIR, false, 100, 100, "s_");
+  }
+
+  /**
+   * The segments are copied, the orientation is normal and the dimensions
+   * are the ones of the scaled image.
+   * 
+   * @throws IOException
+   *           if the image can't be generated
+   */
+  @Test
+  public void testCopy() throws IOException {
+    File out = generate();
+    BufferedImage image = ImageIO.read(out);
+    // the orientation turned the portrait picture into landscape
+    assertEquals(100, image.getWidth());
+    assertEquals(98, image.getHeight());
+
+    List<byte[]> segments = app1(out);
+    assertEquals(2, segments.size());
+    byte[] exif = exif(segments);
+    assertNotNull(exif);
+    assertEquals(6 + 252, exif.length);
+    assertEquals(1, u16(exif, 18));
+    assertEquals(100, u32(exif, 60));
+    assertEquals(98, u32(exif, 72));
+    assertEquals(0x8825, u16(exif, 34));
+    assertEquals(122, u32(exif, 46));
+  }
+
+  /**
+   * The GPS data and the thumbnail are removed, the segment gets shorter and
+   * the XMP with GPS data is left out.
+   * 
+   * @throws IOException
+   *           if the image can't be generated
+   */
+  @Test
+  public void testStrip() throws IOException {
+    Options.getInstance().setStripGps(true);
+    Options.getInstance().setStripThumbnail(true);
+    File out = generate();
+
+    List<byte[]> segments = app1(out);
+    assertEquals(1, segments.size());
+    byte[] exif = exif(segments);
+    assertNotNull(exif);
+    // IFD0 and the EXIF IFD are left
+    assertEquals(6 + 80, exif.length);
+    assertEquals(2, u16(exif, 8));
+    assertEquals(0x8769, u16(exif, 22));
+    assertEquals(0, u32(exif, 34));
+    assertEquals(100, u32(exif, 60));
+    assertFalse(new String(exif, StandardCharsets.ISO_8859_1).contains("GPS"));
+  }
+
+  /**
+   * Without copying the metadata the output has no EXIF, but the orientation
+   * is applied.
+   * 
+   * @throws IOException
+   *           if the image can't be generated
+   */
+  @Test
+  public void testNoCopy() throws IOException {
+    Options.getInstance().setCopyMetadata(false);
+    File out = generate();
+    assertTrue(app1(out).isEmpty());
+    assertEquals(100, ImageIO.read(out).getWidth());
+  }
+
+  /**
+   * The segments inserted into an array and written to a stream give the same
+   * image.
+   * 
+   * @throws IOException
+   *           if the image can't be read or encoded
+   */
+  @Test
+  public void testInsertInto() throws IOException {
+    JpegSegments segments;
+    try (ImageInputStream iis = ImageIO.createImageInputStream(source)) {
+      segments = JpegSegments.read(iis);
+    }
+    assertNotNull(segments);
+    segments.prepare(false, false);
+
+    ByteArrayImageOutputStream encoded = new ByteArrayImageOutputStream(16);
+    ImageIO.write(ImageIO.read(IMAGE_FILE), "jpg", encoded);
+    encoded.close();
+    byte[] inserted = segments.insertInto(encoded.buffer(), encoded.size(), 384, 390);
+
+    ByteArrayImageOutputStream written = new ByteArrayImageOutputStream(16);
+    segments.writeTo(written, encoded.buffer(), encoded.size(), 384, 390);
+    assertArrayEquals(written.toByteArray(), inserted);
+
+    File out = new File(TEST_DIR, "inserted.jpg");
+    Files.write(out.toPath(), inserted);
+    assertEquals(2, app1(out).size());
+    assertEquals(384, ImageIO.read(out).getWidth());
+  }
+}
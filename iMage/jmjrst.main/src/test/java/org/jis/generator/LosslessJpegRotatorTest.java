@@ -0,0 +1,137 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link LosslessJpegRotator}.
+ */
+public class LosslessJpegRotatorTest {
+  private static final File TEST_DIR = new File("target/testOut/LosslessJpegRotatorTest");
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+
+  private byte[] jpeg;
+
+  /**
+   * Encode a 4:2:0 JPEG of 256x128 pixels with MCU-aligned edges.
+   */
+  @Before
+  public void setUp() throws IOException {
+    TEST_DIR.mkdirs();
+    BufferedImage image = new BufferedImage(256, 128, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(7);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        int r = x & 0xff;
+        int g = (y * 2) & 0xff;
+        int b = random.nextInt(64) + (x ^ y) % 192;
+        image.setRGB(x, y, (r << 16) | (g << 8) | b);
+      }
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpg", out);
+    jpeg = out.toByteArray();
+  }
+
+  private static BufferedImage decode(byte[] data) throws IOException {
+    return ImageIO.read(new ByteArrayInputStream(data));
+  }
+
+  private static int[] pixels(BufferedImage image) {
+    return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+  }
+
+  /**
+   * Four quarter turns and two half turns restore the original coefficients.
+   */
+  @Test
+  public void testFullTurn() throws IOException {
+    byte[] data = jpeg;
+    for (int i = 0; i < 4; i++) {
+      data = LosslessJpegRotator.rotate(data, 90);
+      assertNotNull(data);
+    }
+    assertArrayEquals(pixels(decode(jpeg)), pixels(decode(data)));
+
+    data = LosslessJpegRotator.rotate(LosslessJpegRotator.rotate(jpeg, 180), 180);
+    assertArrayEquals(pixels(decode(jpeg)), pixels(decode(data)));
+
+    data = LosslessJpegRotator.rotate(LosslessJpegRotator.rotate(jpeg, 90), 270);
+    assertArrayEquals(pixels(decode(jpeg)), pixels(decode(data)));
+  }
+
+  /**
+   * The rotated JPEG shows the rotated pixels of the original.
+   */
+  @Test
+  public void testRotate90() throws IOException {
+    BufferedImage original = decode(jpeg);
+    BufferedImage rotated = decode(LosslessJpegRotator.rotate(jpeg, 90));
+    assertEquals(original.getHeight(), rotated.getWidth());
+    assertEquals(original.getWidth(), rotated.getHeight());
+
+    int h = original.getHeight();
+    int max = 0;
+    for (int y = 0; y < rotated.getHeight(); y++) {
+      for (int x = 0; x < rotated.getWidth(); x++) {
+        int a = rotated.getRGB(x, y);
+        int b = original.getRGB(y, h - 1 - x);
+        for (int shift = 0; shift < 24; shift += 8) {
+          max = Math.max(max, Math.abs(((a >> shift) & 0xff) - ((b >> shift) & 0xff)));
+        }
+      }
+    }
+    // only the rounding of the IDCT and the upsampling differs
+    assertTrue("max difference " + max, max <= 4);
+  }
+
+  /**
+   * An edge which isn't a multiple of the MCU size is left to the caller.
+   */
+  @Test
+  public void testUnaligned() throws IOException {
+    byte[] data = Files.readAllBytes(IMAGE_FILE.toPath());
+    // 384x390, the bottom edge would become the left edge
+    assertNull(LosslessJpegRotator.rotate(data, 90));
+    assertNull(LosslessJpegRotator.rotate(data, 180));
+    assertNotNull(LosslessJpegRotator.rotate(data, 270));
+    assertNull(LosslessJpegRotator.rotate(data, 45));
+    assertNull(LosslessJpegRotator.rotate(new byte[] { 1, 2, 3, 4 }, 90));
+  }
+
+  /**
+   * The file is replaced only if the rotation was possible.
+   */
+  @Test
+  public void testFile() throws IOException {
+    File file = new File(TEST_DIR, "aligned.jpg");
+    Files.write(file.toPath(), jpeg);
+    assertTrue(LosslessJpegRotator.rotate(file, 90));
+    BufferedImage image = ImageIO.read(file);
+    assertEquals(128, image.getWidth());
+    assertEquals(256, image.getHeight());
+
+    File unaligned = new File(TEST_DIR, "unaligned.jpg");
+    Files.copy(IMAGE_FILE.toPath(), unaligned.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    assertFalse(LosslessJpegRotator.rotate(unaligned, 90));
+    assertArrayEquals(Files.readAllBytes(IMAGE_FILE.toPath()), Files.readAllBytes(unaligned.toPath()));
+  }
+}
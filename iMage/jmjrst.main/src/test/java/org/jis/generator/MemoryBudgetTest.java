@@ -0,0 +1,42 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link MemoryBudget}.
+ */
+public class MemoryBudgetTest {
+
+  /**
+   * Images are admitted until the budget is used up.
+   * 
+   * @throws InterruptedException
+   *           if the test is interrupted
+   */
+  @Test
+  public void testAcquireAndRelease() throws InterruptedException {
+    MemoryBudget budget = new MemoryBudget(100);
+    assertTrue(budget.acquire(60, 0));
+    assertFalse(budget.acquire(60, 10));
+    budget.release(60);
+    assertTrue(budget.acquire(60, 0));
+    assertEquals(60, budget.used());
+  }
+
+  /**
+   * An image bigger than the budget is admitted, if nothing else is in work.
+   * 
+   * @throws InterruptedException
+   *           if the test is interrupted
+   */
+  @Test
+  public void testHugeImage() throws InterruptedException {
+    MemoryBudget budget = new MemoryBudget(100);
+    assertTrue(budget.acquire(500, 0));
+    assertFalse(budget.acquire(1, 10));
+  }
+}
@@ -0,0 +1,131 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link OrthogonalRotator}.
+ */
+public class OrthogonalRotatorTest {
+  private static final int[] TYPES = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+      BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY,
+      BufferedImage.TYPE_USHORT_GRAY };
+
+  private static BufferedImage image(int type, int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, type);
+    Random random = new Random(width * 31 + height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, random.nextInt() | 0xff000000);
+      }
+    }
+    return image;
+  }
+
+  /**
+   * The source pixel of a target pixel, see the EXIF orientations.
+   */
+  private static int expected(BufferedImage image, int transformation, int x, int y) {
+    int w = image.getWidth() - 1;
+    int h = image.getHeight() - 1;
+    switch (transformation) {
+      case 1:
+        return image.getRGB(x, y);
+      case 2:
+        return image.getRGB(w - x, y);
+      case 3:
+        return image.getRGB(w - x, h - y);
+      case 4:
+        return image.getRGB(x, h - y);
+      case 5:
+        return image.getRGB(y, x);
+      case 6:
+        return image.getRGB(y, h - x);
+      case 7:
+        return image.getRGB(w - y, h - x);
+      default:
+        return image.getRGB(w - y, x);
+    }
+  }
+
+  private static void assertTransformed(BufferedImage image, int transformation, BufferedImage result) {
+    boolean swap = transformation >= 5;
+    assertEquals(swap ? image.getHeight() : image.getWidth(), result.getWidth());
+    assertEquals(swap ? image.getWidth() : image.getHeight(), result.getHeight());
+    for (int y = 0; y < result.getHeight(); y++) {
+      for (int x = 0; x < result.getWidth(); x++) {
+        assertEquals("type " + result.getType() + " transformation " + transformation + " at " + x + "," + y,
+            expected(image, transformation, x, y), result.getRGB(x, y));
+      }
+    }
+  }
+
+  /**
+   * All transformations of the direct layouts and of the Java2D fallback.
+   */
+  @Test
+  public void testTransformations() {
+    OrthogonalRotator rotator = new OrthogonalRotator(1);
+    for (int type : TYPES) {
+      // not a multiple of the tile size
+      BufferedImage image = image(type, 131, 70);
+      for (int t = 1; t <= 8; t++) {
+        BufferedImage result = rotator.transform(image, t, null);
+        assertEquals(type, result.getType());
+        assertTransformed(image, t, result);
+      }
+    }
+  }
+
+  /**
+   * A sub image has an offset in the data buffer of its parent.
+   */
+  @Test
+  public void testSubimage() {
+    BufferedImage image = image(BufferedImage.TYPE_3BYTE_BGR, 200, 150).getSubimage(17, 9, 101, 77);
+    OrthogonalRotator rotator = new OrthogonalRotator(1);
+    for (int t = 1; t <= 8; t++) {
+      assertTransformed(image, t, rotator.transform(image, t, null));
+    }
+  }
+
+  /**
+   * A big image is split into bands, the destination is reused.
+   */
+  @Test
+  public void testParallelIntoDestination() {
+    BufferedImage image = image(BufferedImage.TYPE_INT_RGB, 1200, 900);
+    BufferedImage destination = new BufferedImage(900, 1200, BufferedImage.TYPE_INT_RGB);
+    OrthogonalRotator rotator = new OrthogonalRotator(4);
+    assertSame(destination, rotator.transform(image, OrthogonalRotator.CLOCKWISE, destination));
+    assertTransformed(image, OrthogonalRotator.CLOCKWISE, destination);
+    assertSame(destination, rotator.transform(image, OrthogonalRotator.COUNTERCLOCKWISE, destination));
+    assertTransformed(image, OrthogonalRotator.COUNTERCLOCKWISE, destination);
+  }
+
+  /**
+   * A destination of another color model is drawn.
+   */
+  @Test
+  public void testOtherDestinationType() {
+    BufferedImage image = image(BufferedImage.TYPE_INT_RGB, 90, 40);
+    BufferedImage destination = new BufferedImage(40, 90, BufferedImage.TYPE_3BYTE_BGR);
+    new OrthogonalRotator(1).transform(image, OrthogonalRotator.CLOCKWISE, destination);
+    assertTransformed(image, OrthogonalRotator.CLOCKWISE, destination);
+  }
+
+  /**
+   * The destination must have the rotated size.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongDestination() {
+    BufferedImage image = image(BufferedImage.TYPE_INT_RGB, 20, 10);
+    new OrthogonalRotator(1).transform(image, OrthogonalRotator.CLOCKWISE, new BufferedImage(20, 10,
+        BufferedImage.TYPE_INT_RGB));
+  }
+}
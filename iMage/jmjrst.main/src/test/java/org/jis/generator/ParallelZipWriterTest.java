@@ -0,0 +1,145 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ParallelZipWriter}.
+ */
+public class ParallelZipWriterTest {
+  private static final File TEST_DIR = new File("target/testOut/ParallelZipWriterTest");
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+
+  /**
+   * Create an empty test directory.
+   */
+  @Before
+  public void setUp() {
+    TEST_DIR.mkdirs();
+    for (File f : TEST_DIR.listFiles()) {
+      f.delete();
+    }
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int len; (len = in.read(buffer)) != -1;) {
+      out.write(buffer, 0, len);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Entries of several chunks, JPEGs and empty files are read back unchanged by
+   * ZipFile and ZipInputStream.
+   */
+  @Test
+  public void testEntries() throws IOException {
+    // compressible text over several chunks
+    StringBuilder sb = new StringBuilder();
+    Random random = new Random(42);
+    while (sb.length() < ParallelZipWriter.CHUNK_SIZE * 3 + 1234) {
+      sb.append("line ").append(random.nextInt(1000)).append(" of the text\n");
+    }
+    File text = new File(TEST_DIR, "text.txt");
+    Files.write(text.toPath(), sb.toString().getBytes("UTF-8"));
+    File empty = new File(TEST_DIR, "empty.txt");
+    Files.write(empty.toPath(), new byte[0]);
+    File[] files = { text, IMAGE_FILE, empty };
+
+    File zip = new File(TEST_DIR, "test.zip");
+    try (ParallelZipWriter out = new ParallelZipWriter(zip, Deflater.BEST_COMPRESSION, 4)) {
+      for (File f : files) {
+        out.add(f, f.getName());
+      }
+    }
+
+    try (ZipFile zf = new ZipFile(zip)) {
+      assertEquals(3, zf.size());
+      for (File f : files) {
+        ZipEntry ze = zf.getEntry(f.getName());
+        assertEquals(f.getName().endsWith(".jpg") ? ZipEntry.STORED : ZipEntry.DEFLATED, ze.getMethod());
+        assertArrayEquals(Files.readAllBytes(f.toPath()), read(zf.getInputStream(ze)));
+      }
+      assertEquals(true, zf.getEntry("text.txt").getCompressedSize() < text.length() / 2);
+    }
+
+    int i = 0;
+    try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zip))) {
+      for (ZipEntry ze; (ze = zis.getNextEntry()) != null; i++) {
+        assertEquals(files[i].getName(), ze.getName());
+        assertArrayEquals(Files.readAllBytes(files[i].toPath()), read(zis));
+      }
+    }
+    assertEquals(3, i);
+  }
+
+  /**
+   * Data in memory is written like the files, mixed with them.
+   */
+  @Test
+  public void testData() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    Random random = new Random(7);
+    while (sb.length() < ParallelZipWriter.CHUNK_SIZE * 2 + 99) {
+      sb.append("entry ").append(random.nextInt(1000)).append(" in memory\n");
+    }
+    byte[] text = sb.toString().getBytes("UTF-8");
+    byte[] image = Files.readAllBytes(IMAGE_FILE.toPath());
+
+    File zip = new File(TEST_DIR, "data.zip");
+    try (ParallelZipWriter out = new ParallelZipWriter(zip, Deflater.BEST_COMPRESSION, 2)) {
+      out.add(image, "dir/image.jpg", System.currentTimeMillis());
+      out.add(IMAGE_FILE, "file.jpg");
+      out.add(text, "text.txt", System.currentTimeMillis());
+      out.add(new byte[0], "empty.txt", System.currentTimeMillis());
+    }
+
+    try (ZipFile zf = new ZipFile(zip)) {
+      assertEquals(4, zf.size());
+      assertEquals(ZipEntry.STORED, zf.getEntry("dir/image.jpg").getMethod());
+      assertArrayEquals(image, read(zf.getInputStream(zf.getEntry("dir/image.jpg"))));
+      assertArrayEquals(image, read(zf.getInputStream(zf.getEntry("file.jpg"))));
+      assertEquals(ZipEntry.DEFLATED, zf.getEntry("text.txt").getMethod());
+      assertArrayEquals(text, read(zf.getInputStream(zf.getEntry("text.txt"))));
+      assertEquals(0, read(zf.getInputStream(zf.getEntry("empty.txt"))).length);
+    }
+  }
+
+  /**
+   * More than 65535 entries need the ZIP64 end of central directory.
+   */
+  @Test
+  public void testManyEntries() throws IOException {
+    File small = new File(TEST_DIR, "small.txt");
+    Files.write(small.toPath(), "small".getBytes("UTF-8"));
+
+    File zip = new File(TEST_DIR, "many.zip");
+    try (ParallelZipWriter out = new ParallelZipWriter(zip, Deflater.BEST_SPEED, 2)) {
+      for (int i = 0; i < 70000; i++) {
+        out.add(small, "small" + i + ".txt");
+      }
+    }
+
+    try (ZipFile zf = new ZipFile(zip)) {
+      assertEquals(70000, zf.size());
+      assertArrayEquals("small".getBytes("UTF-8"), read(zf.getInputStream(zf.getEntry("small69999.txt"))));
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jis.options.Options;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PipelineMetrics} and {@link StageMetrics}.
+ */
+public class PipelineMetricsTest {
+  private static final File TEST_DIR = new File("target/testOut/PipelineMetricsTest");
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+
+  /**
+   * The percentiles are taken from the buckets, within their resolution.
+   */
+  @Test
+  public void testPercentiles() {
+    StageMetrics stage = new StageMetrics("test");
+    for (int i = 1; i <= 100; i++) {
+      stage.record(i * 1000000L);
+    }
+    assertEquals(100, stage.getCount());
+    assertEquals(50.5, stage.getMeanMillis(), 0.001);
+    assertEquals(100, stage.getMaxMillis(), 0.001);
+    assertEquals(50, stage.getP50Millis(), 50 * 0.125);
+    assertEquals(99, stage.getP99Millis(), 99 * 0.125);
+
+    stage.reset();
+    assertEquals(0, stage.getCount());
+    assertEquals(0, stage.getP99Millis(), 0);
+  }
+
+  /**
+   * Every time falls into the bucket whose bounds enclose it.
+   */
+  @Test
+  public void testBuckets() {
+    for (long micros = 0; micros < 10000000L; micros = micros * 3 / 2 + 1) {
+      int bucket = StageMetrics.bucket(micros);
+      assertTrue(StageMetrics.lowerBound(bucket) <= micros);
+      assertTrue(micros < StageMetrics.lowerBound(bucket + 1));
+    }
+  }
+
+  /**
+   * A generated image is counted by the beans in the platform MBean server.
+   * 
+   * @throws Exception
+   *           if the image can't be generated or the bean can't be read
+   */
+  @Test
+  public void testMBeans() throws Exception {
+    Options.getInstance().setCopyright(false);
+    TEST_DIR.mkdirs();
+    PipelineMetrics metrics = PipelineMetrics.get();
+    long done = metrics.getImagesDone();
+    long read = metrics.getBytesRead();
+    long decoded = metrics.decode.getCount();
+
+    new Generator(null, 0.8f).generateImage(IMAGE_FILE, TEST_DIR, false, 100, 100, "m_");
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName pipeline = new ObjectName(PipelineMetrics.DOMAIN + ":type=Pipeline");
+    assertEquals(done + 1, server.getAttribute(pipeline, "ImagesDone"));
+    assertEquals(read + IMAGE_FILE.length(), server.getAttribute(pipeline, "BytesRead"));
+    assertEquals(0, server.getAttribute(pipeline, "ActiveConsumers"));
+
+    ObjectName decode = new ObjectName(PipelineMetrics.DOMAIN + ":type=Pipeline,stage=decode");
+    assertEquals(decoded + 1, server.getAttribute(decode, "Count"));
+    assertTrue((Double) server.getAttribute(decode, "P99Millis") > 0);
+  }
+}
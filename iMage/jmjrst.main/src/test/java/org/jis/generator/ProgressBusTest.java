@@ -0,0 +1,69 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.swing.JTextPane;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.SimpleAttributeSet;
+
+import org.jis.Main;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for {@link ProgressBus}.
+ */
+public class ProgressBusTest {
+  private Main main;
+
+  /**
+   * Create a main window mock with an output pane.
+   */
+  @Before
+  public void setUp() {
+    main = Mockito.mock(Main.class);
+    main.text = new JTextPane();
+    main.jOutputDoc = main.text.getStyledDocument();
+    main.outputAtr = new SimpleAttributeSet();
+  }
+
+  /**
+   * Published lines reach the output pane only when the bus is drained.
+   */
+  @Test
+  public void testDrain() throws BadLocationException {
+    ProgressBus bus = new ProgressBus(main);
+    bus.log("first\n", main.outputAtr);
+    bus.log(new String[] { "sec", "ond\n" }, new SimpleAttributeSet[] { main.outputAtr, main.outputAtr });
+    bus.imageDone(false);
+    bus.imageDone(true);
+    assertEquals(0, main.jOutputDoc.getLength());
+
+    bus.drain();
+    assertEquals("first\nsecond\n", main.jOutputDoc.getText(0, main.jOutputDoc.getLength()));
+    assertEquals(2, bus.done());
+    assertEquals(1, bus.failed());
+  }
+
+  /**
+   * Only the newest lines of a frame are written, the others are counted.
+   */
+  @Test
+  public void testDrainSkipsOldLines() throws BadLocationException {
+    ProgressBus bus = new ProgressBus(main);
+    int lines = ProgressBus.LINES_PER_FRAME + 50;
+    for (int i = 0; i < lines; i++) {
+      bus.log("line" + i + "\n", main.outputAtr);
+    }
+    bus.drain();
+
+    String text = main.jOutputDoc.getText(0, main.jOutputDoc.getLength());
+    assertFalse(text.contains("line49\n"));
+    assertTrue(text.contains("(50)"));
+    assertTrue(text.contains("line50\n"));
+    assertTrue(text.endsWith("line" + (lines - 1) + "\n"));
+  }
+}
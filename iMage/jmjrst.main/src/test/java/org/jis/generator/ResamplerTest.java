@@ -0,0 +1,66 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.jis.options.Options;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Resampler}.
+ */
+public class ResamplerTest {
+
+  private static BufferedImage filled(int type, Color color, int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, type);
+    Graphics2D g = image.createGraphics();
+    g.setColor(color);
+    g.fillRect(0, 0, width, height);
+    g.dispose();
+    return image;
+  }
+
+  /**
+   * A uniform image stays uniform with every kernel, when reducing and when enlarging.
+   */
+  @Test
+  public void testUniformColor() {
+    BufferedImage source = filled(BufferedImage.TYPE_3BYTE_BGR, new Color(10, 128, 250), 300, 200);
+    for (ResampleKernel kernel : ResampleKernel.values()) {
+      for (int width : new int[] { 97, 450 }) {
+        int height = width * 2 / 3;
+        BufferedImage result = new Resampler(kernel, 2).resize(source, width, height);
+        assertEquals(width, result.getWidth());
+        assertEquals(height, result.getHeight());
+        for (int y = 0; y < height; y += 7) {
+          for (int x = 0; x < width; x += 7) {
+            assertEquals(kernel.name(), 0xff0a80fa, result.getRGB(x, y));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Transparent pixels are composed onto white.
+   */
+  @Test
+  public void testTransparentOnWhite() {
+    BufferedImage source = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+    BufferedImage result = new Resampler(ResampleKernel.BOX, 1).resize(source, 16, 16);
+    assertEquals(0xffffffff, result.getRGB(8, 8));
+  }
+
+  /**
+   * Every modus has its own kernel.
+   */
+  @Test
+  public void testForModus() {
+    assertEquals(ResampleKernel.BILINEAR, ResampleKernel.forModus(Options.MODUS_SPEED));
+    assertEquals(ResampleKernel.BICUBIC, ResampleKernel.forModus(Options.MODUS_DEFAULT));
+    assertEquals(ResampleKernel.LANCZOS, ResampleKernel.forModus(Options.MODUS_QUALITY));
+  }
+}
@@ -0,0 +1,161 @@
+package org.jis.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link WatchFolder}.
+ */
+public class WatchFolderTest {
+  private static final File TEST_DIR = new File("target/testOut/WatchFolderTest");
+  private static final File IMAGE_FILE = new File("src/test/resources/picture.jpg");
+  private static final long TIMEOUT = 20000;
+
+  private File input;
+  private File output;
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * An input directory with one image.
+   */
+  @Before
+  public void setUp() throws IOException {
+    delete(TEST_DIR);
+    input = new File(TEST_DIR, "in");
+    output = new File(TEST_DIR, "out");
+    input.mkdirs();
+    Files.copy(IMAGE_FILE.toPath(), new File(input, "old.jpg").toPath());
+  }
+
+  private static void waitFor(File file) throws InterruptedException {
+    long end = System.currentTimeMillis() + TIMEOUT;
+    while (!file.isFile() && System.currentTimeMillis() < end) {
+      Thread.sleep(50);
+    }
+    assertTrue(file + " not generated", file.isFile());
+  }
+
+  private static Thread start(WatchFolder watch) {
+    Thread thread = new Thread(watch);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Existing and new images are generated, a new subdirectory is watched.
+   */
+  @Test
+  public void testNewImages() throws Exception {
+    ByteArrayOutputStream lines = new ByteArrayOutputStream();
+    WatchFolder watch = new WatchFolder(new Generator(null, 0), new File[] { input }, output, 100, 100, "t_", 200,
+        new PrintStream(lines, true, "UTF-8"));
+    Thread thread = start(watch);
+    try {
+      waitFor(new File(output, "t_old.jpg"));
+
+      File sub = new File(input, "sub");
+      sub.mkdirs();
+      Files.copy(IMAGE_FILE.toPath(), new File(sub, "new.jpg").toPath());
+      waitFor(new File(output, "sub/t_new.jpg"));
+    } finally {
+      watch.close();
+      thread.join(TIMEOUT);
+    }
+    assertTrue(new File(output, BuildManifest.FILE_NAME).isFile());
+    assertTrue(lines.toString("UTF-8").contains("\"file\":\"sub/new.jpg\",\"status\":\"ok\""));
+
+    // a second watch skips the images of the manifest
+    lines.reset();
+    watch = new WatchFolder(new Generator(null, 0), new File[] { input }, output, 100, 100, "t_", 200,
+        new PrintStream(lines, true, "UTF-8"));
+    thread = start(watch);
+    try {
+      long end = System.currentTimeMillis() + TIMEOUT;
+      while (!lines.toString("UTF-8").contains("sub/new.jpg") && System.currentTimeMillis() < end) {
+        Thread.sleep(50);
+      }
+    } finally {
+      watch.close();
+      thread.join(TIMEOUT);
+    }
+    assertTrue(lines.toString("UTF-8"), lines.toString("UTF-8").contains("{\"event\":\"skipped\",\"file\":\"sub/new.jpg\"}"));
+    assertTrue(lines.toString("UTF-8"), lines.toString("UTF-8").contains("{\"event\":\"skipped\",\"file\":\"old.jpg\"}"));
+  }
+
+  /**
+   * A file which is still written is taken only once, when it is quiet.
+   */
+  @Test
+  public void testPartialFile() throws Exception {
+    ByteArrayOutputStream lines = new ByteArrayOutputStream();
+    WatchFolder watch = new WatchFolder(new Generator(null, 0), new File[] { input }, output, 100, 100, "t_", 500,
+        new PrintStream(lines, true, "UTF-8"));
+    Thread thread = start(watch);
+    try {
+      byte[] data = Files.readAllBytes(IMAGE_FILE.toPath());
+      File slow = new File(input, "slow.jpg");
+      // written in pieces, each piece before the quiet period ends
+      for (int i = 0; i < 4; i++) {
+        int from = i * data.length / 4;
+        int to = (i + 1) * data.length / 4;
+        Files.write(slow.toPath(), Arrays.copyOfRange(data, from, to), StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+        Thread.sleep(150);
+      }
+      waitFor(new File(output, "t_slow.jpg"));
+      Thread.sleep(1000);
+    } finally {
+      watch.close();
+      thread.join(TIMEOUT);
+    }
+    String json = lines.toString("UTF-8");
+    assertTrue(json, json.contains("\"file\":\"slow.jpg\",\"status\":\"ok\""));
+    assertEquals(json, json.indexOf("\"file\":\"slow.jpg\",\"status\":\"ok\""),
+        json.lastIndexOf("\"file\":\"slow.jpg\""));
+  }
+
+  /**
+   * With the output in the input directory the generated images are no new
+   * input.
+   */
+  @Test
+  public void testOutputInInput() throws Exception {
+    ByteArrayOutputStream lines = new ByteArrayOutputStream();
+    WatchFolder watch = new WatchFolder(new Generator(null, 0), new File[] { input }, input, 100, 100, "t_", 200,
+        new PrintStream(lines, true, "UTF-8"));
+    Thread thread = start(watch);
+    try {
+      waitFor(new File(input, "t_old.jpg"));
+      // a few quiet periods for the generated image to be taken
+      Thread.sleep(1500);
+    } finally {
+      watch.close();
+      thread.join(TIMEOUT);
+    }
+    String json = lines.toString("UTF-8");
+    assertFalse(json, new File(input, "t_t_old.jpg").exists());
+    assertFalse(json, json.contains("t_old.jpg"));
+  }
+}
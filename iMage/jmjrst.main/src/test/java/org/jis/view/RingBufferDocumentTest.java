@@ -0,0 +1,93 @@
+package org.jis.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.swing.text.BadLocationException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RingBufferDocument} and {@link RotatingLog}.
+ */
+public class RingBufferDocumentTest {
+  private static final File TEST_DIR = new File("target/testOut/RingBufferDocumentTest");
+
+  /**
+   * Create an empty test directory.
+   */
+  @Before
+  public void setUp() {
+    TEST_DIR.mkdirs();
+    for (File f : TEST_DIR.listFiles()) {
+      f.delete();
+    }
+  }
+
+  /**
+   * The document never holds much more than its lines and keeps the newest
+   * ones.
+   */
+  @Test
+  public void testKeepsLastLines() throws BadLocationException {
+    RingBufferDocument doc = new RingBufferDocument(100, null);
+    for (int i = 0; i < 1000; i++) {
+      doc.insertString(doc.getLength(), "line" + i + "\n", null);
+    }
+
+    int lines = doc.getDefaultRootElement().getElementCount();
+    assertTrue(lines >= 100 && lines <= 111);
+    String text = doc.getText(0, doc.getLength());
+    assertTrue(text.endsWith("line999\n"));
+    assertTrue(text.startsWith("line" + (1001 - lines) + "\n"));
+  }
+
+  /**
+   * All inserted text goes to the log, which is rotated at its size.
+   */
+  @Test
+  public void testRotatingLog() throws BadLocationException, IOException {
+    RotatingLog log = new RotatingLog(TEST_DIR, "test.log", 1024, 2);
+    RingBufferDocument doc = new RingBufferDocument(10, log);
+    StringBuilder all = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      String line = "line " + i + " of the log\n";
+      doc.insertString(doc.getLength(), line, null);
+      all.append(line);
+    }
+    log.close();
+
+    assertTrue(log.getFile().length() <= 1024);
+    assertTrue(new File(TEST_DIR, "test.log.1").length() <= 1024);
+    assertTrue(new File(TEST_DIR, "test.log.2").isFile());
+    assertTrue(!new File(TEST_DIR, "test.log.3").exists());
+
+    String tail = new String(Files.readAllBytes(new File(TEST_DIR, "test.log.2").toPath()), StandardCharsets.UTF_8)
+        + new String(Files.readAllBytes(new File(TEST_DIR, "test.log.1").toPath()), StandardCharsets.UTF_8)
+        + new String(Files.readAllBytes(log.getFile().toPath()), StandardCharsets.UTF_8);
+    assertTrue(all.toString().endsWith(tail));
+    assertEquals("line 199 of the log\n", tail.substring(tail.length() - 20));
+  }
+
+  /**
+   * The text is written to the disk on flush and on close.
+   */
+  @Test
+  public void testRotatingLogFlush() throws IOException {
+    RotatingLog log = new RotatingLog(TEST_DIR, "flush.log", 1024 * 1024, 1);
+    log.getFile().delete();
+    log.write("first\n");
+    assertEquals(0, log.getFile().length());
+    log.flush();
+    assertEquals(6, log.getFile().length());
+    log.write("second\n");
+    log.close();
+    assertEquals("first\nsecond\n", new String(Files.readAllBytes(log.getFile().toPath()), StandardCharsets.UTF_8));
+  }
+}